@@ -2,14 +2,19 @@ package com.example.analytics.api.controller;
 
 import com.example.analytics.api.dto.BaseResponse;
 import com.example.analytics.api.dto.TopBookDto;
+import com.example.analytics.api.dto.TopBooksMeta;
+import com.example.analytics.redis.LocalTopBooksAggregator;
 import com.example.analytics.redis.TopBooksCacheService;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -20,25 +25,75 @@ import java.util.stream.Collectors;
 public class AnalyticsController {
 
     private final TopBooksCacheService cacheService;
+    private final LocalTopBooksAggregator localTopBooks;
 
-    public AnalyticsController(TopBooksCacheService cacheService) {
+    public AnalyticsController(TopBooksCacheService cacheService, LocalTopBooksAggregator localTopBooks) {
         this.cacheService = cacheService;
+        this.localTopBooks = localTopBooks;
     }
 
+    /**
+     * @param window   1h, 24h or 7d
+     * @param halfLife optional ISO-8601 duration (e.g. PT6H); older buckets count
+     *                 half as much for every half-life of age
+     * @param source   redis (default), local (this instance's sketch for the
+     *                 current period, ignores window and halfLife) or merged
+     *                 (redis plus this instance's unflushed borrows)
+     */
     @GetMapping("/top-books")
-    public BaseResponse<List<TopBookDto>> topBooks(@RequestParam(defaultValue = "10") int limit) {
-        Set<ZSetOperations.TypedTuple<String>> tuples = cacheService.getTopBooks(limit);
-        List<TopBookDto> data = tuples == null ? Collections.emptyList() :
+    public BaseResponse<List<TopBookDto>> topBooks(@RequestParam(defaultValue = "10") int limit,
+                                                   @RequestParam(defaultValue = "24h") String window,
+                                                   @RequestParam(required = false) Duration halfLife,
+                                                   @RequestParam(defaultValue = "redis") String source) {
+        BaseResponse<List<TopBookDto>> res = new BaseResponse<>();
+        try {
+            switch (source.toLowerCase()) {
+                case "redis" -> {
+                    res.setResponseData(fromRedis(limit, TopBooksCacheService.Window.fromParam(window), halfLife));
+                    res.setResponseMeta(TopBooksMeta.builder().source("redis").window(window).build());
+                }
+                case "merged" -> {
+                    res.setResponseData(localTopBooks.mergedTop(limit, TopBooksCacheService.Window.fromParam(window), halfLife)
+                            .entrySet().stream()
+                            .map(e -> TopBookDto.builder().bookId(e.getKey()).borrowCount(e.getValue()).build())
+                            .collect(Collectors.toList()));
+                    res.setResponseMeta(TopBooksMeta.builder().source("merged").window(window).build());
+                }
+                case "local" -> {
+                    LocalTopBooksAggregator.Snapshot snapshot = localTopBooks.snapshot(limit);
+                    res.setResponseData(snapshot.top().stream()
+                            .map(c -> TopBookDto.builder()
+                                    .bookId(c.key())
+                                    .borrowCount((double) c.count())
+                                    .errorBound(c.error())
+                                    .build())
+                            .collect(Collectors.toList()));
+                    res.setResponseMeta(TopBooksMeta.builder()
+                            .source("local")
+                            .since(snapshot.since())
+                            .totalBorrows(snapshot.total())
+                            .unmonitoredBound(snapshot.unmonitoredBound())
+                            .sketchErrorBound(snapshot.sketchErrorBound())
+                            .sketchConfidence(snapshot.sketchConfidence())
+                            .build());
+                }
+                default -> throw new IllegalArgumentException("source must be one of redis, local, merged");
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        res.setResponseSucceed();
+        return res;
+    }
+
+    private List<TopBookDto> fromRedis(int limit, TopBooksCacheService.Window window, Duration halfLife) {
+        Set<ZSetOperations.TypedTuple<String>> tuples = cacheService.getTopBooks(limit, window, halfLife);
+        return tuples == null ? Collections.emptyList() :
                 tuples.stream()
                         .map(t -> TopBookDto.builder()
                                 .bookId(Long.valueOf(t.getValue()))
                                 .borrowCount(t.getScore())
                                 .build())
                         .collect(Collectors.toList());
-
-        BaseResponse<List<TopBookDto>> res = new BaseResponse<>();
-        res.setResponseSucceed();
-        res.setResponseData(data);
-        return res;
     }
 }
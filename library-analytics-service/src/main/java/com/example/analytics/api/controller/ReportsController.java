@@ -2,9 +2,12 @@ package com.example.analytics.api.controller;
 
 import com.example.analytics.api.dto.BaseResponse;
 import com.example.analytics.report.OverdueMemberRow;
+import com.example.analytics.report.OverdueReconciliation;
 import com.example.analytics.report.OverdueReportService;
 import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -30,4 +33,24 @@ public class ReportsController {
         res.setResponseData(data);
         return res;
     }
+
+    /** Compares the incremental leaderboard with the SQL aggregation. */
+    @GetMapping("/overdue-members/reconcile")
+    @PreAuthorize("hasRole('ADMIN')")
+    public BaseResponse<OverdueReconciliation> reconcileOverdueMembers() {
+        BaseResponse<OverdueReconciliation> res = new BaseResponse<>();
+        res.setResponseSucceed();
+        res.setResponseData(reportService.reconcile(Instant.now()));
+        return res;
+    }
+
+    /** Reloads the incremental leaderboard from SQL, then reconciles. */
+    @PostMapping("/overdue-members/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public BaseResponse<OverdueReconciliation> rebuildOverdueMembers() {
+        BaseResponse<OverdueReconciliation> res = new BaseResponse<>();
+        res.setResponseSucceed();
+        res.setResponseData(reportService.rebuild(Instant.now()));
+        return res;
+    }
 }
@@ -1,48 +1,74 @@
 package com.example.analytics.api.controller;
 
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
 import com.example.analytics.api.dto.BaseResponse;
+import com.example.analytics.api.dto.LoanEventSearchMeta;
 import com.example.analytics.api.dto.LoanEventSearchResponse;
-import com.example.analytics.search.LoanEventDocument;
-import com.example.analytics.search.LoanEventSearchRepository;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import com.example.analytics.events.LoanEventType;
+import com.example.analytics.search.LoanEventFilter;
+import com.example.analytics.search.LoanEventIndices;
+import com.example.analytics.search.LoanEventSearchService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.time.Instant;
 import java.util.List;
 
 @RestController
 @RequestMapping(path = "/api/search", produces = MediaType.APPLICATION_JSON_VALUE)
 public class SearchController {
 
-    private final LoanEventSearchRepository repository;
+    private static final int MAX_PAGE_SIZE = 1000;
 
-    public SearchController(LoanEventSearchRepository repository) {
-        this.repository = repository;
+    private final LoanEventSearchService searchService;
+    private final LoanEventIndices loanEventIndices;
+
+    public SearchController(LoanEventSearchService searchService, LoanEventIndices loanEventIndices) {
+        this.searchService = searchService;
+        this.loanEventIndices = loanEventIndices;
     }
 
+    /**
+     * All filters combine. {@code from}/{@code to} bound {@code occurredAt}
+     * (ISO-8601) and limit the search to the monthly indices in that range.
+     * Events come newest first; pass {@code responseMeta.nextCursor} as
+     * {@code after} for the next page. {@code page} still selects an offset
+     * page when no cursor is given.
+     */
     @GetMapping("/loan-events")
     public BaseResponse<List<LoanEventSearchResponse>> loanEvents(
+            @RequestParam(required = false) LoanEventType type,
             @RequestParam(required = false) Long bookId,
             @RequestParam(required = false) Long memberId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) Instant borrowedFrom,
+            @RequestParam(required = false) Instant borrowedTo,
+            @RequestParam(required = false) Boolean returnedLate,
+            @RequestParam(required = false) String after,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "20") int size
     ) {
-        Pageable pageable = PageRequest.of(page, size);
+        LoanEventFilter filter = filter(type, bookId, memberId, from, to, borrowedFrom, borrowedTo, returnedLate);
+        if (size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be positive");
+        }
 
-        List<LoanEventDocument> docs;
-        if (bookId != null) {
-            docs = repository.findByBookId(bookId, pageable).getContent();
-        } else if (memberId != null) {
-            docs = repository.findByMemberId(memberId, pageable).getContent();
-        } else {
-            docs = repository.findAll(pageable).getContent();
+        LoanEventSearchService.EventPage result;
+        try {
+            result = searchService.search(filter, after, page, Math.min(size, MAX_PAGE_SIZE));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
         }
 
-        List<LoanEventSearchResponse> data = docs.stream()
+        List<LoanEventSearchResponse> data = result.events().stream()
                 .map(d -> LoanEventSearchResponse.builder()
                         .eventId(d.getEventId())
                         .type(d.getType())
@@ -59,6 +85,58 @@ public class SearchController {
         BaseResponse<List<LoanEventSearchResponse>> res = new BaseResponse<>();
         res.setResponseSucceed();
         res.setResponseData(data);
+        if (result.nextCursor() != null) {
+            res.setResponseMeta(LoanEventSearchMeta.builder().nextCursor(result.nextCursor()).build());
+        }
+        return res;
+    }
+
+    /**
+     * Aggregations over the matching events, computed in Elasticsearch:
+     * borrows per {@code interval} (day, week or month), returns, late returns,
+     * late-return rate and average loan duration.
+     */
+    @GetMapping("/loan-events/stats")
+    public BaseResponse<LoanEventSearchService.Stats> loanEventStats(
+            @RequestParam(required = false) LoanEventType type,
+            @RequestParam(required = false) Long bookId,
+            @RequestParam(required = false) Long memberId,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) Instant borrowedFrom,
+            @RequestParam(required = false) Instant borrowedTo,
+            @RequestParam(required = false) Boolean returnedLate,
+            @RequestParam(defaultValue = "day") String interval
+    ) {
+        LoanEventFilter filter = filter(type, bookId, memberId, from, to, borrowedFrom, borrowedTo, returnedLate);
+        CalendarInterval calendarInterval = switch (interval.toLowerCase()) {
+            case "day" -> CalendarInterval.Day;
+            case "week" -> CalendarInterval.Week;
+            case "month" -> CalendarInterval.Month;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "interval must be one of day, week, month");
+        };
+
+        BaseResponse<LoanEventSearchService.Stats> res = new BaseResponse<>();
+        res.setResponseSucceed();
+        res.setResponseData(searchService.stats(filter, calendarInterval));
         return res;
     }
+
+    /** Copies events from the single pre-partitioning index into the monthly indices. */
+    @PostMapping("/loan-events/migrate-legacy")
+    @PreAuthorize("hasRole('ADMIN')")
+    public BaseResponse<Long> migrateLegacy() {
+        BaseResponse<Long> res = new BaseResponse<>();
+        res.setResponseSucceed();
+        res.setResponseData(loanEventIndices.migrateLegacy());
+        return res;
+    }
+
+    private static LoanEventFilter filter(LoanEventType type, Long bookId, Long memberId, Instant from, Instant to,
+                                          Instant borrowedFrom, Instant borrowedTo, Boolean returnedLate) {
+        if (to != null && (from == null || to.isBefore(from))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "to requires from, and must not be before it");
+        }
+        return new LoanEventFilter(type, bookId, memberId, from, to, borrowedFrom, borrowedTo, returnedLate);
+    }
 }
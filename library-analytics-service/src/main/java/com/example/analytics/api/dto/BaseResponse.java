@@ -18,6 +18,7 @@ import lombok.experimental.SuperBuilder;
 public class BaseResponse<T> {
     private String responseMessage;
     private T responseData;
+    private Object responseMeta;
 
     public void setResponseSucceed() {
         this.responseMessage = AppConstans.RESPONSE_MESSAGE_SUCCESS_IN;
@@ -0,0 +1,15 @@
+package com.example.analytics.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoanEventSearchMeta {
+    /** Pass as {@code after} to fetch the next page; absent on the last page. */
+    private String nextCursor;
+}
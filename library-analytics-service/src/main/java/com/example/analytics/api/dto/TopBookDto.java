@@ -12,4 +12,6 @@ import lombok.NoArgsConstructor;
 public class TopBookDto {
     private Long bookId;
     private Double borrowCount;
+    /** For sketch answers: the true count is at least {@code borrowCount - errorBound}. */
+    private Long errorBound;
 }
@@ -0,0 +1,26 @@
+package com.example.analytics.api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/** How a top-books answer was produced and, for the local sketch, how far it can be off. */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopBooksMeta {
+    private String source;
+    private String window;
+    /** Start of the local sketch period; the local answer covers borrows since then. */
+    private Instant since;
+    private Long totalBorrows;
+    /** Upper bound on the count of any book not in the local summary. */
+    private Long unmonitoredBound;
+    /** Count-Min overestimate bound (epsilon * total) for tail counts, at {@code sketchConfidence}. */
+    private Double sketchErrorBound;
+    private Double sketchConfidence;
+}
@@ -0,0 +1,56 @@
+package com.example.analytics.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the auto-configured pool with a primary pool plus one read-only
+ * pool per replica in {@code library.analytics.datasource.replicas.urls}, all
+ * with the primary's credentials. Each pool reports {@code hikaricp_*}
+ * metrics under its own {@code pool} tag ({@code primary}, {@code replica-0}, ...).
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.analytics.datasource.replicas.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(
+            DataSourceProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${library.analytics.datasource.replicas.urls}") List<String> replicaUrls,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int primaryPoolSize,
+            @Value("${library.analytics.datasource.replicas.pool-size:10}") int replicaPoolSize,
+            @Value("${library.analytics.datasource.replicas.max-lag:PT5S}") Duration maxLag) {
+        HikariDataSource primary = pool(properties, properties.determineUrl(), ReplicaRoutingDataSource.PRIMARY,
+                primaryPoolSize, false, meterRegistry);
+        List<HikariDataSource> replicas = new ArrayList<>(replicaUrls.size());
+        for (String url : replicaUrls) {
+            if (url.isBlank()) continue;
+            replicas.add(pool(properties, url.trim(), "replica-" + replicas.size(), replicaPoolSize, true, meterRegistry));
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, maxLag, meterRegistry);
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, String url, String name,
+                                         int size, boolean readOnly, MeterRegistry meterRegistry) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        pool.setPoolName(name);
+        pool.setMaximumPoolSize(size);
+        pool.setReadOnly(readOnly);
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return pool;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.analytics.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends every query to the replicas, round robin: the analytics service only
+ * reads the lending tables. Work that must see the latest writes runs inside
+ * {@link #onPrimary}.
+ * <p>
+ * Staleness guard: a replica whose replay lag exceeds {@code max-lag}, or
+ * whose lag cannot be read, is skipped until the next
+ * {@code lag-check-interval}; with no replica left queries go to the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    // Zero when the replica has replayed everything it received, so an idle primary does not look like lag
+    private static final String LAG_QUERY = """
+            SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                        ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0)
+                   END
+            """;
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private static final class Replica {
+        final String name;
+        final HikariDataSource dataSource;
+        volatile boolean usable = true;
+        volatile double lagSeconds;
+
+        Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final Duration maxLag;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Map<String, Counter> routed = new HashMap<>();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary,
+                                    List<HikariDataSource> replicas,
+                                    Duration maxLag,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(ds -> new Replica(ds.getPoolName(), ds)).toList();
+        this.maxLag = maxLag;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        routed.put(PRIMARY, routedCounter(meterRegistry, PRIMARY));
+        for (Replica replica : this.replicas) {
+            targets.put(replica.name, replica.dataSource);
+            routed.put(replica.name, routedCounter(meterRegistry, replica.name));
+            Gauge.builder("analytics_datasource_replica_lag_seconds", replica, r -> r.lagSeconds)
+                    .tag("pool", replica.name)
+                    .register(meterRegistry);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /** Runs {@code work} with every query on this thread going to the primary. */
+    public static <T> T onPrimary(Supplier<T> work) {
+        if (PINNED.get() != null) return work.get();
+        PINNED.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            PINNED.remove();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String key = PRIMARY;
+        if (PINNED.get() == null) {
+            Replica replica = nextUsableReplica();
+            if (replica != null) key = replica.name;
+        }
+        routed.get(key).increment();
+        return key;
+    }
+
+    @Scheduled(fixedDelayString = "${library.analytics.datasource.replicas.lag-check-interval:PT5S}")
+    public void checkLag() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                replica.lagSeconds = rs.getDouble(1);
+                boolean usable = replica.lagSeconds * 1000 <= maxLag.toMillis();
+                if (usable != replica.usable) {
+                    log.warn("Replica {} {} (lag {}s, max {})", replica.name,
+                            usable ? "back in rotation" : "taken out of rotation", replica.lagSeconds, maxLag);
+                }
+                replica.usable = usable;
+            } catch (Exception e) {
+                if (replica.usable) {
+                    log.warn("Replica {} taken out of rotation, lag check failed: {}", replica.name, e.getMessage());
+                }
+                replica.usable = false;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        replicas.forEach(r -> r.dataSource.close());
+        primary.close();
+    }
+
+    private Replica nextUsableReplica() {
+        int size = replicas.size();
+        if (size == 0) return null;
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.usable) return replica;
+        }
+        return null;
+    }
+
+    private static Counter routedCounter(MeterRegistry meterRegistry, String pool) {
+        return Counter.builder("analytics_datasource_connections_routed_total")
+                .tag("pool", pool)
+                .register(meterRegistry);
+    }
+}
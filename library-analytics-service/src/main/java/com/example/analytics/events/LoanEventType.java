@@ -2,5 +2,6 @@ package com.example.analytics.events;
 
 public enum LoanEventType {
     BORROWED,
-    RETURNED
+    RETURNED,
+    OVERDUE
 }
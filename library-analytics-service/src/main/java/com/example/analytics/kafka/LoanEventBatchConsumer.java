@@ -0,0 +1,162 @@
+package com.example.analytics.kafka;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventType;
+import com.example.analytics.redis.LocalTopBooksAggregator;
+import com.example.analytics.redis.TopBooksCacheService;
+import com.example.analytics.report.OverdueLeaderboard;
+import com.example.analytics.search.LoanEventDocument;
+import com.example.analytics.search.LoanEventIndices;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch variant of {@link LoanEventConsumer}: takes a whole poll at a time,
+ * indexes it with one Elasticsearch bulk request and folds the BORROWED
+ * events into one pipelined Redis call. Offsets are acknowledged only once
+ * both sinks succeeded; otherwise the batch is redelivered after a back-off.
+ * Both sinks are idempotent per eventId, so a redelivered batch is not
+ * counted twice. Undecodable messages are published to the {@code .dlt} topic.
+ */
+@Component
+@ConditionalOnProperty(name = "library.analytics.consumer.mode", havingValue = "batch")
+public class LoanEventBatchConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(LoanEventBatchConsumer.class);
+
+    private final TopBooksCacheService cacheService;
+    private final LoanEventIndices loanEventIndices;
+    private final LoanEventDecoder decoder;
+    private final OverdueLeaderboard overdueLeaderboard;
+    private final LocalTopBooksAggregator localTopBooks;
+    private final Duration retryBackoff;
+    private final DeadLetterPublishingRecoverer deadLetters;
+
+    private final Counter consumed;
+    private final Counter skipped;
+    private final Counter duplicates;
+    private final DistributionSummary batchSizes;
+    private final Timer elasticsearchLatency;
+    private final Timer redisLatency;
+
+    public LoanEventBatchConsumer(TopBooksCacheService cacheService,
+                                  LoanEventIndices loanEventIndices,
+                                  LoanEventDecoder decoder,
+                                  OverdueLeaderboard overdueLeaderboard,
+                                  LocalTopBooksAggregator localTopBooks,
+                                  KafkaTemplate<String, byte[]> kafkaTemplate,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${library.analytics.consumer.batch.retry-backoff:PT1S}") Duration retryBackoff,
+                                  @Value("${library.events.loan.topic:library.loan-events}") String topic) {
+        this.cacheService = cacheService;
+        this.loanEventIndices = loanEventIndices;
+        this.decoder = decoder;
+        this.overdueLeaderboard = overdueLeaderboard;
+        this.localTopBooks = localTopBooks;
+        this.retryBackoff = retryBackoff;
+        // Same DLT as the record listener; the broker picks the partition
+        String deadLetterTopic = topic + LoanEventTopics.DLT_SUFFIX;
+        this.deadLetters = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, e) -> new TopicPartition(deadLetterTopic, -1));
+
+        this.consumed = meterRegistry.counter("analytics_loan_events_consumed_total");
+        this.skipped = meterRegistry.counter("analytics_loan_events_skipped_total");
+        this.duplicates = meterRegistry.counter("analytics_loan_events_duplicates_total");
+        this.batchSizes = DistributionSummary.builder("analytics_loan_events_batch_size")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.elasticsearchLatency = Timer.builder("analytics_sink_latency")
+                .tag("sink", "elasticsearch")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.redisLatency = Timer.builder("analytics_sink_latency")
+                .tag("sink", "redis")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @KafkaListener(
+        topics = "${library.events.loan.topic:library.loan-events}",
+        groupId = "${spring.kafka.consumer.group-id}",
+        containerFactory = "kafkaListenerContainerFactory",
+        batch = "true",
+        concurrency = "${library.analytics.consumer.batch.concurrency:1}",
+        properties = {
+            "max.poll.records:${library.analytics.consumer.batch.max-poll-records:500}",
+            "fetch.min.bytes:${library.analytics.consumer.batch.fetch-min-bytes:65536}",
+            "fetch.max.wait.ms:${library.analytics.consumer.batch.flush-interval-ms:200}"
+        }
+    )
+    public void onBatch(List<ConsumerRecord<String, byte[]>> records, Acknowledgment acknowledgment) {
+        batchSizes.record(records.size());
+
+        List<LoanEvent> events = new ArrayList<>(records.size());
+        List<LoanEventDocument> docs = new ArrayList<>(records.size());
+        List<LoanEvent> borrows = new ArrayList<>();
+        for (ConsumerRecord<String, byte[]> record : records) {
+            LoanEvent event;
+            try {
+                event = decoder.decode(record.value(), record.headers());
+            } catch (Exception e) {
+                // Same policy as the record listener: unparseable messages go to the DLT, not retried
+                log.error("Dead-lettering unparseable message partition={} offset={}: {}",
+                        record.partition(), record.offset(), e.getMessage());
+                deadLetters.accept(record, new LoanEventDecodeException(
+                        "Undecodable message at offset=" + record.offset(), e));
+                skipped.increment();
+                continue;
+            }
+            events.add(event);
+            docs.add(LoanEventDocument.from(event));
+            if (event.type() == LoanEventType.BORROWED) {
+                borrows.add(event);
+            }
+        }
+
+        List<LoanEvent> counted;
+        try {
+            if (!docs.isEmpty()) {
+                elasticsearchLatency.record(() -> loanEventIndices.saveAll(docs));
+            }
+            counted = redisLatency.record(() -> {
+                List<LoanEvent> newlyCounted = cacheService.incrementBorrowCounts(borrows);
+                overdueLeaderboard.applyAll(events);
+                return newlyCounted;
+            });
+        } catch (Exception e) {
+            log.error("Failed to process batch of {} records, redelivering in {}: {}",
+                    records.size(), retryBackoff, e.getMessage(), e);
+            acknowledgment.nack(0, retryBackoff);
+            return;
+        }
+
+        // Counted locally only once Redis has them; borrows of a redelivered batch that
+        // Redis already counted are not observed twice
+        if (!counted.isEmpty()) {
+            localTopBooks.observe(counted);
+        }
+        if (counted.size() < borrows.size()) {
+            duplicates.increment(borrows.size() - counted.size());
+        }
+        acknowledgment.acknowledge();
+        consumed.increment(records.size());
+        log.debug("Processed batch size={} indexed={} borrows={}", records.size(), docs.size(), borrows.size());
+    }
+}
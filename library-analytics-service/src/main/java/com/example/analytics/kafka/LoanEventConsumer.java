@@ -1,148 +1,160 @@
 package com.example.analytics.kafka;
 
 import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventFormat;
 import com.example.analytics.events.LoanEventType;
+import com.example.analytics.redis.LocalTopBooksAggregator;
 import com.example.analytics.redis.TopBooksCacheService;
+import com.example.analytics.report.OverdueLeaderboard;
 import com.example.analytics.search.LoanEventDocument;
-import com.example.analytics.search.LoanEventSearchRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.analytics.search.LoanEventIndices;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.retry.annotation.Backoff;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
+import java.nio.ByteBuffer;
+import java.util.List;
 
+/**
+ * Consumes loan events one record at a time. A record is acknowledged only
+ * after both sinks succeeded; a failing record moves through the retry topics
+ * with exponential back-off and, once the attempts are used up, to the
+ * {@code .dlt} topic. Undecodable messages go to the DLT straight away.
+ */
 @Component
+@ConditionalOnProperty(name = "library.analytics.consumer.mode", havingValue = "record", matchIfMissing = true)
 public class LoanEventConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(LoanEventConsumer.class);
 
     private final TopBooksCacheService cacheService;
-    private final LoanEventSearchRepository searchRepository;
-    private final ObjectMapper objectMapper;
+    private final LoanEventIndices loanEventIndices;
+    private final LoanEventDecoder decoder;
+    private final OverdueLeaderboard overdueLeaderboard;
+    private final LocalTopBooksAggregator localTopBooks;
+
+    private final Counter duplicates;
+    private final Counter deadLettered;
 
     public LoanEventConsumer(TopBooksCacheService cacheService,
-                             LoanEventSearchRepository searchRepository,
-                             ObjectMapper objectMapper) {
+                             LoanEventIndices loanEventIndices,
+                             LoanEventDecoder decoder,
+                             OverdueLeaderboard overdueLeaderboard,
+                             LocalTopBooksAggregator localTopBooks,
+                             MeterRegistry meterRegistry) {
         this.cacheService = cacheService;
-        this.searchRepository = searchRepository;
-        this.objectMapper = objectMapper;
+        this.loanEventIndices = loanEventIndices;
+        this.decoder = decoder;
+        this.overdueLeaderboard = overdueLeaderboard;
+        this.localTopBooks = localTopBooks;
+
+        this.duplicates = meterRegistry.counter("analytics_loan_events_duplicates_total");
+        this.deadLettered = meterRegistry.counter("analytics_loan_events_dead_lettered_total");
     }
 
+    @RetryableTopic(
+        attempts = "${library.analytics.consumer.retry.attempts:4}",
+        backoff = @Backoff(
+            delayExpression = "${library.analytics.consumer.retry.delay-ms:1000}",
+            multiplierExpression = "${library.analytics.consumer.retry.multiplier:2.0}",
+            maxDelayExpression = "${library.analytics.consumer.retry.max-delay-ms:30000}"
+        ),
+        topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+        retryTopicSuffix = LoanEventTopics.RETRY_SUFFIX,
+        dltTopicSuffix = LoanEventTopics.DLT_SUFFIX,
+        numPartitions = "${library.analytics.consumer.retry.partitions:1}",
+        replicationFactor = "${library.analytics.consumer.retry.replication-factor:1}",
+        // A message that cannot be decoded will not decode on a retry either
+        exclude = LoanEventDecodeException.class,
+        traversingCauses = "true"
+    )
     @KafkaListener(
         topics = "${library.events.loan.topic:library.loan-events}",
         groupId = "${spring.kafka.consumer.group-id}",
         containerFactory = "kafkaListenerContainerFactory"
     )
     public void onMessage(
-            @Payload String message,
+            @Payload byte[] message,
+            @Header(name = LoanEventFormat.HEADER, required = false) byte[] format,
             @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
             @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
             @Header(KafkaHeaders.OFFSET) long offset,
             Acknowledgment acknowledgment
     ) {
+        log.info("Received message from topic={}, partition={}, offset={}", topic, partition, offset);
+        // Decode manually (streaming JSON or compact binary) to avoid deserialization issues
+        LoanEvent event;
         try {
-            log.info("Received message from topic={}, partition={}, offset={}", topic, partition, offset);
-            log.debug("Raw message: {}", message);
-
-            // Parse JSON manually to avoid deserialization issues
-            LoanEvent event = parseMessage(message);
-            
-            log.info("Consumed loan event type={} loanId={} bookId={} memberId={}",
-                    event.type(), event.loanId(), event.bookId(), event.memberId());
-
-            // Process: Update Redis cache
-            if (event.type() == LoanEventType.BORROWED) {
-                cacheService.incrementBorrowCount(event.bookId());
-                log.info("Incremented borrow count for bookId={}", event.bookId());
-            }
-
-            // Process: Save to Elasticsearch
-            LoanEventDocument doc = LoanEventDocument.builder()
-                    .eventId(event.eventId())
-                    .type(event.type())
-                    .loanId(event.loanId())
-                    .bookId(event.bookId())
-                    .memberId(event.memberId())
-                    .borrowedAt(event.borrowedAt())
-                    .dueDate(event.dueDate())
-                    .returnedAt(event.returnedAt())
-                    .occurredAt(event.occurredAt())
-                    .build();
-
-            searchRepository.save(doc);
-            log.info("Saved loan event to Elasticsearch: eventId={}", event.eventId());
-
-            // Acknowledge successful processing
-            if (acknowledgment != null) {
-                acknowledgment.acknowledge();
-            }
-            
-            log.info("Successfully processed message at offset={}", offset);
-
+            event = decoder.decode(message, LoanEventFormat.fromHeader(format));
         } catch (Exception e) {
-            log.error("Failed to process message at offset={}: {}", offset, e.getMessage(), e);
-            
-            if (acknowledgment != null) {
-                acknowledgment.acknowledge();
+            throw new LoanEventDecodeException("Undecodable message at offset=" + offset, e);
+        }
+
+        log.info("Consumed loan event type={} loanId={} bookId={} memberId={}",
+                event.type(), event.loanId(), event.bookId(), event.memberId());
+
+        // Process: Update Redis cache. Both sinks are idempotent per eventId, so a
+        // retried message only writes what the failed attempt did not.
+        if (event.type() == LoanEventType.BORROWED) {
+            if (localTopBooks.isEnabled()) {
+                // Aggregated locally and flushed to Redis in batches
+                localTopBooks.record(List.of(event));
+            } else if (!cacheService.incrementBorrowCounts(List.of(event)).isEmpty()) {
+                localTopBooks.observe(List.of(event));
+                log.info("Incremented borrow count for bookId={}", event.bookId());
+            } else {
+                duplicates.increment();
+                log.info("Borrow already counted, eventId={}", event.eventId());
             }
-            
         }
-    }
+        overdueLeaderboard.apply(event);
 
-    private LoanEvent parseMessage(String message) throws Exception {
-        JsonNode jsonNode = objectMapper.readTree(message);
-        
-        // Extract fields from JSON
-        String eventId = jsonNode.has("eventId") ? jsonNode.get("eventId").asText() : null;
-        String typeStr = jsonNode.has("type") ? jsonNode.get("type").asText() : null;
-        Long loanId = jsonNode.has("loanId") ? jsonNode.get("loanId").asLong() : null;
-        Long bookId = jsonNode.has("bookId") ? jsonNode.get("bookId").asLong() : null;
-        Long memberId = jsonNode.has("memberId") ? jsonNode.get("memberId").asLong() : null;
-        
-        Instant borrowedAt = parseInstant(jsonNode, "borrowedAt");
-        Instant dueDate = parseInstant(jsonNode, "dueDate");
-        Instant returnedAt = parseInstant(jsonNode, "returnedAt");
-        Instant occurredAt = parseInstant(jsonNode, "occurredAt");
-        
-        LoanEventType type = parseEventType(typeStr);
-        
-        return new LoanEvent(eventId, type, loanId, bookId, memberId, 
-                           borrowedAt, dueDate, returnedAt, occurredAt);
-    }
+        // Process: Save to Elasticsearch (document id is the eventId)
+        LoanEventDocument doc = LoanEventDocument.from(event);
 
-    private Instant parseInstant(JsonNode node, String field) {
-        if (!node.has(field) || node.get(field).isNull()) {
-            return null;
-        }
+        loanEventIndices.save(doc);
+        log.info("Saved loan event to Elasticsearch: eventId={}", event.eventId());
 
-        String value = node.get(field).asText();
-        try {
-            return Instant.parse(value);
-        } catch (Exception e) {
-            log.error("Invalid Instant format field={} value={}", field, value);
-            return null;
+        // Acknowledge successful processing only; a failure is retried via the retry topics
+        if (acknowledgment != null) {
+            acknowledgment.acknowledge();
         }
-    }
 
+        log.info("Successfully processed message at offset={}", offset);
+    }
 
-    private LoanEventType parseEventType(String typeStr) {
-    if (typeStr == null) {
-        throw new IllegalArgumentException("Event type is null");
+    /** Last stop after the retries: the message stays on the DLT for inspection or replay. */
+    @DltHandler
+    public void onDeadLetter(
+            @Payload byte[] message,
+            @Header(name = KafkaHeaders.DLT_ORIGINAL_TOPIC, required = false) String originalTopic,
+            @Header(name = KafkaHeaders.DLT_ORIGINAL_OFFSET, required = false) byte[] originalOffset,
+            @Header(name = KafkaHeaders.DLT_EXCEPTION_MESSAGE, required = false) String error,
+            Acknowledgment acknowledgment
+    ) {
+        deadLettered.increment();
+        log.error("Loan event dead-lettered from topic={} offset={}: {}", originalTopic,
+                originalOffset != null && originalOffset.length == Long.BYTES
+                        ? ByteBuffer.wrap(originalOffset).getLong() : null,
+                error);
+        if (acknowledgment != null) {
+            acknowledgment.acknowledge();
+        }
     }
 
-    try {
-        return LoanEventType.valueOf(typeStr.toUpperCase());
-    } catch (IllegalArgumentException e) {
-        log.error("Unknown LoanEventType: {}", typeStr);
-        throw e;
+    LoanEvent parseMessage(String message) throws Exception {
+        return decoder.decodeJson(message);
     }
 }
-
-}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.example.analytics.kafka;
+
+/** A loan event message that cannot be decoded; not retried. */
+public class LoanEventDecodeException extends RuntimeException {
+
+    public LoanEventDecodeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
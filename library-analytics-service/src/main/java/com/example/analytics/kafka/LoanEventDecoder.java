@@ -0,0 +1,207 @@
+package com.example.analytics.kafka;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventBinaryCodec;
+import com.example.analytics.events.LoanEventFormat;
+import com.example.analytics.events.LoanEventType;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * Turns the raw value of a loan-events record into a {@link LoanEvent}.
+ * Shared by the record and batch listeners.
+ * <p>
+ * JSON is read in a single pass with a streaming {@link JsonParser}, without
+ * building a tree. Missing fields stay null, unknown fields are skipped, bad
+ * timestamps are logged and dropped, and a missing or unknown type is
+ * rejected. Timestamps may be ISO-8601 strings or the epoch-seconds numbers
+ * Spring Kafka's {@code JsonSerializer} writes by default.
+ */
+@Component
+public class LoanEventDecoder {
+
+    private static final Logger log = LoggerFactory.getLogger(LoanEventDecoder.class);
+
+    private static final LoanEventType[] TYPES = LoanEventType.values();
+
+    private final JsonFactory jsonFactory;
+
+    public LoanEventDecoder(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    public LoanEvent decode(byte[] value, Headers headers) throws IOException {
+        Header format = headers == null ? null : headers.lastHeader(LoanEventFormat.HEADER);
+        return decode(value, LoanEventFormat.fromHeader(format == null ? null : format.value()));
+    }
+
+    public LoanEvent decode(byte[] value, LoanEventFormat format) throws IOException {
+        if (format == LoanEventFormat.BINARY) {
+            return LoanEventBinaryCodec.decode(value);
+        }
+        try (JsonParser parser = jsonFactory.createParser(value)) {
+            return readJson(parser);
+        }
+    }
+
+    public LoanEvent decodeJson(String message) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(message)) {
+            return readJson(parser);
+        }
+    }
+
+    private LoanEvent readJson(JsonParser p) throws IOException {
+        if (p.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Loan event must be a JSON object");
+        }
+
+        String eventId = null;
+        String typeStr = null;
+        Long loanId = null;
+        Long bookId = null;
+        Long memberId = null;
+        Instant borrowedAt = null;
+        Instant dueDate = null;
+        Instant returnedAt = null;
+        Instant occurredAt = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.currentName();
+            JsonToken token = p.nextToken();
+            switch (field) {
+                case "eventId" -> eventId = readText(p, token);
+                case "type" -> typeStr = readText(p, token);
+                case "loanId" -> loanId = readLong(p, token);
+                case "bookId" -> bookId = readLong(p, token);
+                case "memberId" -> memberId = readLong(p, token);
+                case "borrowedAt" -> borrowedAt = readInstant(p, token, field);
+                case "dueDate" -> dueDate = readInstant(p, token, field);
+                case "returnedAt" -> returnedAt = readInstant(p, token, field);
+                case "occurredAt" -> occurredAt = readInstant(p, token, field);
+                default -> p.skipChildren();
+            }
+        }
+
+        LoanEventType type = parseEventType(typeStr);
+
+        return new LoanEvent(eventId, type, loanId, bookId, memberId,
+                borrowedAt, dueDate, returnedAt, occurredAt);
+    }
+
+    private String readText(JsonParser p, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) return null;
+        if (token.isStructStart()) {
+            p.skipChildren();
+            return null;
+        }
+        return p.getText();
+    }
+
+    private Long readLong(JsonParser p, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) return null;
+        if (token.isStructStart()) {
+            p.skipChildren();
+            return 0L;
+        }
+        // Lenient like JsonNode.asLong(): numeric strings are accepted, anything else is 0
+        return p.getValueAsLong();
+    }
+
+    private Instant readInstant(JsonParser p, JsonToken token, String field) throws IOException {
+        if (token == JsonToken.VALUE_NULL) return null;
+        if (token.isStructStart()) {
+            p.skipChildren();
+            log.error("Invalid Instant format field={} value=<structure>", field);
+            return null;
+        }
+        String value = p.getText();
+        try {
+            if (token == JsonToken.VALUE_STRING) {
+                return parseIsoInstant(value);
+            }
+            if (token.isNumeric()) {
+                // seconds[.nanos] as written by JavaTimeModule with WRITE_DATES_AS_TIMESTAMPS
+                BigDecimal seconds = new BigDecimal(value);
+                long whole = seconds.longValue();
+                int nanos = seconds.subtract(BigDecimal.valueOf(whole)).movePointRight(9).intValue();
+                return Instant.ofEpochSecond(whole, nanos);
+            }
+        } catch (Exception e) {
+            // fall through
+        }
+        log.error("Invalid Instant format field={} value={}", field, value);
+        return null;
+    }
+
+    /**
+     * Fast path for the {@code yyyy-MM-ddTHH:mm:ss[.f{1,9}]Z} shape that
+     * {@link Instant#toString()} produces; anything else goes through
+     * {@link Instant#parse}, which also reports invalid input.
+     */
+    static Instant parseIsoInstant(String s) {
+        int len = s.length();
+        if (len < 20 || len > 30 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(len - 1) != 'Z') {
+            return Instant.parse(s);
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 7);
+        int day = digits(s, 8, 10);
+        int hour = digits(s, 11, 13);
+        int minute = digits(s, 14, 16);
+        int second = digits(s, 17, 19);
+        int nanos = 0;
+        if (len > 20) {
+            int fraction = digits(s, 20, len - 1);
+            if (s.charAt(19) != '.' || len == 21 || fraction < 0) {
+                return Instant.parse(s);
+            }
+            nanos = fraction;
+            for (int i = len - 21; i < 9; i++) {
+                nanos *= 10;
+            }
+        }
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 28 && day > YearMonth.of(year, month).lengthOfMonth()
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Instant.parse(s);
+        }
+        long epochDay = LocalDate.of(year, month, day).toEpochDay();
+        return Instant.ofEpochSecond(epochDay * 86_400 + hour * 3_600L + minute * 60L + second, nanos);
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private LoanEventType parseEventType(String typeStr) {
+        if (typeStr == null) {
+            throw new IllegalArgumentException("Event type is null");
+        }
+        for (LoanEventType type : TYPES) {
+            if (type.name().equalsIgnoreCase(typeStr)) {
+                return type;
+            }
+        }
+        log.error("Unknown LoanEventType: {}", typeStr);
+        throw new IllegalArgumentException("No enum constant " + LoanEventType.class.getCanonicalName() + "." + typeStr);
+    }
+}
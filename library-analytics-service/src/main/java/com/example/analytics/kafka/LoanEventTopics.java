@@ -0,0 +1,11 @@
+package com.example.analytics.kafka;
+
+/** Suffixes of the retry and dead-letter topics derived from the loan event topic. */
+final class LoanEventTopics {
+
+    static final String RETRY_SUFFIX = ".retry";
+    static final String DLT_SUFFIX = ".dlt";
+
+    private LoanEventTopics() {
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.analytics.kafka;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+
+import java.time.Duration;
+
+/**
+ * Container factory for {@link ParallelLoanEventConsumer}: the Boot defaults,
+ * as a batch listener whose offsets the consumer commits itself, with idle
+ * events so completed work is committed while no records arrive.
+ */
+@Configuration
+@ConditionalOnProperty(name = "library.analytics.consumer.mode", havingValue = "parallel")
+public class ParallelConsumerConfig {
+
+    static final String CONTAINER_FACTORY = "parallelKafkaListenerContainerFactory";
+
+    @Bean(CONTAINER_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> parallelKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            ParallelLoanEventConsumer consumer,
+            @Value("${library.analytics.consumer.parallel.commit-interval:PT1S}") Duration commitInterval) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        ContainerProperties properties = factory.getContainerProperties();
+        // Never acknowledged: the consumer commits contiguous offsets on the poll thread
+        properties.setAckMode(ContainerProperties.AckMode.MANUAL);
+        properties.setIdleEventInterval(commitInterval.toMillis());
+        properties.setConsumerRebalanceListener(consumer.rebalanceListener());
+        return factory;
+    }
+}
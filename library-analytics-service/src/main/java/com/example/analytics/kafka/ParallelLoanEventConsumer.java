@@ -0,0 +1,333 @@
+package com.example.analytics.kafka;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventType;
+import com.example.analytics.redis.LocalTopBooksAggregator;
+import com.example.analytics.redis.TopBooksCacheService;
+import com.example.analytics.report.OverdueLeaderboard;
+import com.example.analytics.search.LoanEventDocument;
+import com.example.analytics.search.LoanEventIndices;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel variant of {@link LoanEventConsumer}: the poll thread only hands
+ * records out, and a fixed set of single-threaded lanes processes them. A
+ * record's lane is picked from its key (the loanId, see the producer), so
+ * events of one loan stay in order while different loans run concurrently,
+ * however few partitions the topic has.
+ * <p>
+ * Offsets are committed by the poll thread after every poll and every
+ * {@code commit-interval} while idle, up to the lowest offset still in flight
+ * per partition ({@link PartitionOffsets}), so a crash only redelivers
+ * unfinished records; both sinks are idempotent per eventId. A partition with
+ * {@code max-in-flight-per-partition} records in flight is paused and resumed
+ * once half of them are done. A failing record is retried in its lane with
+ * the same attempts and exponential back-off as the record mode's retry topics
+ * ({@code library.analytics.consumer.retry.*}), holding back its loan's later
+ * events, and then goes to the {@code .dlt} topic; undecodable messages go
+ * there straight away.
+ */
+@Component
+@ConditionalOnProperty(name = "library.analytics.consumer.mode", havingValue = "parallel")
+public class ParallelLoanEventConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelLoanEventConsumer.class);
+
+    static final String LISTENER_ID = "loan-events-parallel";
+
+    private final TopBooksCacheService cacheService;
+    private final LoanEventIndices loanEventIndices;
+    private final LoanEventDecoder decoder;
+    private final OverdueLeaderboard overdueLeaderboard;
+    private final LocalTopBooksAggregator localTopBooks;
+    private final KafkaListenerEndpointRegistry registry;
+    private final DeadLetterPublishingRecoverer deadLetters;
+    private final int maxInFlightPerPartition;
+    private final int retryAttempts;
+    private final long retryDelayMs;
+    private final double retryMultiplier;
+    private final long retryMaxDelayMs;
+
+    private final ExecutorService[] lanes;
+    private final PartitionOffsets offsets = new PartitionOffsets();
+    private final Set<TopicPartition> paused = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    private final Counter consumed;
+    private final Counter failures;
+    private final Counter deadLettered;
+    private final Counter duplicates;
+    private final Counter pauses;
+
+    public ParallelLoanEventConsumer(TopBooksCacheService cacheService,
+                                     LoanEventIndices loanEventIndices,
+                                     LoanEventDecoder decoder,
+                                     OverdueLeaderboard overdueLeaderboard,
+                                     LocalTopBooksAggregator localTopBooks,
+                                     KafkaListenerEndpointRegistry registry,
+                                     KafkaTemplate<String, byte[]> kafkaTemplate,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${library.analytics.consumer.parallel.lanes:0}") int lanes,
+                                     @Value("${library.analytics.consumer.parallel.max-in-flight-per-partition:1000}") int maxInFlightPerPartition,
+                                     @Value("${library.analytics.consumer.retry.attempts:4}") int retryAttempts,
+                                     @Value("${library.analytics.consumer.retry.delay-ms:1000}") long retryDelayMs,
+                                     @Value("${library.analytics.consumer.retry.multiplier:2.0}") double retryMultiplier,
+                                     @Value("${library.analytics.consumer.retry.max-delay-ms:30000}") long retryMaxDelayMs,
+                                     @Value("${library.events.loan.topic:library.loan-events}") String topic) {
+        this.cacheService = cacheService;
+        this.loanEventIndices = loanEventIndices;
+        this.decoder = decoder;
+        this.overdueLeaderboard = overdueLeaderboard;
+        this.localTopBooks = localTopBooks;
+        this.registry = registry;
+        this.maxInFlightPerPartition = maxInFlightPerPartition;
+        this.retryAttempts = Math.max(1, retryAttempts);
+        this.retryDelayMs = retryDelayMs;
+        this.retryMultiplier = retryMultiplier;
+        this.retryMaxDelayMs = retryMaxDelayMs;
+        String deadLetterTopic = topic + LoanEventTopics.DLT_SUFFIX;
+        this.deadLetters = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, e) -> new TopicPartition(deadLetterTopic, -1));
+
+        // 0 = one lane per core
+        this.lanes = new ExecutorService[lanes > 0 ? lanes : Runtime.getRuntime().availableProcessors()];
+        AtomicInteger threadIds = new AtomicInteger();
+        for (int i = 0; i < this.lanes.length; i++) {
+            this.lanes[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "loan-events-lane-" + threadIds.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        this.consumed = meterRegistry.counter("analytics_loan_events_consumed_total");
+        this.failures = meterRegistry.counter("analytics_loan_events_failures_total");
+        this.deadLettered = meterRegistry.counter("analytics_loan_events_dead_lettered_total");
+        this.duplicates = meterRegistry.counter("analytics_loan_events_duplicates_total");
+        this.pauses = meterRegistry.counter("analytics_loan_events_partition_pauses_total");
+        Gauge.builder("analytics_loan_events_in_flight", offsets, PartitionOffsets::inFlight)
+                .register(meterRegistry);
+        Gauge.builder("analytics_loan_events_paused_partitions", paused, Set::size)
+                .register(meterRegistry);
+    }
+
+    @KafkaListener(
+        id = LISTENER_ID,
+        topics = "${library.events.loan.topic:library.loan-events}",
+        groupId = "${spring.kafka.consumer.group-id}",
+        containerFactory = ParallelConsumerConfig.CONTAINER_FACTORY,
+        concurrency = "${library.analytics.consumer.parallel.concurrency:1}",
+        properties = {
+            "max.poll.records:${library.analytics.consumer.parallel.max-poll-records:500}"
+        }
+    )
+    public void onBatch(List<ConsumerRecord<String, byte[]>> records, Consumer<?, ?> consumer) {
+        for (ConsumerRecord<String, byte[]> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            PartitionOffsets.State assignment = offsets.started(partition, record.offset());
+            lanes[laneOf(record)].execute(() -> process(record, partition, assignment));
+        }
+        for (ConsumerRecord<String, byte[]> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (offsets.inFlight(partition) >= maxInFlightPerPartition && paused.add(partition)) {
+                pauses.increment();
+                container().pausePartition(partition);
+                log.debug("Paused {} with {} records in flight", partition, offsets.inFlight(partition));
+            }
+        }
+        commit(consumer);
+    }
+
+    /** Published on the poll thread, so the consumer may be used to commit. */
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        commit(event.getConsumer());
+    }
+
+    /** Commits what is done on revoked partitions before another consumer takes them over. */
+    ConsumerAwareRebalanceListener rebalanceListener() {
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                Map<TopicPartition, OffsetAndMetadata> done = offsets.committable(partitions);
+                try {
+                    if (!done.isEmpty()) consumer.commitSync(done);
+                } catch (Exception e) {
+                    log.warn("Commit on revoke failed, records after it will be redelivered: {}", e.getMessage());
+                }
+                // Records still in flight finish, but their offsets are left to the new owner
+                forget(partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                forget(partitions);
+            }
+        };
+    }
+
+    private void forget(Collection<TopicPartition> partitions) {
+        offsets.forget(partitions);
+        paused.removeAll(partitions);
+        // The container would pause them again if they came back, and nothing here would resume them
+        MessageListenerContainer container = container();
+        if (container != null) partitions.forEach(container::resumePartition);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // The listener container has stopped by now; unfinished records are redelivered on restart
+        running = false;
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    private int laneOf(ConsumerRecord<String, byte[]> record) {
+        // Unkeyed records keep the order of their partition
+        int hash = record.key() != null ? record.key().hashCode() : record.partition();
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    private void process(ConsumerRecord<String, byte[]> record, TopicPartition partition,
+                         PartitionOffsets.State assignment) {
+        Exception failure = null;
+        for (int attempt = 1; running && attempt <= retryAttempts; attempt++) {
+            try {
+                handle(record);
+                consumed.increment();
+                failure = null;
+                break;
+            } catch (LoanEventDecodeException e) {
+                log.error("Dead-lettering unparseable message partition={} offset={}: {}",
+                        record.partition(), record.offset(), e.getCause().getMessage());
+                failure = e;
+                break;
+            } catch (Exception e) {
+                failures.increment();
+                failure = e;
+                if (attempt == retryAttempts) break;
+                long delay = backoff(attempt);
+                log.warn("Failed to process partition={} offset={} (attempt {}/{}), retrying in {} ms: {}",
+                        record.partition(), record.offset(), attempt, retryAttempts, delay, e.getMessage());
+                if (!sleep(delay)) return;
+            }
+        }
+        if (failure != null && !deadLetter(record, failure)) return;
+        if (!running) return;
+
+        int remaining = offsets.completed(partition, assignment, record.offset());
+        if (remaining >= 0 && remaining <= maxInFlightPerPartition / 2 && paused.remove(partition)) {
+            container().resumePartition(partition);
+            log.debug("Resumed {} with {} records in flight", partition, remaining);
+        }
+    }
+
+    /** @return false if the consumer stopped before the record could be published */
+    private boolean deadLetter(ConsumerRecord<String, byte[]> record, Exception failure) {
+        if (!(failure instanceof LoanEventDecodeException)) {
+            log.error("Dead-lettering partition={} offset={} after {} attempts: {}",
+                    record.partition(), record.offset(), retryAttempts, failure.getMessage());
+        }
+        while (running) {
+            try {
+                deadLetters.accept(record, failure);
+                deadLettered.increment();
+                return true;
+            } catch (Exception publishFailure) {
+                failures.increment();
+                log.warn("Failed to publish offset={} to the DLT, retrying in {} ms: {}",
+                        record.offset(), retryMaxDelayMs, publishFailure.getMessage());
+                if (!sleep(retryMaxDelayMs)) return false;
+            }
+        }
+        return false;
+    }
+
+    /** Delay after the given failed attempt: delay-ms, multiplied each time, capped at max-delay-ms. */
+    private long backoff(int attempt) {
+        double delay = retryDelayMs * Math.pow(retryMultiplier, attempt - 1);
+        return (long) Math.min(delay, retryMaxDelayMs);
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void handle(ConsumerRecord<String, byte[]> record) {
+        LoanEvent event;
+        try {
+            event = decoder.decode(record.value(), record.headers());
+        } catch (Exception e) {
+            throw new LoanEventDecodeException("Undecodable message at offset=" + record.offset(), e);
+        }
+
+        if (event.type() == LoanEventType.BORROWED) {
+            if (localTopBooks.isEnabled()) {
+                localTopBooks.record(List.of(event));
+            } else if (!cacheService.incrementBorrowCounts(List.of(event)).isEmpty()) {
+                localTopBooks.observe(List.of(event));
+            } else {
+                duplicates.increment();
+            }
+        }
+        overdueLeaderboard.apply(event);
+        loanEventIndices.save(LoanEventDocument.from(event));
+    }
+
+    private void commit(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> done = offsets.committable(null);
+        if (done.isEmpty()) return;
+        consumer.commitAsync(done, (committed, e) -> {
+            if (e != null) {
+                offsets.commitFailed(done);
+                log.warn("Offset commit failed, retrying with the next commit: {}", e.getMessage());
+            }
+        });
+    }
+
+    private MessageListenerContainer container() {
+        return registry.getListenerContainer(LISTENER_ID);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.analytics.kafka;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-flight offsets per partition for a consumer that completes records out
+ * of order. The committable offset of a partition is its lowest offset still
+ * in flight, or one past the highest dispatched offset once nothing is: a
+ * commit never skips a record that has not finished.
+ * <p>
+ * {@link #started} returns the partition's tracking state, which the record
+ * hands back to {@link #completed}. A partition that is revoked and assigned
+ * again gets a new state, so a record of the old assignment finishing late
+ * cannot complete the same offset redelivered in the new one.
+ */
+final class PartitionOffsets {
+
+    /** Tracking state of one assignment of a partition; opaque to callers. */
+    static final class State {
+        final TreeSet<Long> inFlight = new TreeSet<>();
+        long next = -1;
+        long committed = -1;
+    }
+
+    private final Map<TopicPartition, State> partitions = new ConcurrentHashMap<>();
+
+    /** @return the state to pass to {@link #completed} for this record */
+    State started(TopicPartition partition, long offset) {
+        State state = partitions.computeIfAbsent(partition, p -> new State());
+        synchronized (state) {
+            state.inFlight.add(offset);
+            state.next = Math.max(state.next, offset + 1);
+        }
+        return state;
+    }
+
+    /**
+     * @param started what {@link #started} returned for the record
+     * @return records of the partition still in flight, or -1 if the record's assignment is no longer tracked
+     */
+    int completed(TopicPartition partition, State started, long offset) {
+        // A record of a revoked partition may finish after the partition was reassigned
+        if (partitions.get(partition) != started) return -1;
+        synchronized (started) {
+            if (!started.inFlight.remove(offset)) return -1;
+            return started.inFlight.size();
+        }
+    }
+
+    int inFlight(TopicPartition partition) {
+        State state = partitions.get(partition);
+        if (state == null) return 0;
+        synchronized (state) {
+            return state.inFlight.size();
+        }
+    }
+
+    int inFlight() {
+        int total = 0;
+        for (TopicPartition partition : partitions.keySet()) {
+            total += inFlight(partition);
+        }
+        return total;
+    }
+
+    /** Offsets to commit for {@code only} (all partitions when null) that moved since the last call. */
+    Map<TopicPartition, OffsetAndMetadata> committable(Collection<TopicPartition> only) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        partitions.forEach((partition, state) -> {
+            if (only != null && !only.contains(partition)) return;
+            synchronized (state) {
+                long offset = state.inFlight.isEmpty() ? state.next : state.inFlight.first();
+                if (offset > state.committed) {
+                    state.committed = offset;
+                    offsets.put(partition, new OffsetAndMetadata(offset));
+                }
+            }
+        });
+        return offsets;
+    }
+
+    /** Undoes {@link #committable} for offsets whose commit failed, so they are offered again. */
+    void commitFailed(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        offsets.forEach((partition, offset) -> {
+            State state = partitions.get(partition);
+            if (state == null) return;
+            synchronized (state) {
+                if (state.committed == offset.offset()) state.committed = -1;
+            }
+        });
+    }
+
+    void forget(Collection<TopicPartition> revoked) {
+        revoked.forEach(partitions::remove);
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.analytics.redis;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.sketch.CountMinSketch;
+import com.example.analytics.sketch.SpaceSaving;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-instance heavy hitters for top-books. Every BORROWED event this
+ * instance consumes goes into a {@link SpaceSaving} summary backed by a
+ * {@link CountMinSketch}, which answers "top books on this instance" with an
+ * error bound per book and is reset every {@code period}.
+ * <p>
+ * When {@code enabled}, the record consumer hands its borrows to
+ * {@link #record} instead of writing Redis per event: they are buffered and
+ * flushed to {@link TopBooksCacheService} in one call every
+ * {@code flush-interval}, or as soon as {@code flush-threshold} borrows are
+ * buffered. The offset is acknowledged before the flush, so a crash loses at
+ * most the unflushed counts. A failed flush keeps its borrows for the next
+ * attempt, and the flush skips event ids Redis has already counted, so a
+ * retried flush or redelivered event does not count twice.
+ */
+@Component
+public class LocalTopBooksAggregator {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalTopBooksAggregator.class);
+
+    /** Local top-k with the bounds that apply to its counts. */
+    public record Snapshot(List<SpaceSaving.Counter> top,
+                           Instant since,
+                           long total,
+                           long unmonitoredBound,
+                           double sketchErrorBound,
+                           double sketchConfidence) { }
+
+    private final TopBooksCacheService cacheService;
+    private final boolean enabled;
+    private final int capacity;
+    private final int sketchWidth;
+    private final int sketchDepth;
+    private final int flushThreshold;
+    private final Duration period;
+
+    private final Object lock = new Object();
+    private SpaceSaving summary;
+    private Instant periodStart;
+    private List<LoanEvent> pending = new ArrayList<>();
+    private List<LoanEvent> flushing = List.of();
+
+    private final Counter flushFailures;
+    private final DistributionSummary flushSizes;
+
+    public LocalTopBooksAggregator(TopBooksCacheService cacheService,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${library.analytics.top-books.local.enabled:false}") boolean enabled,
+                                   @Value("${library.analytics.top-books.local.capacity:1000}") int capacity,
+                                   @Value("${library.analytics.top-books.local.sketch-width:2048}") int sketchWidth,
+                                   @Value("${library.analytics.top-books.local.sketch-depth:5}") int sketchDepth,
+                                   @Value("${library.analytics.top-books.local.flush-threshold:1000}") int flushThreshold,
+                                   @Value("${library.analytics.top-books.local.period:PT1H}") Duration period) {
+        this.cacheService = cacheService;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.sketchWidth = sketchWidth;
+        this.sketchDepth = sketchDepth;
+        this.flushThreshold = flushThreshold;
+        this.period = period;
+        this.summary = newSummary();
+        this.periodStart = Instant.now();
+
+        this.flushFailures = meterRegistry.counter("analytics_top_books_flush_failures_total");
+        this.flushSizes = DistributionSummary.builder("analytics_top_books_flush_size")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("analytics_top_books_pending_borrows", this, a -> a.pendingBorrows())
+                .register(meterRegistry);
+    }
+
+    /** True when borrows should go through {@link #record} rather than straight to Redis. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Counts borrows locally and buffers them for the next Redis flush. */
+    public void record(Collection<LoanEvent> borrows) {
+        if (borrows.isEmpty()) return;
+        Instant now = Instant.now();
+        boolean flushNow;
+        synchronized (lock) {
+            observeLocked(borrows, now);
+            pending.addAll(borrows);
+            flushNow = pending.size() >= flushThreshold;
+        }
+        if (flushNow) flush();
+    }
+
+    /** Counts borrows locally only, for callers that write Redis themselves. */
+    public void observe(Collection<LoanEvent> borrows) {
+        if (borrows.isEmpty()) return;
+        synchronized (lock) {
+            observeLocked(borrows, Instant.now());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.analytics.top-books.local.flush-interval:PT5S}")
+    public void scheduledFlush() {
+        if (!enabled) return;
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Top-books flush failed: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (!enabled) return;
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Top-books flush on shutdown failed, {} borrows not written: {}", pendingBorrows(), e.getMessage());
+        }
+    }
+
+    /** Writes the buffered borrows to Redis in one call. */
+    public void flush() {
+        List<LoanEvent> batch;
+        synchronized (lock) {
+            // One flush at a time; a concurrent caller leaves the buffer to the next one
+            if (pending.isEmpty() || !flushing.isEmpty()) return;
+            batch = pending;
+            flushing = batch;
+            pending = new ArrayList<>();
+        }
+        try {
+            cacheService.incrementBorrowCounts(batch);
+            flushSizes.record(batch.size());
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            synchronized (lock) {
+                pending.addAll(batch);
+            }
+            throw e;
+        } finally {
+            synchronized (lock) {
+                flushing = List.of();
+            }
+        }
+    }
+
+    public Snapshot snapshot(int limit) {
+        synchronized (lock) {
+            rollPeriod(Instant.now());
+            CountMinSketch tail = summary.tail();
+            return new Snapshot(summary.top(limit), periodStart, tail.total(), summary.unmonitoredBound(),
+                    tail.errorBound(), tail.confidence());
+        }
+    }
+
+    /**
+     * Redis window ranking plus the borrows this instance has not flushed yet,
+     * highest first. Unflushed borrows count in full, as the current bucket does
+     * under decay. Only this instance's buffer is added; other instances' show
+     * up once they flush.
+     */
+    public Map<Long, Double> mergedTop(int limit, TopBooksCacheService.Window window, Duration halfLife) {
+        Map<Long, Long> unflushed = unflushed(window);
+        Set<ZSetOperations.TypedTuple<String>> tuples = cacheService.getTopBooks(limit, window, halfLife);
+
+        Map<Long, Double> merged = new HashMap<>();
+        if (tuples != null) {
+            tuples.forEach(t -> merged.put(Long.valueOf(t.getValue()), t.getScore()));
+        }
+        // A book outside the Redis top-k can only overtake it with local counts, so only those need a lookup
+        List<Long> missing = new ArrayList<>();
+        unflushed.keySet().forEach(bookId -> {
+            if (!merged.containsKey(bookId)) missing.add(bookId);
+        });
+        merged.putAll(cacheService.getScores(missing, window, halfLife));
+        unflushed.forEach((bookId, delta) -> merged.merge(bookId, delta.doubleValue(), Double::sum));
+
+        Map<Long, Double> top = new LinkedHashMap<>();
+        merged.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    private Map<Long, Long> unflushed(TopBooksCacheService.Window window) {
+        Instant now = Instant.now();
+        long fromMinute = TopBooksCacheService.minuteOf(now.minus(window.duration()));
+        Map<Long, Long> counts = new HashMap<>();
+        synchronized (lock) {
+            for (List<LoanEvent> buffer : List.of(pending, flushing)) {
+                for (LoanEvent event : buffer) {
+                    if (TopBooksCacheService.minuteOf(TopBooksCacheService.borrowTime(event, now)) > fromMinute) {
+                        counts.merge(event.bookId(), 1L, Long::sum);
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    private void observeLocked(Collection<LoanEvent> borrows, Instant now) {
+        rollPeriod(now);
+        for (LoanEvent event : borrows) {
+            summary.add(event.bookId(), 1);
+        }
+    }
+
+    private void rollPeriod(Instant now) {
+        if (now.isBefore(periodStart.plus(period))) return;
+        summary = newSummary();
+        periodStart = now;
+    }
+
+    private SpaceSaving newSummary() {
+        return new SpaceSaving(capacity, new CountMinSketch(sketchWidth, sketchDepth));
+    }
+
+    private int pendingBorrows() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+}
@@ -1,30 +1,318 @@
 package com.example.analytics.redis;
 
+import com.example.analytics.events.LoanEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
 
+/**
+ * Borrow counts per book in time buckets: one ZSET per minute (kept for an
+ * hour) and one per hour (kept for seven days), each expiring on its own, so
+ * memory is bounded by the longest window rather than the whole history.
+ * <p>
+ * A top-books query ZUNIONSTOREs the buckets of its window, optionally
+ * weighting each bucket by {@code 2^(-age/halfLife)}, and keeps the union for
+ * {@code union-ttl} so repeated queries only pay for the final range read; a
+ * zero {@code union-ttl} rebuilds it on every query.
+ * <p>
+ * BORROWED events are counted at most once: with {@code dedup.enabled} each
+ * event id goes into a per-hour "seen" set (kept for {@code dedup.retention}
+ * past its hour, by default as long as the hour buckets) in the same Lua
+ * script that increments the buckets, so a redelivered or retried event is
+ * a no-op. The script builds its key names itself, which assumes a single
+ * Redis node like the rest of the analytics keys.
+ */
 @Service
 public class TopBooksCacheService {
 
-    public static final String KEY_TOP_BOOKS = "analytics:top-books";
-    private static final Duration KEY_TTL = Duration.ofHours(24);
+    static final String KEY_PREFIX = "analytics:top-books:";
+
+    /** Query window; each is a union of buckets of one granularity. */
+    public enum Window {
+        ONE_HOUR("1h", Bucket.MINUTE, 60),
+        ONE_DAY("24h", Bucket.HOUR, 24),
+        SEVEN_DAYS("7d", Bucket.HOUR, 24 * 7);
+
+        private final String param;
+        private final Bucket bucket;
+        private final int buckets;
+
+        Window(String param, Bucket bucket, int buckets) {
+            this.param = param;
+            this.bucket = bucket;
+            this.buckets = buckets;
+        }
+
+        public Duration duration() {
+            return Duration.ofSeconds(bucket.sizeSeconds * buckets);
+        }
+
+        public static Window fromParam(String param) {
+            for (Window window : values()) {
+                if (window.param.equalsIgnoreCase(param)) return window;
+            }
+            throw new IllegalArgumentException("window must be one of 1h, 24h, 7d");
+        }
+    }
+
+    private enum Bucket {
+        MINUTE("m:", Duration.ofMinutes(1), Duration.ofHours(1)),
+        HOUR("h:", Duration.ofHours(1), Duration.ofDays(7));
+
+        final String prefix;
+        final long sizeSeconds;
+        final Duration retention;
+
+        Bucket(String prefix, Duration size, Duration retention) {
+            this.prefix = KEY_PREFIX + prefix;
+            this.sizeSeconds = size.toSeconds();
+            this.retention = retention;
+        }
+
+        long indexOf(Instant at) {
+            return Math.floorDiv(at.getEpochSecond(), sizeSeconds);
+        }
+
+        String key(long index) {
+            return prefix + index;
+        }
+
+        Instant expiresAt(long index) {
+            return Instant.ofEpochSecond((index + 1) * sizeSeconds).plus(retention);
+        }
+    }
+
+    // ARGV: key prefix, seen retention, minute retention, hour retention (seconds),
+    // then eventId, bookId, minute index per event. Returns how many events were new.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> COUNT_ONCE_SCRIPT = RedisScript.of("""
+            local prefix = ARGV[1]
+            local seenRetention, minuteRetention, hourRetention = tonumber(ARGV[2]), tonumber(ARGV[3]), tonumber(ARGV[4])
+            local counted = {}
+            for i = 5, #ARGV, 3 do
+              local eventId, book, minute = ARGV[i], ARGV[i + 1], tonumber(ARGV[i + 2])
+              local hour = math.floor(minute / 60)
+              local seen = prefix .. 'seen:' .. hour
+              if redis.call('SADD', seen, eventId) == 1 then
+                redis.call('EXPIREAT', seen, (hour + 1) * 3600 + seenRetention)
+                local m = prefix .. 'm:' .. ARGV[i + 2]
+                redis.call('ZINCRBY', m, 1, book)
+                redis.call('EXPIREAT', m, (minute + 1) * 60 + minuteRetention)
+                local h = prefix .. 'h:' .. hour
+                redis.call('ZINCRBY', h, 1, book)
+                redis.call('EXPIREAT', h, (hour + 1) * 3600 + hourRetention)
+                counted[#counted + 1] = (i - 2) / 3
+              end
+            end
+            return counted
+            """, List.class);
 
     private final StringRedisTemplate redis;
+    private final Duration unionTtl;
+    private final boolean dedup;
+    private final Duration dedupRetention;
 
-    public TopBooksCacheService(StringRedisTemplate redis) {
+    public TopBooksCacheService(StringRedisTemplate redis,
+                                @Value("${library.analytics.top-books.union-ttl:PT10S}") Duration unionTtl,
+                                @Value("${library.analytics.top-books.dedup.enabled:true}") boolean dedup,
+                                @Value("${library.analytics.top-books.dedup.retention:P7D}") Duration dedupRetention) {
         this.redis = redis;
+        this.unionTtl = unionTtl;
+        this.dedup = dedup;
+        this.dedupRetention = dedupRetention;
+    }
+
+    /** Index of the per-minute bucket that contains {@code at}. */
+    public static long minuteOf(Instant at) {
+        return Bucket.MINUTE.indexOf(at);
     }
 
     public void incrementBorrowCount(Long bookId) {
-        redis.opsForZSet().incrementScore(KEY_TOP_BOOKS, String.valueOf(bookId), 1.0);
-        redis.expire(KEY_TOP_BOOKS, KEY_TTL);
+        incrementBorrowCount(bookId, Instant.now());
+    }
+
+    /** Counts one borrow in the buckets that contain {@code at}. */
+    public void incrementBorrowCount(Long bookId, Instant at) {
+        incrementBorrowCounts(Map.of(bookId, 1L), at);
+    }
+
+    /**
+     * Applies pre-aggregated per-book increments, all at the current time, in a
+     * single pipelined round trip.
+     */
+    public void incrementBorrowCounts(Map<Long, Long> deltas) {
+        incrementBorrowCounts(deltas, Instant.now());
+    }
+
+    public void incrementBorrowCounts(Map<Long, Long> deltas, Instant at) {
+        if (deltas.isEmpty()) return;
+        Map<Long, Map<Long, Long>> byMinute = new HashMap<>();
+        byMinute.put(Bucket.MINUTE.indexOf(at), deltas);
+        write(byMinute);
+    }
+
+    /**
+     * Counts BORROWED events in the buckets of their borrow time (falling back
+     * to when they occurred, then to now), in a single round trip. Events
+     * already counted are skipped when dedup is on.
+     *
+     * @return the events counted by this call, in their original order
+     */
+    public List<LoanEvent> incrementBorrowCounts(Collection<LoanEvent> borrows) {
+        if (borrows.isEmpty()) return List.of();
+        Instant now = Instant.now();
+        if (dedup) {
+            return countOnce(List.copyOf(borrows), now);
+        }
+        Map<Long, Map<Long, Long>> byMinute = new HashMap<>();
+        for (LoanEvent event : borrows) {
+            byMinute.computeIfAbsent(minuteOf(borrowTime(event, now)), m -> new HashMap<>())
+                    .merge(event.bookId(), 1L, Long::sum);
+        }
+        write(byMinute);
+        return List.copyOf(borrows);
     }
 
+    /** When a borrow is counted: its borrow time, else when the event occurred, else {@code now}. */
+    public static Instant borrowTime(LoanEvent event, Instant now) {
+        return event.borrowedAt() != null ? event.borrowedAt()
+                : event.occurredAt() != null ? event.occurredAt() : now;
+    }
+
+    private List<LoanEvent> countOnce(List<LoanEvent> borrows, Instant now) {
+        List<String> args = new ArrayList<>(4 + borrows.size() * 3);
+        args.add(KEY_PREFIX);
+        args.add(String.valueOf(dedupRetention.toSeconds()));
+        args.add(String.valueOf(Bucket.MINUTE.retention.toSeconds()));
+        args.add(String.valueOf(Bucket.HOUR.retention.toSeconds()));
+        for (LoanEvent event : borrows) {
+            // Events without an id cannot be recognised again; give each a one-off id so it still counts
+            args.add(event.eventId() != null ? event.eventId() : "anonymous:" + UUID.randomUUID());
+            args.add(String.valueOf(event.bookId()));
+            args.add(String.valueOf(minuteOf(borrowTime(event, now))));
+        }
+        List<?> positions = redis.execute(COUNT_ONCE_SCRIPT, List.of(), args.toArray());
+        if (positions == null) return List.of();
+        // 1-based positions in borrows of the events that were not seen before
+        List<LoanEvent> counted = new ArrayList<>(positions.size());
+        for (Object position : positions) {
+            counted.add(borrows.get(((Number) position).intValue() - 1));
+        }
+        return counted;
+    }
+
+    /** Top books of the last 24 hours, without decay. */
     public Set<ZSetOperations.TypedTuple<String>> getTopBooks(int limit) {
-        return redis.opsForZSet().reverseRangeWithScores(KEY_TOP_BOOKS, 0, Math.max(0, limit - 1));
+        return getTopBooks(limit, Window.ONE_DAY, null);
+    }
+
+    /**
+     * @param halfLife when set, a bucket's counts are halved for every
+     *                 {@code halfLife} of its age; null counts all buckets equally
+     */
+    public Set<ZSetOperations.TypedTuple<String>> getTopBooks(int limit, Window window, Duration halfLife) {
+        return readUnion(window, halfLife,
+                union -> redis.opsForZSet().reverseRangeWithScores(union, 0, Math.max(0, limit - 1)));
+    }
+
+    /**
+     * Window scores of the given books, from the same union as
+     * {@link #getTopBooks(int, Window, Duration)}; books without borrows are absent.
+     */
+    public Map<Long, Double> getScores(Collection<Long> bookIds, Window window, Duration halfLife) {
+        Map<Long, Double> scores = new HashMap<>();
+        if (bookIds.isEmpty()) return scores;
+        List<Long> ids = new ArrayList<>(bookIds);
+        List<Double> values = readUnion(window, halfLife,
+                union -> redis.opsForZSet().score(union, ids.stream().map(String::valueOf).toArray()));
+        for (int i = 0; values != null && i < ids.size(); i++) {
+            if (values.get(i) != null) scores.put(ids.get(i), values.get(i));
+        }
+        return scores;
+    }
+
+    private <R> R readUnion(Window window, Duration halfLife, Function<String, R> reader) {
+        if (halfLife != null && (halfLife.isZero() || halfLife.isNegative())) {
+            throw new IllegalArgumentException("halfLife must be positive");
+        }
+        Instant now = Instant.now();
+        Bucket bucket = window.bucket;
+        long current = bucket.indexOf(now);
+        String union = KEY_PREFIX + "union:" + window.param + ":" + (halfLife == null ? "flat" : halfLife.toSeconds())
+                + ":" + current;
+        boolean reuse = !unionTtl.isZero() && !unionTtl.isNegative();
+        if (!reuse) union += ":" + UUID.randomUUID();
+
+        if (!reuse || !Boolean.TRUE.equals(redis.hasKey(union))) {
+            List<String> keys = new ArrayList<>(window.buckets);
+            double[] weights = new double[window.buckets];
+            for (int age = 0; age < window.buckets; age++) {
+                long index = current - age;
+                keys.add(bucket.key(index));
+                weights[age] = halfLife == null ? 1.0 : decayWeight(bucket, index, now, halfLife);
+            }
+            redis.opsForZSet().unionAndStore(keys.get(0), keys.subList(1, keys.size()), union,
+                    Aggregate.SUM, Weights.of(weights));
+            if (reuse) redis.expire(union, unionTtl);
+        }
+        R result = reader.apply(union);
+        // EXPIRE with a zero TTL would delete the union before it is read, so drop it afterwards instead
+        if (!reuse) redis.delete(union);
+        return result;
+    }
+
+    private static double decayWeight(Bucket bucket, long index, Instant now, Duration halfLife) {
+        // Age measured from the middle of the bucket; the current bucket counts in full
+        double midpoint = (index + 0.5) * bucket.sizeSeconds;
+        double ageSeconds = Math.max(0, now.getEpochSecond() - midpoint);
+        return Math.pow(2, -ageSeconds / halfLife.toSeconds());
+    }
+
+    private void write(Map<Long, Map<Long, Long>> deltasByMinute) {
+        // Roll the minute buckets up into their hours so each hour key is written once
+        Map<Long, Map<Long, Long>> byHour = new HashMap<>();
+        long minutesPerHour = Bucket.HOUR.sizeSeconds / Bucket.MINUTE.sizeSeconds;
+        deltasByMinute.forEach((minute, deltas) -> {
+            Map<Long, Long> hour = byHour.computeIfAbsent(Math.floorDiv(minute, minutesPerHour), h -> new HashMap<>());
+            deltas.forEach((bookId, delta) -> hour.merge(bookId, delta, Long::sum));
+        });
+
+        redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                writeBuckets(ops, Bucket.MINUTE, deltasByMinute);
+                writeBuckets(ops, Bucket.HOUR, byHour);
+                return null;
+            }
+        });
+    }
+
+    private static void writeBuckets(RedisOperations<String, String> ops, Bucket bucket,
+                                     Map<Long, Map<Long, Long>> deltasByIndex) {
+        deltasByIndex.forEach((index, deltas) -> {
+            String key = bucket.key(index);
+            deltas.forEach((bookId, delta) -> ops.opsForZSet().incrementScore(key, String.valueOf(bookId), delta));
+            ops.expireAt(key, bucket.expiresAt(index));
+        });
     }
 }
@@ -0,0 +1,316 @@
+package com.example.analytics.report;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Overdue-loan counts per member, kept in Redis and updated incrementally
+ * from the loan event stream instead of re-aggregating the loans table.
+ * <p>
+ * Every active loan is an entry {@code loanId:memberId}. It sits in the
+ * {@code pending} ZSET scored by due date until the periodic sweep moves it
+ * into the {@code overdue} set and bumps the member's score in the
+ * {@code members} ZSET (an OVERDUE event from the lending service does the
+ * same without waiting for the sweep); a return removes it from wherever it is. Each
+ * transition is one Lua script, so concurrent consumers and sweeps cannot
+ * double count. Returned loans leave a tombstone for
+ * {@code tombstone-retention} so a redelivered BORROWED event does not bring
+ * them back.
+ * <p>
+ * Events that were never seen (e.g. before the leaderboard was switched on)
+ * are fixed by {@link #rebuild}, which reloads everything from SQL;
+ * {@link OverdueReportService#reconcile} reports any drift.
+ */
+@Service
+public class OverdueLeaderboard {
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueLeaderboard.class);
+
+    static final String KEY_PENDING = "analytics:overdue:pending";
+    static final String KEY_OVERDUE = "analytics:overdue:loans";
+    static final String KEY_MEMBERS = "analytics:overdue:members";
+    static final String KEY_RETURNED = "analytics:overdue:returned";
+    private static final String REBUILD_SUFFIX = ":rebuild";
+    private static final int REBUILD_PIPELINE_SIZE = 1000;
+
+    // KEYS: pending, overdue, members, returned  ARGV: type, entry, memberId, dueMillis, nowMillis
+    private static final String APPLY_SCRIPT = """
+            local pending, overdue, members, returned = KEYS[1], KEYS[2], KEYS[3], KEYS[4]
+            local entry = ARGV[2]
+            if ARGV[1] == 'OVERDUE' then
+              if redis.call('ZSCORE', returned, entry) then
+                return 0
+              end
+              redis.call('ZREM', pending, entry)
+              if redis.call('SADD', overdue, entry) == 1 then
+                redis.call('ZINCRBY', members, 1, ARGV[3])
+                return 1
+              end
+              return 0
+            end
+            if ARGV[1] == 'BORROWED' then
+              if redis.call('ZSCORE', returned, entry) or redis.call('SISMEMBER', overdue, entry) == 1 then
+                return 0
+              end
+              return redis.call('ZADD', pending, ARGV[4], entry)
+            end
+            redis.call('ZADD', returned, ARGV[5], entry)
+            if redis.call('ZREM', pending, entry) == 1 then
+              return 1
+            end
+            if redis.call('SREM', overdue, entry) == 1 then
+              if tonumber(redis.call('ZINCRBY', members, -1, ARGV[3])) <= 0 then
+                redis.call('ZREM', members, ARGV[3])
+              end
+              return 1
+            end
+            return 0
+            """;
+
+    // KEYS: pending, overdue, members  ARGV: nowMillis, limit
+    private static final RedisScript<Long> SWEEP_SCRIPT = RedisScript.of("""
+            local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[1], 'LIMIT', 0, ARGV[2])
+            for _, entry in ipairs(due) do
+              redis.call('ZREM', KEYS[1], entry)
+              if redis.call('SADD', KEYS[2], entry) == 1 then
+                redis.call('ZINCRBY', KEYS[3], 1, string.match(entry, ':(%d+)$'))
+              end
+            end
+            return #due
+            """, Long.class);
+
+    // KEYS: pending, members  ARGV: nowMillis. Read-only, so both sets are read at one point in time
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> COUNTS_SCRIPT = RedisScript.of("""
+            return {redis.call('ZRANGE', KEYS[2], 0, -1, 'WITHSCORES'),
+                    redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[1])}
+            """, List.class);
+
+    // KEYS: live keys followed by their rebuilt counterparts
+    private static final RedisScript<Long> SWAP_SCRIPT = RedisScript.of("""
+            local n = #KEYS / 2
+            for i = 1, n do
+              if redis.call('EXISTS', KEYS[n + i]) == 1 then
+                redis.call('RENAME', KEYS[n + i], KEYS[i])
+              else
+                redis.call('DEL', KEYS[i])
+              end
+            end
+            return n
+            """, Long.class);
+
+    private final StringRedisTemplate redis;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int sweepBatchSize;
+    private final Duration tombstoneRetention;
+
+    private final Counter applied;
+    private final Counter promoted;
+
+    public OverdueLeaderboard(StringRedisTemplate redis,
+                              JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${library.analytics.overdue.mode:sql}") OverdueReportService.Mode mode,
+                              @Value("${library.analytics.overdue.sweep-batch-size:1000}") int sweepBatchSize,
+                              @Value("${library.analytics.overdue.tombstone-retention:P7D}") Duration tombstoneRetention) {
+        this.redis = redis;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = mode == OverdueReportService.Mode.INCREMENTAL;
+        this.sweepBatchSize = sweepBatchSize;
+        this.tombstoneRetention = tombstoneRetention;
+        this.applied = meterRegistry.counter("analytics_overdue_events_applied_total");
+        this.promoted = meterRegistry.counter("analytics_overdue_loans_promoted_total");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void apply(LoanEvent event) {
+        applyAll(List.of(event));
+    }
+
+    /** Applies the events in order, in one pipelined round trip. */
+    public void applyAll(List<LoanEvent> events) {
+        if (!enabled) return;
+        List<String[]> calls = new ArrayList<>(events.size());
+        String now = String.valueOf(Instant.now().toEpochMilli());
+        for (LoanEvent event : events) {
+            if (event.loanId() == null || event.memberId() == null) continue;
+            if (event.type() == LoanEventType.BORROWED && event.dueDate() == null) continue;
+            String due = event.dueDate() == null ? "0" : String.valueOf(event.dueDate().toEpochMilli());
+            calls.add(new String[]{KEY_PENDING, KEY_OVERDUE, KEY_MEMBERS, KEY_RETURNED,
+                    event.type().name(), entry(event.loanId(), event.memberId()), String.valueOf(event.memberId()),
+                    due, now});
+        }
+        if (calls.isEmpty()) return;
+
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String[] keysAndArgs : calls) {
+                conn.eval(APPLY_SCRIPT, ReturnType.INTEGER, 4, keysAndArgs);
+            }
+            return null;
+        });
+        applied.increment(calls.size());
+    }
+
+    @Scheduled(fixedDelayString = "${library.analytics.overdue.sweep-interval:PT1M}",
+            initialDelayString = "${library.analytics.overdue.sweep-interval:PT1M}")
+    public void scheduledSweep() {
+        if (!enabled) return;
+        try {
+            sweep(Instant.now());
+        } catch (Exception e) {
+            log.warn("Overdue leaderboard sweep failed: {}", e.getMessage());
+        }
+    }
+
+    /** Promotes every pending loan due before {@code now} and trims old tombstones. */
+    public int sweep(Instant now) {
+        List<String> keys = List.of(KEY_PENDING, KEY_OVERDUE, KEY_MEMBERS);
+        String nowMillis = String.valueOf(now.toEpochMilli());
+        int total = 0;
+        long moved;
+        do {
+            Long result = redis.execute(SWEEP_SCRIPT, keys, nowMillis, String.valueOf(sweepBatchSize));
+            moved = result == null ? 0 : result;
+            total += (int) moved;
+        } while (moved == sweepBatchSize);
+
+        redis.opsForZSet().removeRangeByScore(KEY_RETURNED, Double.NEGATIVE_INFINITY,
+                now.minus(tombstoneRetention).toEpochMilli());
+        if (total > 0) {
+            promoted.increment(total);
+            log.debug("Overdue sweep promoted {} loans", total);
+        }
+        return total;
+    }
+
+    /** Top members by overdue count, highest first. */
+    public Map<Long, Long> top(int limit) {
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                redis.opsForZSet().reverseRangeWithScores(KEY_MEMBERS, 0, Math.max(0, limit - 1));
+        return toCounts(tuples);
+    }
+
+    /**
+     * Every member's overdue count as of {@code now}: the promoted counts plus
+     * pending loans already due that no sweep has moved yet. Changes nothing.
+     */
+    public Map<Long, Long> countsAsOf(Instant now) {
+        List<?> result = redis.execute(COUNTS_SCRIPT, List.of(KEY_PENDING, KEY_MEMBERS),
+                String.valueOf(now.toEpochMilli()));
+        Map<Long, Long> counts = new HashMap<>();
+        if (result == null || result.size() != 2) return counts;
+
+        List<?> members = (List<?>) result.get(0);
+        for (int i = 0; i + 1 < members.size(); i += 2) {
+            counts.put(Long.valueOf(members.get(i).toString()), (long) Double.parseDouble(members.get(i + 1).toString()));
+        }
+        for (Object entry : (List<?>) result.get(1)) {
+            String e = entry.toString();
+            counts.merge(Long.valueOf(e.substring(e.lastIndexOf(':') + 1)), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Replaces the leaderboard with the active loans currently in SQL. The
+     * new keys are built aside and swapped in atomically; events consumed
+     * while the rebuild runs may be lost and show up in the next reconcile.
+     *
+     * @return number of active loans loaded
+     */
+    public int rebuild(Instant now) {
+        List<String> live = List.of(KEY_PENDING, KEY_OVERDUE, KEY_MEMBERS);
+        List<String> rebuilt = live.stream().map(k -> k + REBUILD_SUFFIX).toList();
+        redis.delete(rebuilt);
+
+        long nowMillis = now.toEpochMilli();
+        Map<Long, Long> overdueCounts = new HashMap<>();
+        List<Object[]> buffer = new ArrayList<>(REBUILD_PIPELINE_SIZE);
+        int[] loaded = {0};
+        jdbcTemplate.query("SELECT id, member_id, due_date FROM loans WHERE returned_at IS NULL", rs -> {
+            long memberId = rs.getLong("member_id");
+            long dueMillis = rs.getTimestamp("due_date").getTime();
+            buffer.add(new Object[]{entry(rs.getLong("id"), memberId), dueMillis});
+            if (dueMillis < nowMillis) overdueCounts.merge(memberId, 1L, Long::sum);
+            if (buffer.size() == REBUILD_PIPELINE_SIZE) {
+                writeRebuildChunk(buffer, rebuilt, nowMillis);
+                buffer.clear();
+            }
+            loaded[0]++;
+        });
+        writeRebuildChunk(buffer, rebuilt, nowMillis);
+
+        if (!overdueCounts.isEmpty()) {
+            Set<ZSetOperations.TypedTuple<String>> members = new HashSet<>();
+            overdueCounts.forEach((memberId, count) ->
+                    members.add(ZSetOperations.TypedTuple.of(String.valueOf(memberId), count.doubleValue())));
+            redis.opsForZSet().add(rebuilt.get(2), members);
+        }
+
+        List<String> swapKeys = new ArrayList<>(live);
+        swapKeys.addAll(rebuilt);
+        redis.execute(SWAP_SCRIPT, swapKeys);
+        log.info("Overdue leaderboard rebuilt from {} active loans, {} members overdue", loaded[0], overdueCounts.size());
+        return loaded[0];
+    }
+
+    private void writeRebuildChunk(List<Object[]> rows, List<String> keys, long nowMillis) {
+        if (rows.isEmpty()) return;
+        redis.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Object[] row : rows) {
+                String entry = (String) row[0];
+                long dueMillis = (Long) row[1];
+                if (dueMillis < nowMillis) {
+                    conn.sAdd(keys.get(1), entry);
+                } else {
+                    conn.zAdd(keys.get(0), dueMillis, entry);
+                }
+            }
+            return null;
+        });
+    }
+
+    private static String entry(Long loanId, Long memberId) {
+        return loanId + ":" + memberId;
+    }
+
+    private static Map<Long, Long> toCounts(Set<ZSetOperations.TypedTuple<String>> tuples) {
+        Map<Long, Long> counts = new LinkedHashMap<>();
+        if (tuples == null) return counts;
+        for (ZSetOperations.TypedTuple<String> t : tuples) {
+            if (t.getValue() == null || t.getScore() == null) continue;
+            counts.put(Long.valueOf(t.getValue()), t.getScore().longValue());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.analytics.report;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Result of comparing the incremental overdue leaderboard with the SQL
+ * aggregation. Only the first {@link OverdueReportService#MAX_REPORTED_MISMATCHES}
+ * mismatches are listed; {@code mismatchCount} counts all of them.
+ */
+public record OverdueReconciliation(
+        Instant checkedAt,
+        int sqlMembers,
+        int leaderboardMembers,
+        int mismatchCount,
+        List<Mismatch> mismatches
+) {
+
+    public record Mismatch(Long memberId, long sqlCount, long leaderboardCount) { }
+
+    public boolean consistent() {
+        return mismatchCount == 0;
+    }
+}
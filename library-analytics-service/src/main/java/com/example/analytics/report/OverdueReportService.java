@@ -1,19 +1,55 @@
 package com.example.analytics.report;
 
+import com.example.analytics.datasource.ReplicaRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class OverdueReportService {
 
+    private static final Logger log = LoggerFactory.getLogger(OverdueReportService.class);
+
+    static final int MAX_REPORTED_MISMATCHES = 100;
+
+    /**
+     * Where {@link #topOverdueMembers} gets its counts: {@code SQL} aggregates
+     * the loans table on every call, {@code INCREMENTAL} reads the
+     * {@link OverdueLeaderboard} maintained from loan events.
+     */
+    public enum Mode {
+        SQL,
+        INCREMENTAL
+    }
+
     private final JdbcTemplate jdbcTemplate;
+    private final OverdueLeaderboard leaderboard;
+    private final Mode mode;
 
-    public OverdueReportService(JdbcTemplate jdbcTemplate) {
+    public OverdueReportService(JdbcTemplate jdbcTemplate,
+                                OverdueLeaderboard leaderboard,
+                                @Value("${library.analytics.overdue.mode:sql}") Mode mode) {
         this.jdbcTemplate = jdbcTemplate;
+        this.leaderboard = leaderboard;
+        this.mode = mode;
+    }
+
+    public List<OverdueMemberRow> topOverdueMembers(Instant now, int limit) {
+        return mode == Mode.INCREMENTAL ? topOverdueMembersIncremental(limit) : topOverdueMembersSql(now, limit);
     }
 
     /**
@@ -21,7 +57,7 @@ public class OverdueReportService {
      * - aggregates overdue counts per member
      * - uses a window function (DENSE_RANK) to rank members by overdue_count
      */
-    public List<OverdueMemberRow> topOverdueMembers(Instant now, int limit) {
+    public List<OverdueMemberRow> topOverdueMembersSql(Instant now, int limit) {
         String sql = """
                 SELECT member_id, name, email, overdue_count, rnk
                 FROM (
@@ -49,4 +85,99 @@ public class OverdueReportService {
                 .rank(rs.getInt("rnk"))
                 .build(), Timestamp.from(now), limit);
     }
+
+    /**
+     * Top members from the leaderboard, O(log n + limit) in Redis plus one
+     * primary-key lookup for names. Ranks are dense like the SQL version;
+     * members tied at the cut-off may differ from the SQL pick.
+     */
+    public List<OverdueMemberRow> topOverdueMembersIncremental(int limit) {
+        Map<Long, Long> counts = leaderboard.top(limit);
+        if (counts.isEmpty()) return List.of();
+        Map<Long, OverdueMemberRow> members = findMembers(counts.keySet());
+
+        List<Map.Entry<Long, Long>> ordered = new ArrayList<>(counts.entrySet());
+        ordered.sort(Map.Entry.<Long, Long>comparingByValue(Comparator.reverseOrder())
+                .thenComparing(Map.Entry.comparingByKey()));
+
+        List<OverdueMemberRow> rows = new ArrayList<>(ordered.size());
+        int rank = 0;
+        long previous = -1;
+        for (Map.Entry<Long, Long> e : ordered) {
+            if (e.getValue() != previous) {
+                rank++;
+                previous = e.getValue();
+            }
+            OverdueMemberRow member = members.get(e.getKey());
+            rows.add(OverdueMemberRow.builder()
+                    .memberId(e.getKey())
+                    .name(member == null ? null : member.getName())
+                    .email(member == null ? null : member.getEmail())
+                    .overdueCount(e.getValue())
+                    .rank(rank)
+                    .build());
+        }
+        return rows;
+    }
+
+    /**
+     * Compares every member's overdue count in SQL with the leaderboard. Loans
+     * that fell due since the last sweep are counted as overdue on the
+     * leaderboard side, without sweeping, so they are not reported as drift.
+     * Aggregates the whole loans table, so it is an admin diagnostic only.
+     */
+    public OverdueReconciliation reconcile(Instant now) {
+        Map<Long, Long> leaderboardCounts = leaderboard.countsAsOf(now);
+
+        Map<Long, Long> sqlCounts = new HashMap<>();
+        jdbcTemplate.query("""
+                SELECT member_id, COUNT(*) AS overdue_count
+                FROM loans
+                WHERE returned_at IS NULL
+                  AND due_date < ?
+                GROUP BY member_id
+                """, rs -> {
+            sqlCounts.put(rs.getLong("member_id"), rs.getLong("overdue_count"));
+        }, Timestamp.from(now));
+
+        Set<Long> memberIds = new HashSet<>(sqlCounts.keySet());
+        memberIds.addAll(leaderboardCounts.keySet());
+        List<OverdueReconciliation.Mismatch> mismatches = memberIds.stream()
+                .sorted()
+                .map(id -> new OverdueReconciliation.Mismatch(id,
+                        sqlCounts.getOrDefault(id, 0L), leaderboardCounts.getOrDefault(id, 0L)))
+                .filter(m -> m.sqlCount() != m.leaderboardCount())
+                .collect(Collectors.toList());
+
+        if (!mismatches.isEmpty()) {
+            log.warn("Overdue leaderboard differs from SQL for {} members", mismatches.size());
+        }
+        return new OverdueReconciliation(now, sqlCounts.size(), leaderboardCounts.size(), mismatches.size(),
+                mismatches.subList(0, Math.min(mismatches.size(), MAX_REPORTED_MISMATCHES)));
+    }
+
+    /**
+     * Reloads the leaderboard from SQL; also the way to seed it before switching to incremental mode.
+     * Reads the primary: the swap replaces whatever events have been applied, so a lagging replica would lose them.
+     */
+    public OverdueReconciliation rebuild(Instant now) {
+        return ReplicaRoutingDataSource.onPrimary(() -> {
+            leaderboard.rebuild(now);
+            return reconcile(now);
+        });
+    }
+
+    private Map<Long, OverdueMemberRow> findMembers(Set<Long> ids) {
+        if (ids.isEmpty()) return Collections.emptyMap();
+        String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(","));
+        Map<Long, OverdueMemberRow> members = new HashMap<>();
+        jdbcTemplate.query("SELECT id, name, email FROM members WHERE id IN (" + placeholders + ")", rs -> {
+            members.put(rs.getLong("id"), OverdueMemberRow.builder()
+                    .memberId(rs.getLong("id"))
+                    .name(rs.getString("name"))
+                    .email(rs.getString("email"))
+                    .build());
+        }, ids.toArray());
+        return members;
+    }
 }
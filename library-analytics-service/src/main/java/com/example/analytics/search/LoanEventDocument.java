@@ -1,31 +1,92 @@
 package com.example.analytics.search;
 
+import com.example.analytics.events.LoanEvent;
 import com.example.analytics.events.LoanEventType;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Dynamic;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.WriteTypeHint;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
 
+/**
+ * One loan event, stored in the monthly index of its {@code occurredAt} (see
+ * {@link LoanEventIndices}). Reads through this class go to the alias over
+ * all months. The mapping is strict, no {@code _class} hint is written, and
+ * doc values are kept only for the fields that are sorted or aggregated on.
+ * {@code eventId} is also kept as a keyword, as the tie-breaker for cursor
+ * paging. Returns carry {@code loanDurationSeconds} and {@code returnedLate},
+ * computed at index time so filters and aggregations need no scripts. Those
+ * two are only filtered and aggregated on, so the index template leaves them
+ * out of {@code _source} ({@link #DERIVED_FIELDS}); documents read back get
+ * them again from {@link #deriveReturnFields()}.
+ */
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Document(indexName = "loan-events")
+@Document(indexName = LoanEventIndices.READ_ALIAS, createIndex = false,
+        writeTypeHint = WriteTypeHint.FALSE, dynamic = Dynamic.STRICT)
 public class LoanEventDocument {
+    /** Indexed but not kept in {@code _source}; recomputed from the dates on read. */
+    static final List<String> DERIVED_FIELDS = List.of("loanDurationSeconds", "returnedLate");
+
     @Id
+    @Field(type = FieldType.Keyword)
     private String eventId;
 
+    @Field(type = FieldType.Keyword)
     private LoanEventType type;
+    @Field(type = FieldType.Long, docValues = false)
     private Long loanId;
+    @Field(type = FieldType.Long)
     private Long bookId;
+    @Field(type = FieldType.Long)
     private Long memberId;
 
+    @Field(type = FieldType.Date, format = {DateFormat.strict_date_optional_time, DateFormat.epoch_millis}, docValues = false)
     private Instant borrowedAt;
+    @Field(type = FieldType.Date, format = {DateFormat.strict_date_optional_time, DateFormat.epoch_millis}, docValues = false)
     private Instant dueDate;
+    @Field(type = FieldType.Date, format = {DateFormat.strict_date_optional_time, DateFormat.epoch_millis}, docValues = false)
     private Instant returnedAt;
+    @Field(type = FieldType.Date, format = {DateFormat.strict_date_optional_time, DateFormat.epoch_millis})
     private Instant occurredAt;
+
+    @Field(type = FieldType.Long)
+    private Long loanDurationSeconds;
+    @Field(type = FieldType.Boolean, docValues = false)
+    private Boolean returnedLate;
+
+    public static LoanEventDocument from(LoanEvent event) {
+        LoanEventDocument doc = LoanEventDocument.builder()
+                .eventId(event.eventId())
+                .type(event.type())
+                .loanId(event.loanId())
+                .bookId(event.bookId())
+                .memberId(event.memberId())
+                .borrowedAt(event.borrowedAt())
+                .dueDate(event.dueDate())
+                .returnedAt(event.returnedAt())
+                .occurredAt(event.occurredAt())
+                .build();
+        doc.deriveReturnFields();
+        return doc;
+    }
+
+    /** Fills the return-only fields from the event dates, at index time and after a read. */
+    void deriveReturnFields() {
+        if (type != LoanEventType.RETURNED || returnedAt == null) return;
+        if (borrowedAt != null) loanDurationSeconds = Duration.between(borrowedAt, returnedAt).toSeconds();
+        if (dueDate != null) returnedLate = returnedAt.isAfter(dueDate);
+    }
 }
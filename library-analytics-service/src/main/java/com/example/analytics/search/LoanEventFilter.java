@@ -0,0 +1,21 @@
+package com.example.analytics.search;
+
+import com.example.analytics.events.LoanEventType;
+
+import java.time.Instant;
+
+/**
+ * Loan-event search filters; every non-null field narrows the result.
+ * {@code from}/{@code to} bound {@code occurredAt} and also decide which
+ * monthly indices are searched.
+ */
+public record LoanEventFilter(
+        LoanEventType type,
+        Long bookId,
+        Long memberId,
+        Instant from,
+        Instant to,
+        Instant borrowedFrom,
+        Instant borrowedTo,
+        Boolean returnedLate
+) { }
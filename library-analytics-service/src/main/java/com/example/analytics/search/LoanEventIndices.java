@@ -0,0 +1,246 @@
+package com.example.analytics.search;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.PutIndexTemplateRequest;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Monthly loan-event indices ({@code loan-events-yyyy.MM}, UTC). Each event is
+ * written to the month of its {@code occurredAt}, so replays and late events
+ * land next to their neighbours and a time-range search only opens the months
+ * it overlaps. An index template carries the explicit mapping and settings and
+ * adds every month to the {@link #READ_ALIAS} used for unbounded searches.
+ * <p>
+ * The template is installed at startup; the current and next month are created
+ * ahead of their first write and re-checked every {@code rollover-interval}.
+ * With {@code retention-months} above zero, whole months older than that are
+ * dropped. Events in the pre-partitioning {@code loan-events} index become
+ * searchable once copied over with {@link #migrateLegacy()}.
+ */
+@Component
+public class LoanEventIndices {
+
+    private static final Logger log = LoggerFactory.getLogger(LoanEventIndices.class);
+
+    public static final String READ_ALIAS = "loan-events-all";
+    static final String PREFIX = "loan-events-";
+    static final String TEMPLATE = "loan-events";
+    static final String LEGACY_INDEX = "loan-events";
+
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy.MM");
+
+    private final ElasticsearchOperations operations;
+    private final int shards;
+    private final int replicas;
+    private final String refreshInterval;
+    private final int retentionMonths;
+
+    public LoanEventIndices(ElasticsearchOperations operations,
+                            @Value("${library.analytics.search.index.shards:1}") int shards,
+                            @Value("${library.analytics.search.index.replicas:0}") int replicas,
+                            @Value("${library.analytics.search.index.refresh-interval:5s}") String refreshInterval,
+                            @Value("${library.analytics.search.index.retention-months:0}") int retentionMonths) {
+        this.operations = operations;
+        this.shards = shards;
+        this.replicas = replicas;
+        this.refreshInterval = refreshInterval;
+        this.retentionMonths = retentionMonths;
+    }
+
+    public static String indexFor(Instant occurredAt) {
+        return PREFIX + YearMonth.from((occurredAt != null ? occurredAt : Instant.now()).atZone(ZoneOffset.UTC)).format(MONTH);
+    }
+
+    /** Monthly indices overlapping {@code [from, to]}; an open end runs to the current month. */
+    public static List<String> indicesFor(Instant from, Instant to) {
+        YearMonth first = YearMonth.from(from.atZone(ZoneOffset.UTC));
+        YearMonth last = YearMonth.from((to != null ? to : Instant.now()).atZone(ZoneOffset.UTC));
+        List<String> indices = new ArrayList<>();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            indices.add(PREFIX + month.format(MONTH));
+        }
+        return indices;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void install() {
+        try {
+            putTemplate();
+            updateExistingMappings();
+            rollover();
+        } catch (Exception e) {
+            // Indices are still created from the template on first write once Elasticsearch is reachable
+            log.warn("Failed to install loan-events index template: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.analytics.search.index.rollover-interval:PT1H}",
+            initialDelayString = "${library.analytics.search.index.rollover-interval:PT1H}")
+    public void scheduledRollover() {
+        try {
+            rollover();
+        } catch (Exception e) {
+            log.warn("Loan-events index rollover failed: {}", e.getMessage());
+        }
+    }
+
+    public void save(LoanEventDocument doc) {
+        operations.save(doc, IndexCoordinates.of(indexFor(doc.getOccurredAt())));
+    }
+
+    /** One bulk request; each document goes to the index of its own month. */
+    public void saveAll(List<LoanEventDocument> docs) {
+        List<IndexQuery> queries = new ArrayList<>(docs.size());
+        for (LoanEventDocument doc : docs) {
+            queries.add(new IndexQueryBuilder()
+                    .withId(doc.getEventId())
+                    .withObject(doc)
+                    .withIndex(indexFor(doc.getOccurredAt()))
+                    .build());
+        }
+        operations.bulkIndex(queries, LoanEventDocument.class);
+    }
+
+    /** Indices to search for events that occurred within {@code [from, to]}; all months when {@code from} is null. */
+    public static IndexCoordinates coordinatesFor(Instant from, Instant to) {
+        return from == null ? IndexCoordinates.of(READ_ALIAS) : IndexCoordinates.of(indicesFor(from, to).toArray(String[]::new));
+    }
+
+    /**
+     * Copies the pre-partitioning {@code loan-events} index into the monthly
+     * indices, in bulk batches. Idempotent: documents keep their ids.
+     *
+     * @return number of documents copied
+     */
+    public long migrateLegacy() {
+        IndexCoordinates legacy = IndexCoordinates.of(LEGACY_INDEX);
+        if (!operations.indexOps(legacy).exists()) return 0;
+        long migrated = 0;
+        List<LoanEventDocument> batch = new ArrayList<>(MIGRATION_BATCH_SIZE);
+        try (SearchHitsIterator<LoanEventDocument> hits =
+                     operations.searchForStream(Query.findAll(), LoanEventDocument.class, legacy)) {
+            while (hits.hasNext()) {
+                LoanEventDocument doc = hits.next().getContent();
+                doc.deriveReturnFields();
+                batch.add(doc);
+                if (batch.size() == MIGRATION_BATCH_SIZE) {
+                    saveAll(batch);
+                    migrated += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            saveAll(batch);
+            migrated += batch.size();
+        }
+        log.info("Copied {} loan events from {} into monthly indices", migrated, LEGACY_INDEX);
+        return migrated;
+    }
+
+    private void putTemplate() {
+        IndexOperations indexOps = operations.indexOps(LoanEventDocument.class);
+        Settings settings = new Settings();
+        settings.put("index.number_of_shards", shards);
+        settings.put("index.number_of_replicas", replicas);
+        settings.put("index.refresh_interval", refreshInterval);
+        // Segments sorted newest first, so "latest events" searches can stop early
+        settings.put("index.sort.field", "occurredAt");
+        settings.put("index.sort.order", "desc");
+
+        // Derived fields are indexed for filters and aggregations only. _source cannot
+        // change on an existing index, so months created before this keep them.
+        Document mapping = indexOps.createMapping();
+        mapping.put("_source", Map.of("excludes", LoanEventDocument.DERIVED_FIELDS));
+
+        indexOps.putIndexTemplate(PutIndexTemplateRequest.builder()
+                .withName(TEMPLATE)
+                .withIndexPatterns(PREFIX + "*")
+                .withSettings(settings)
+                .withMapping(mapping)
+                .withAliasActions(new AliasActions(new AliasAction.Add(AliasActionParameters.builder()
+                        .withAliases(READ_ALIAS)
+                        .build())))
+                .build());
+    }
+
+    /** Adds fields introduced since an index was created; existing fields cannot change. */
+    private void updateExistingMappings() {
+        Document mapping = operations.indexOps(LoanEventDocument.class).createMapping();
+        for (String index : monthlyIndices()) {
+            operations.indexOps(IndexCoordinates.of(index)).putMapping(mapping);
+        }
+    }
+
+    private List<String> monthlyIndices() {
+        if (!operations.indexOps(IndexCoordinates.of(READ_ALIAS)).exists()) return List.of();
+        List<String> indices = new ArrayList<>();
+        for (String index : operations.indexOps(IndexCoordinates.of(READ_ALIAS)).getAliases(READ_ALIAS).keySet()) {
+            if (index.startsWith(PREFIX)) indices.add(index);
+        }
+        return indices;
+    }
+
+    private void rollover() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        createIfMissing(PREFIX + current.format(MONTH));
+        createIfMissing(PREFIX + current.plusMonths(1).format(MONTH));
+        if (retentionMonths > 0) {
+            dropOlderThan(current.minusMonths(retentionMonths));
+        }
+    }
+
+    private void createIfMissing(String index) {
+        IndexOperations indexOps = operations.indexOps(IndexCoordinates.of(index));
+        if (indexOps.exists()) return;
+        try {
+            // Empty body: settings, mapping and alias come from the template
+            indexOps.create();
+            log.info("Created loan-events index {}", index);
+        } catch (Exception e) {
+            // Another instance may have created it in the meantime
+            if (!indexOps.exists()) throw e;
+        }
+    }
+
+    private void dropOlderThan(YearMonth oldestKept) {
+        for (String index : monthlyIndices()) {
+            YearMonth month;
+            try {
+                month = YearMonth.parse(index.substring(PREFIX.length()), MONTH);
+            } catch (Exception e) {
+                continue;
+            }
+            if (month.isBefore(oldestKept)) {
+                operations.indexOps(IndexCoordinates.of(index)).delete();
+                log.info("Dropped loan-events index {} (retention {} months)", index, retentionMonths);
+            }
+        }
+    }
+}
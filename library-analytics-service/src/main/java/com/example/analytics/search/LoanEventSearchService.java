@@ -0,0 +1,187 @@
+package com.example.analytics.search;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.CalendarInterval;
+import co.elastic.clients.elasticsearch._types.aggregations.FilterAggregate;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders;
+import co.elastic.clients.json.JsonData;
+import com.example.analytics.events.LoanEventType;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchAggregations;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.IndicesOptions;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Filtered loan-event search and statistics, run entirely in Elasticsearch.
+ * Filters go into a bool {@code filter} clause (cacheable, no scoring).
+ * Results are sorted by {@code occurredAt} then {@code eventId}, newest first,
+ * and paged with {@code search_after}, so a page costs the same at any depth.
+ * Statistics are aggregations on a size-0 search; no documents are fetched.
+ */
+@Service
+public class LoanEventSearchService {
+
+    /** One page of events plus the cursor for the next, null on the last page. */
+    public record EventPage(List<LoanEventDocument> events, String nextCursor) { }
+
+    public record IntervalCount(Instant start, long count) { }
+
+    public record Stats(List<IntervalCount> borrows,
+                        long returns,
+                        long lateReturns,
+                        Double lateReturnRate,
+                        Double averageLoanDurationSeconds) { }
+
+    private final ElasticsearchOperations operations;
+
+    public LoanEventSearchService(ElasticsearchOperations operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * @param cursor {@code nextCursor} of the previous page; when null,
+     *               {@code page} selects an offset page as before (capped at 10k hits by Elasticsearch)
+     */
+    public EventPage search(LoanEventFilter filter, String cursor, int page, int size) {
+        NativeQueryBuilder query = NativeQuery.builder()
+                .withQuery(toQuery(filter))
+                .withSort(s -> s.field(f -> f.field("occurredAt").order(SortOrder.Desc)))
+                .withSort(s -> s.field(f -> f.field("eventId").order(SortOrder.Desc)))
+                .withTrackTotalHits(false)
+                // Months with no events yet have no index
+                .withIndicesOptions(IndicesOptions.LENIENT_EXPAND_OPEN);
+        if (cursor != null) {
+            query.withSearchAfter(decodeCursor(cursor)).withPageable(PageRequest.of(0, size));
+        } else {
+            query.withPageable(PageRequest.of(page, size));
+        }
+
+        SearchHits<LoanEventDocument> hits = operations.search(query.build(), LoanEventDocument.class,
+                LoanEventIndices.coordinatesFor(filter.from(), filter.to()));
+        List<LoanEventDocument> events = new ArrayList<>(hits.getSearchHits().size());
+        List<Object> lastSort = null;
+        for (SearchHit<LoanEventDocument> hit : hits) {
+            LoanEventDocument doc = hit.getContent();
+            // Not in _source of current months
+            doc.deriveReturnFields();
+            events.add(doc);
+            lastSort = hit.getSortValues();
+        }
+        String nextCursor = events.size() == size && lastSort != null ? encodeCursor(lastSort) : null;
+        return new EventPage(events, nextCursor);
+    }
+
+    /**
+     * Borrows per {@code interval} (on {@code occurredAt}), number of returns,
+     * late returns and their rate, and the average loan duration of returned
+     * loans, for the events matching {@code filter}.
+     */
+    public Stats stats(LoanEventFilter filter, CalendarInterval interval) {
+        NativeQuery query = NativeQuery.builder()
+                .withQuery(toQuery(filter))
+                .withMaxResults(0)
+                .withTrackTotalHits(false)
+                .withIndicesOptions(IndicesOptions.LENIENT_EXPAND_OPEN)
+                .withAggregation("borrows", Aggregation.of(a -> a
+                        .filter(term("type", LoanEventType.BORROWED.name()))
+                        .aggregations("per_interval", Aggregation.of(h -> h
+                                .dateHistogram(d -> d.field("occurredAt").calendarInterval(interval))))))
+                .withAggregation("returns", Aggregation.of(a -> a
+                        .filter(term("type", LoanEventType.RETURNED.name()))
+                        .aggregations("duration", Aggregation.of(d -> d.avg(v -> v.field("loanDurationSeconds"))))
+                        .aggregations("late", Aggregation.of(l -> l.filter(q -> q.term(t -> t
+                                .field("returnedLate").value(true)))))))
+                .build();
+
+        SearchHits<LoanEventDocument> hits = operations.search(query, LoanEventDocument.class,
+                LoanEventIndices.coordinatesFor(filter.from(), filter.to()));
+        ElasticsearchAggregations aggregations = (ElasticsearchAggregations) hits.getAggregations();
+
+        if (aggregations == null) {
+            return new Stats(List.of(), 0, 0, null, null);
+        }
+
+        List<IntervalCount> borrows = new ArrayList<>();
+        FilterAggregate borrowed = aggregations.get("borrows").aggregation().getAggregate().filter();
+        borrowed.aggregations().get("per_interval").dateHistogram().buckets().array()
+                .forEach(b -> borrows.add(new IntervalCount(Instant.ofEpochMilli(b.key()), b.docCount())));
+
+        FilterAggregate returned = aggregations.get("returns").aggregation().getAggregate().filter();
+        long returns = returned.docCount();
+        long late = returned.aggregations().get("late").filter().docCount();
+        Double averageDuration = null;
+        if (returns > 0) {
+            double avg = returned.aggregations().get("duration").avg().value();
+            if (!Double.isNaN(avg)) averageDuration = avg;
+        }
+        return new Stats(borrows, returns, late, returns > 0 ? (double) late / returns : null, averageDuration);
+    }
+
+    static Query toQuery(LoanEventFilter filter) {
+        List<Query> filters = new ArrayList<>();
+        if (filter.type() != null) filters.add(term("type", filter.type().name()));
+        if (filter.bookId() != null) filters.add(QueryBuilders.term(t -> t.field("bookId").value(filter.bookId())));
+        if (filter.memberId() != null) filters.add(QueryBuilders.term(t -> t.field("memberId").value(filter.memberId())));
+        if (filter.from() != null || filter.to() != null) {
+            filters.add(range("occurredAt", filter.from(), filter.to()));
+        }
+        if (filter.borrowedFrom() != null || filter.borrowedTo() != null) {
+            filters.add(range("borrowedAt", filter.borrowedFrom(), filter.borrowedTo()));
+        }
+        if (filter.returnedLate() != null) {
+            filters.add(QueryBuilders.term(t -> t.field("returnedLate").value(filter.returnedLate())));
+        }
+        return filters.isEmpty()
+                ? QueryBuilders.matchAll(m -> m)
+                : QueryBuilders.bool(b -> b.filter(filters));
+    }
+
+    private static Query term(String field, String value) {
+        return QueryBuilders.term(t -> t.field(field).value(FieldValue.of(value)));
+    }
+
+    private static Query range(String field, Instant from, Instant to) {
+        return QueryBuilders.range(r -> {
+            r.field(field);
+            if (from != null) r.gte(JsonData.of(from.toString()));
+            if (to != null) r.lte(JsonData.of(to.toString()));
+            return r;
+        });
+    }
+
+    /** Opaque cursor: the last hit's sort values, {@code occurredAt} millis and {@code eventId}. */
+    static String encodeCursor(List<Object> sortValues) {
+        String raw = sortValues.get(0) + ":" + sortValues.get(1);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static List<Object> decodeCursor(String cursor) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+        int separator = raw.indexOf(':');
+        if (separator < 0) throw new IllegalArgumentException("invalid cursor");
+        try {
+            return List.of(Long.parseLong(raw.substring(0, separator)), raw.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.analytics.sketch;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Count-Min sketch over long keys with conservative update. An estimate never
+ * undercounts; it overcounts by at most {@code epsilon * total} with
+ * probability {@code 1 - delta}, where {@code epsilon = e / width} and
+ * {@code delta = e^-depth}. Not thread-safe.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final long[][] counts;
+    private final long[] seeds;
+    private long total;
+
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+        this.width = width;
+        this.counts = new long[depth][width];
+        this.seeds = new long[depth];
+        for (int i = 0; i < depth; i++) {
+            seeds[i] = ThreadLocalRandom.current().nextLong() | 1;
+        }
+    }
+
+    /** Adds {@code delta} and returns the new estimate for {@code key}. */
+    public long add(long key, long delta) {
+        total += delta;
+        int[] cells = new int[counts.length];
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < counts.length; row++) {
+            cells[row] = cell(row, key);
+            estimate = Math.min(estimate, counts[row][cells[row]]);
+        }
+        // Conservative update: raise only the cells that would otherwise fall below the new estimate
+        long updated = estimate + delta;
+        for (int row = 0; row < counts.length; row++) {
+            if (counts[row][cells[row]] < updated) counts[row][cells[row]] = updated;
+        }
+        return updated;
+    }
+
+    public long estimate(long key) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < counts.length; row++) {
+            estimate = Math.min(estimate, counts[row][cell(row, key)]);
+        }
+        return estimate;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /** Additive error bound {@code epsilon * total}, holding with probability {@link #confidence()}. */
+    public double errorBound() {
+        return Math.E / width * total;
+    }
+
+    public double confidence() {
+        return 1 - Math.exp(-counts.length);
+    }
+
+    private int cell(int row, long key) {
+        long h = (key + seeds[row]) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= seeds[row];
+        h ^= h >>> 29;
+        return (int) Math.floorMod(h, (long) width);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.analytics.sketch;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving top-k over long keys, with a {@link CountMinSketch} for the
+ * tail. At most {@code capacity} keys are monitored; a new key evicts the
+ * smallest counter and inherits its count as {@code error}, so no key outside
+ * the summary can have more than the smallest count. Every key also goes into
+ * the sketch, which answers for keys outside the summary and caps reported
+ * counts, since both are upper bounds on the true count. Every reported count
+ * overestimates by at most its {@code error}. Not thread-safe.
+ */
+public class SpaceSaving {
+
+    /** A monitored key: true count is within {@code [count - error, count]}. */
+    public record Counter(long key, long count, long error) { }
+
+    private static final Comparator<Counter> BY_COUNT =
+            Comparator.comparingLong(Counter::count).thenComparingLong(Counter::key);
+
+    private final int capacity;
+    private final CountMinSketch tail;
+    private final Map<Long, Counter> counters = new HashMap<>();
+    private final TreeSet<Counter> ordered = new TreeSet<>(BY_COUNT);
+
+    public SpaceSaving(int capacity, CountMinSketch tail) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.tail = tail;
+    }
+
+    public void add(long key, long delta) {
+        tail.add(key, delta);
+        Counter current = counters.get(key);
+        Counter next;
+        if (current != null) {
+            ordered.remove(current);
+            next = new Counter(key, current.count() + delta, current.error());
+        } else if (counters.size() < capacity) {
+            next = new Counter(key, delta, 0);
+        } else {
+            Counter min = ordered.pollFirst();
+            counters.remove(min.key());
+            next = new Counter(key, min.count() + delta, min.count());
+        }
+        counters.put(key, next);
+        ordered.add(next);
+    }
+
+    /** The {@code limit} largest counters, highest first, each capped by its sketch estimate. */
+    public List<Counter> top(int limit) {
+        List<Counter> top = new ArrayList<>(Math.min(limit, ordered.size()));
+        for (Counter counter : ordered.descendingSet()) {
+            if (top.size() == limit) break;
+            top.add(tightened(counter));
+        }
+        top.sort(BY_COUNT.reversed());
+        return top;
+    }
+
+    /** Upper bound on the count of any key, monitored or not. */
+    public long estimate(long key) {
+        Counter counter = counters.get(key);
+        return counter != null ? tightened(counter).count() : tail.estimate(key);
+    }
+
+    /** Upper bound on the count of any key not currently monitored. */
+    public long unmonitoredBound() {
+        return counters.size() < capacity || ordered.isEmpty() ? 0 : ordered.first().count();
+    }
+
+    private Counter tightened(Counter counter) {
+        long sketched = tail.estimate(counter.key());
+        if (sketched >= counter.count()) return counter;
+        long lowerBound = counter.count() - counter.error();
+        return new Counter(counter.key(), sketched, Math.max(0, sketched - lowerBound));
+    }
+
+    public CountMinSketch tail() {
+        return tail;
+    }
+}
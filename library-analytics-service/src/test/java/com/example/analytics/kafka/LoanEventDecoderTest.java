@@ -0,0 +1,186 @@
+package com.example.analytics.kafka;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventBinaryCodec;
+import com.example.analytics.events.LoanEventFormat;
+import com.example.analytics.events.LoanEventType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The ISO fast path must agree with {@link Instant#parse} on every input, and
+ * both wire formats must decode to the event that was written.
+ */
+class LoanEventDecoderTest {
+
+    private static final LoanEvent EVENT = new LoanEvent("evt-1", LoanEventType.RETURNED, 11L, 22L, 33L,
+            Instant.parse("2024-02-29T09:15:30.123456789Z"), Instant.parse("2024-03-14T09:15:30Z"),
+            Instant.parse("2024-03-10T18:00:00.5Z"), Instant.parse("2024-03-10T18:00:00.500001Z"));
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final LoanEventDecoder decoder = new LoanEventDecoder(objectMapper);
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9})
+    void parsesEveryFractionLength(int digits) {
+        String fraction = digits == 0 ? "" : "." + "907654321".substring(0, digits);
+        assertParsesLikeInstant("2026-03-01T12:34:56" + fraction + "Z");
+        assertParsesLikeInstant("2026-03-01T12:34:56" + (digits == 0 ? "" : "." + "0".repeat(digits - 1) + "1") + "Z");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2024-02-29T00:00:00Z", "2000-02-29T23:59:59Z", "2026-01-31T00:00:00Z", "2026-04-30T00:00:00Z",
+            "2026-12-31T23:59:59.999999999Z", "1970-01-01T00:00:00Z", "1969-12-31T23:59:59Z", "0000-01-01T00:00:00Z"
+    })
+    void parsesValidDates(String value) {
+        assertParsesLikeInstant(value);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2026-02-29T00:00:00Z", "1900-02-29T00:00:00Z", "2026-02-30T00:00:00Z", "2026-04-31T00:00:00Z",
+            "2026-06-31T00:00:00Z", "2026-01-32T00:00:00Z", "2026-00-10T00:00:00Z", "2026-13-10T00:00:00Z",
+            "2026-01-00T00:00:00Z"
+    })
+    void rejectsDaysOutsideTheMonth(String value) {
+        assertParsesLikeInstant(value);
+        assertThatThrownBy(() -> LoanEventDecoder.parseIsoInstant(value)).isInstanceOf(DateTimeException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2026-03-01T12:34:56+02:00", "2026-03-01T12:34:56.5-05:30", "2026-03-01T12:34:56+00:00",
+            "2026-03-01T23:59:60Z", "+12026-03-01T12:34:56Z", "-0001-03-01T12:34:56Z"
+    })
+    void fallsBackForOtherShapes(String value) {
+        assertParsesLikeInstant(value);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "", "2026-03-01", "2026-03-01T12:34:56", "2026-03-01 12:34:56Z", "2026-03-01t12:34:56z",
+            "2026-03-01T12:34:56.Z", "2026-03-01T12:34:56.1234567890Z", "2026-03-01T12:34:56,5Z",
+            "2026-03-01T24:00:00Z", "2026-03-01T12:60:00Z", "2026-03-01T12:34:61Z", "2O26-03-01T12:34:56Z",
+            "2026-03-01T12:34:5xZ", "2026-03-01T12:34:56.12a4Z", "2026-3-01T12:34:56Z", "2026-03-01T12:34:56ZZ"
+    })
+    void rejectsMalformedInput(String value) {
+        assertParsesLikeInstant(value);
+    }
+
+    @Test
+    void agreesWithInstantParseOnRandomInstants() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long seconds = random.nextLong(-2_000_000_000L, 8_000_000_000L);
+            int nanos = switch (random.nextInt(4)) {
+                case 0 -> 0;
+                case 1 -> random.nextInt(1000) * 1_000_000;
+                case 2 -> random.nextInt(1_000_000) * 1000;
+                default -> random.nextInt(1_000_000_000);
+            };
+            assertParsesLikeInstant(Instant.ofEpochSecond(seconds, nanos).toString());
+        }
+    }
+
+    @Test
+    void roundTripsTheBinaryFormat() throws Exception {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(LoanEventFormat.HEADER, LoanEventFormat.BINARY.headerValue());
+
+        assertThat(decoder.decode(LoanEventBinaryCodec.encode(EVENT), headers)).isEqualTo(EVENT);
+    }
+
+    @Test
+    void roundTripsTheBinaryFormatWithNullFields() throws Exception {
+        LoanEvent sparse = new LoanEvent(null, LoanEventType.BORROWED, 1L, null, 3L,
+                Instant.parse("2026-03-01T12:00:00Z"), null, null, null);
+
+        assertThat(decoder.decode(LoanEventBinaryCodec.encode(sparse), LoanEventFormat.BINARY)).isEqualTo(sparse);
+    }
+
+    @Test
+    void roundTripsJsonWithIsoTimestamps() throws Exception {
+        ObjectMapper iso = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+        assertThat(decoder.decode(iso.writeValueAsBytes(EVENT), new RecordHeaders())).isEqualTo(EVENT);
+    }
+
+    @Test
+    void roundTripsJsonAsSpringKafkaWritesIt() throws Exception {
+        try (JsonSerializer<LoanEvent> serializer = new JsonSerializer<>()) {
+            byte[] value = serializer.serialize("library.loan-events", EVENT);
+
+            assertThat(decoder.decode(value, LoanEventFormat.JSON)).isEqualTo(EVENT);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(LoanEventType.class)
+    void decodesTheSameEventFromBothFormats(LoanEventType type) throws Exception {
+        LoanEvent event = new LoanEvent("evt-" + type, type, 1L, 2L, 3L,
+                EVENT.borrowedAt(), EVENT.dueDate(), null, EVENT.occurredAt());
+
+        LoanEvent fromJson = decoder.decode(objectMapper.writeValueAsBytes(event), LoanEventFormat.JSON);
+        LoanEvent fromBinary = decoder.decode(LoanEventBinaryCodec.encode(event), LoanEventFormat.BINARY);
+
+        assertThat(fromJson).isEqualTo(event).isEqualTo(fromBinary);
+    }
+
+    @Test
+    void skipsUnknownFieldsAndStructures() throws Exception {
+        String json = """
+                {"extra":{"nested":[1,{"type":"OVERDUE"}]},"type":"borrowed","loanId":"5","bookId":{"id":2},
+                 "memberId":null,"borrowedAt":"2026-03-01T12:00:00Z","dueDate":[1,2],"returnedAt":"not a date",
+                 "occurredAt":1772366400.25,"tags":["a"]}
+                """;
+
+        LoanEvent event = decoder.decodeJson(json);
+
+        assertThat(event.type()).isEqualTo(LoanEventType.BORROWED);
+        assertThat(event.loanId()).isEqualTo(5L);
+        assertThat(event.bookId()).isZero();
+        assertThat(event.memberId()).isNull();
+        assertThat(event.borrowedAt()).isEqualTo(Instant.parse("2026-03-01T12:00:00Z"));
+        assertThat(event.dueDate()).isNull();
+        assertThat(event.returnedAt()).isNull();
+        assertThat(event.occurredAt()).isEqualTo(Instant.parse("2026-03-01T12:00:00.25Z"));
+    }
+
+    @Test
+    void rejectsMissingOrUnknownTypes() {
+        assertThatThrownBy(() -> decoder.decodeJson("{\"loanId\":1}")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> decoder.decodeJson("{\"type\":\"LOST\"}")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> decoder.decodeJson("[]")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> decoder.decode("{\"type\":".getBytes(StandardCharsets.UTF_8), LoanEventFormat.JSON))
+                .isInstanceOf(Exception.class);
+    }
+
+    private static void assertParsesLikeInstant(String value) {
+        Instant expected;
+        try {
+            expected = Instant.parse(value);
+        } catch (DateTimeException e) {
+            assertThatThrownBy(() -> LoanEventDecoder.parseIsoInstant(value))
+                    .as(value).isInstanceOf(DateTimeException.class);
+            return;
+        }
+        assertThat(LoanEventDecoder.parseIsoInstant(value)).as(value).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.analytics.kafka;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PartitionOffsetsTest {
+
+    private static final TopicPartition P0 = new TopicPartition("library.loan-events", 0);
+    private static final TopicPartition P1 = new TopicPartition("library.loan-events", 1);
+
+    private final PartitionOffsets offsets = new PartitionOffsets();
+
+    @Test
+    void commitsUpToTheLowestOffsetStillInFlight() {
+        PartitionOffsets.State state = null;
+        for (long offset = 0; offset < 5; offset++) {
+            state = offsets.started(P0, offset);
+        }
+
+        assertThat(offsets.completed(P0, state, 2)).isEqualTo(4);
+        assertThat(offsets.completed(P0, state, 3)).isEqualTo(3);
+        assertThat(offsets.committable(null)).isEqualTo(Map.of(P0, new OffsetAndMetadata(0)));
+
+        offsets.completed(P0, state, 0);
+        assertThat(offsets.committable(null)).isEqualTo(Map.of(P0, new OffsetAndMetadata(1)));
+
+        offsets.completed(P0, state, 1);
+        assertThat(offsets.committable(null)).isEqualTo(Map.of(P0, new OffsetAndMetadata(4)));
+
+        assertThat(offsets.completed(P0, state, 4)).isZero();
+        assertThat(offsets.committable(null)).isEqualTo(Map.of(P0, new OffsetAndMetadata(5)));
+        assertThat(offsets.committable(null)).isEmpty();
+        assertThat(offsets.inFlight()).isZero();
+    }
+
+    @Test
+    void ignoresCompletingAnOffsetTwice() {
+        PartitionOffsets.State state = offsets.started(P0, 7);
+        offsets.started(P0, 8);
+
+        assertThat(offsets.completed(P0, state, 7)).isEqualTo(1);
+        assertThat(offsets.completed(P0, state, 7)).isEqualTo(-1);
+        assertThat(offsets.inFlight(P0)).isEqualTo(1);
+    }
+
+    @Test
+    void offersOffsetsAgainAfterAFailedCommit() {
+        PartitionOffsets.State state = offsets.started(P0, 0);
+        offsets.started(P0, 1);
+        offsets.completed(P0, state, 0);
+
+        Map<TopicPartition, OffsetAndMetadata> done = offsets.committable(null);
+        assertThat(done).isEqualTo(Map.of(P0, new OffsetAndMetadata(1)));
+        assertThat(offsets.committable(null)).isEmpty();
+
+        offsets.commitFailed(done);
+        assertThat(offsets.committable(null)).isEqualTo(done);
+    }
+
+    @Test
+    void keepsALaterCommitWhenAnEarlierOneFails() {
+        PartitionOffsets.State state = offsets.started(P0, 0);
+        offsets.started(P0, 1);
+        offsets.completed(P0, state, 0);
+        Map<TopicPartition, OffsetAndMetadata> first = offsets.committable(null);
+
+        offsets.completed(P0, state, 1);
+        Map<TopicPartition, OffsetAndMetadata> second = offsets.committable(null);
+        offsets.commitFailed(first);
+
+        assertThat(second).isEqualTo(Map.of(P0, new OffsetAndMetadata(2)));
+        assertThat(offsets.committable(null)).isEmpty();
+    }
+
+    @Test
+    void limitsCommitsToTheGivenPartitions() {
+        offsets.completed(P0, offsets.started(P0, 3), 3);
+        offsets.completed(P1, offsets.started(P1, 9), 9);
+
+        assertThat(offsets.committable(List.of(P1))).isEqualTo(Map.of(P1, new OffsetAndMetadata(10)));
+        assertThat(offsets.committable(null)).isEqualTo(Map.of(P0, new OffsetAndMetadata(4)));
+    }
+
+    @Test
+    void ignoresLateCompletionsFromBeforeARevoke() {
+        PartitionOffsets.State revoked = offsets.started(P0, 10);
+        offsets.started(P0, 11);
+        offsets.forget(List.of(P0));
+
+        // Reassigned to this instance: 10 and 11 are redelivered and start again
+        PartitionOffsets.State reassigned = offsets.started(P0, 10);
+        offsets.started(P0, 11);
+
+        assertThat(offsets.completed(P0, revoked, 10)).isEqualTo(-1);
+        assertThat(offsets.completed(P0, revoked, 11)).isEqualTo(-1);
+        assertThat(offsets.inFlight(P0)).isEqualTo(2);
+        assertThat(offsets.committable(null)).isEqualTo(Map.of(P0, new OffsetAndMetadata(10)));
+
+        assertThat(offsets.completed(P0, reassigned, 10)).isEqualTo(1);
+        assertThat(offsets.committable(null)).isEqualTo(Map.of(P0, new OffsetAndMetadata(11)));
+    }
+
+    @Test
+    void ignoresCompletionsOfAForgottenPartition() {
+        PartitionOffsets.State state = offsets.started(P0, 0);
+        offsets.forget(List.of(P0));
+
+        assertThat(offsets.completed(P0, state, 0)).isEqualTo(-1);
+        assertThat(offsets.inFlight()).isZero();
+        assertThat(offsets.committable(null)).isEmpty();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.benchmarks.analytics;
+
+import org.springframework.data.redis.connection.zset.Weights;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for Redis with just the sorted-set commands the analytics
+ * caches use, so their update logic can be measured without a network hop.
+ * Pipelines run their callback directly against this template. Keys never
+ * expire, except that a zero or negative TTL deletes the key as in Redis.
+ */
+public class InMemoryRedisTemplate extends StringRedisTemplate {
+
+    private final Map<String, Map<String, Double>> sortedSets = new ConcurrentHashMap<>();
+    private final ZSetOperations<String, String> zSetOps = zSetProxy();
+
+    @Override
+    public ZSetOperations<String, String> opsForZSet() {
+        return zSetOps;
+    }
+
+    @Override
+    public Boolean expire(String key, long timeout, TimeUnit unit) {
+        return sortedSets.containsKey(key);
+    }
+
+    @Override
+    public Boolean expire(String key, Duration timeout) {
+        if (timeout.isZero() || timeout.isNegative()) {
+            return sortedSets.remove(key) != null;
+        }
+        return sortedSets.containsKey(key);
+    }
+
+    @Override
+    public Boolean expireAt(String key, Instant expireAt) {
+        return sortedSets.containsKey(key);
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        return sortedSets.remove(key) != null;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return sortedSets.containsKey(key);
+    }
+
+    @Override
+    public List<Object> executePipelined(SessionCallback<?> session) {
+        session.execute(this);
+        return List.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ZSetOperations<String, String> zSetProxy() {
+        return (ZSetOperations<String, String>) Proxy.newProxyInstance(
+                ZSetOperations.class.getClassLoader(),
+                new Class<?>[]{ZSetOperations.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "incrementScore" -> sortedSets
+                            .computeIfAbsent((String) args[0], k -> new ConcurrentHashMap<>())
+                            .merge((String) args[1], (Double) args[2], Double::sum);
+                    case "score" -> args[1] instanceof Object[] members
+                            ? scores((String) args[0], members)
+                            : sortedSets.getOrDefault((String) args[0], Map.of()).get((String) args[1]);
+                    case "reverseRangeWithScores" -> reverseRange((String) args[0], (Long) args[1], (Long) args[2]);
+                    case "unionAndStore" -> args.length == 5
+                            ? union((String) args[0], (Collection<String>) args[1], (String) args[2], (Weights) args[4])
+                            : unsupported(method.getName());
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private Object unsupported(String name) {
+        throw new UnsupportedOperationException(name);
+    }
+
+    /** ZMSCORE. */
+    private List<Double> scores(String key, Object[] members) {
+        Map<String, Double> set = sortedSets.getOrDefault(key, Map.of());
+        List<Double> out = new ArrayList<>(members.length);
+        for (Object member : members) {
+            out.add(set.get((String) member));
+        }
+        return out;
+    }
+
+    /** ZUNIONSTORE with SUM aggregation. */
+    private Long union(String key, Collection<String> otherKeys, String destKey, Weights weights) {
+        List<String> keys = new ArrayList<>();
+        keys.add(key);
+        keys.addAll(otherKeys);
+        Map<String, Double> out = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            double weight = weights.getWeight(i);
+            sortedSets.getOrDefault(keys.get(i), Map.of())
+                    .forEach((member, score) -> out.merge(member, score * weight, Double::sum));
+        }
+        if (out.isEmpty()) {
+            sortedSets.remove(destKey);
+        } else {
+            sortedSets.put(destKey, new ConcurrentHashMap<>(out));
+        }
+        return (long) out.size();
+    }
+
+    private Set<ZSetOperations.TypedTuple<String>> reverseRange(String key, long start, long end) {
+        Map<String, Double> set = sortedSets.getOrDefault(key, Map.of());
+        Set<ZSetOperations.TypedTuple<String>> out = new LinkedHashSet<>();
+        set.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .skip(start)
+                .limit(end - start + 1)
+                .forEach(e -> out.add(new DefaultTypedTuple<>(e.getKey(), e.getValue())));
+        return out;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.benchmarks.analytics;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventBinaryCodec;
+import com.example.analytics.events.LoanEventFormat;
+import com.example.analytics.events.LoanEventType;
+import com.example.analytics.kafka.LoanEventDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumer-side decoding of one loan-events record value, i.e. what
+ * {@code LoanEventConsumer.parseMessage} does per message. Run with
+ * {@code -prof gc} to see allocation per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoanEventDecodeBenchmark {
+
+    private LoanEventDecoder decoder;
+    private String json;
+    private byte[] jsonBytes;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        decoder = new LoanEventDecoder(objectMapper);
+
+        Instant now = Instant.now();
+        LoanEvent event = new LoanEvent(UUID.randomUUID().toString(), LoanEventType.BORROWED, 42L, 7L, 1001L,
+                now, now.plus(14, ChronoUnit.DAYS), null, now);
+        json = """
+                {"eventId":"%s","type":"BORROWED","loanId":42,"bookId":7,"memberId":1001,\
+                "borrowedAt":"%s","dueDate":"%s","returnedAt":null,"occurredAt":"%s"}"""
+                .formatted(event.eventId(), event.borrowedAt(), event.dueDate(), event.occurredAt());
+        jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+        binary = LoanEventBinaryCodec.encode(event);
+    }
+
+    @Benchmark
+    public LoanEvent parseMessage() throws Exception {
+        return decoder.decodeJson(json);
+    }
+
+    @Benchmark
+    public LoanEvent decodeJsonBytes() throws Exception {
+        return decoder.decode(jsonBytes, LoanEventFormat.JSON);
+    }
+
+    @Benchmark
+    public LoanEvent decodeBinary() throws Exception {
+        return decoder.decode(binary, LoanEventFormat.BINARY);
+    }
+}
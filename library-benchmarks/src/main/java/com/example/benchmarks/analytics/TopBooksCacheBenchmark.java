@@ -0,0 +1,118 @@
+package com.example.benchmarks.analytics;
+
+import com.example.analytics.events.LoanEvent;
+import com.example.analytics.events.LoanEventType;
+import com.example.analytics.redis.LocalTopBooksAggregator;
+import com.example.analytics.redis.TopBooksCacheService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link TopBooksCacheService} update and read logic against
+ * {@link InMemoryRedisTemplate}. This measures the client-side work per event;
+ * network round trips come on top in production. With {@code unionTtl=PT0S}
+ * every read rebuilds the window's union, which is what a cold query costs.
+ * {@code recordLocal} is the per-event cost with the local aggregator on,
+ * including its share of the threshold flushes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopBooksCacheBenchmark {
+
+    private static final int BOOKS = 10_000;
+
+    @Param({"PT10S", "PT0S"})
+    public String unionTtl;
+
+    private TopBooksCacheService cacheService;
+    private Map<Long, Long> batchDeltas;
+    private LocalTopBooksAggregator localTopBooks;
+    private List<List<LoanEvent>> borrows;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // The in-memory template cannot run the dedup Lua script, so counts go through the pipelined path
+        cacheService = new TopBooksCacheService(new InMemoryRedisTemplate(), Duration.parse(unionTtl), false, Duration.ofDays(7));
+        // Spread the history over the last week so every window has several buckets to merge
+        Instant now = Instant.now();
+        for (long id = 0; id < BOOKS; id++) {
+            cacheService.incrementBorrowCount(id, now.minusSeconds(ThreadLocalRandom.current().nextLong(7 * 24 * 3600)));
+        }
+        localTopBooks = new LocalTopBooksAggregator(cacheService, new SimpleMeterRegistry(), true,
+                1000, 2048, 5, 1000, Duration.ofHours(1));
+        borrows = new ArrayList<>(1024);
+        for (int i = 0; i < 1024; i++) {
+            long bookId = ThreadLocalRandom.current().nextLong(BOOKS);
+            borrows.add(List.of(new LoanEvent("e" + i, LoanEventType.BORROWED, (long) i, bookId, 1L,
+                    now, now.plusSeconds(14 * 24 * 3600), null, now)));
+        }
+        batchDeltas = new HashMap<>();
+        for (long id = 0; id < 100; id++) {
+            batchDeltas.put(id, 5L);
+        }
+    }
+
+    @Benchmark
+    public void incrementBorrowCount() {
+        cacheService.incrementBorrowCount(ThreadLocalRandom.current().nextLong(BOOKS));
+    }
+
+    @Benchmark
+    public void incrementBorrowCountsBatchOf100() {
+        cacheService.incrementBorrowCounts(batchDeltas);
+    }
+
+    @Benchmark
+    public void recordLocal() {
+        localTopBooks.record(borrows.get(next++ & (borrows.size() - 1)));
+    }
+
+    @Benchmark
+    public Object topTenLocal() {
+        return localTopBooks.snapshot(10);
+    }
+
+    @Benchmark
+    public Object topTenMergedLastHour() {
+        return localTopBooks.mergedTop(10, TopBooksCacheService.Window.ONE_HOUR, null);
+    }
+
+    @Benchmark
+    public Object topTen() {
+        return cacheService.getTopBooks(10);
+    }
+
+    @Benchmark
+    public Object topTenLastHour() {
+        return cacheService.getTopBooks(10, TopBooksCacheService.Window.ONE_HOUR, null);
+    }
+
+    @Benchmark
+    public Object topTenSevenDaysDecayed() {
+        return cacheService.getTopBooks(10, TopBooksCacheService.Window.SEVEN_DAYS, Duration.ofHours(12));
+    }
+}
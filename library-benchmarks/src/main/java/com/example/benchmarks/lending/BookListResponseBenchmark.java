@@ -0,0 +1,93 @@
+package com.example.benchmarks.lending;
+
+import com.example.library.api.NdjsonWriter;
+import com.example.library.api.controller.BookController;
+import com.example.library.api.dto.BookResponse;
+import com.example.library.config.PaginationProperties;
+import com.example.library.domain.Book;
+import com.example.library.service.BookService;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * {@code GET /api/books} (one page in the {@code BaseResponse} envelope) and
+ * {@code GET /api/books/export} (NDJSON), with the repository replaced by a
+ * fixed list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BookListResponseBenchmark {
+
+    @Param({"100", "10000"})
+    public int books;
+
+    private FixedBookService service;
+    private BookController controller;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        List<Book> catalogue = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            catalogue.add(new Book("Title " + i, "Author " + i, "isbn-" + i, 5));
+        }
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .serializationInclusion(JsonInclude.Include.NON_NULL)
+                .build();
+        service = new FixedBookService(catalogue);
+        controller = new BookController(service, new PaginationProperties(), objectMapper, null, null);
+    }
+
+    @Benchmark
+    public byte[] listPage() throws Exception {
+        return objectMapper.writeValueAsBytes(controller.list(null, null));
+    }
+
+    @Benchmark
+    public void exportNdjson() throws Exception {
+        try (NdjsonWriter writer = new NdjsonWriter(objectMapper, OutputStream.nullOutputStream())) {
+            service.forEach(b -> writer.write(BookResponse.from(b)));
+        }
+    }
+
+    static class FixedBookService extends BookService {
+        private final List<Book> books;
+
+        FixedBookService(List<Book> books) {
+            super(null, null, null, null, null, null);
+            this.books = books;
+        }
+
+        @Override
+        public List<Book> listAfter(Long afterId, int limit) {
+            return books.subList(0, Math.min(limit, books.size()));
+        }
+
+        @Override
+        public void forEach(Consumer<Book> action) {
+            books.forEach(action);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.benchmarks.lending;
+
+import com.example.library.BookLendingServiceApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Boots the lending service on a random port against an in-memory H2
+ * database (PostgreSQL mode, schema from the JPA mappings). Point
+ * {@code -Dbench.db.url} (plus {@code bench.db.user}/{@code bench.db.password})
+ * at a real PostgreSQL to benchmark with the Liquibase schema instead.
+ * <p>
+ * Neither service's {@code application.properties} is loaded: both are on the
+ * benchmark classpath, so every setting is passed explicitly here.
+ */
+public final class LendingContext {
+
+    private LendingContext() {}
+
+    public static ConfigurableApplicationContext start(Map<String, Object> overrides) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("spring.config.location", "optional:classpath:/bench-no-config/");
+        props.put("spring.application.name", "book-lending-benchmark");
+        props.put("logging.level.root", "WARN");
+        props.put("server.port", "0");
+        props.put("spring.jpa.open-in-view", "false");
+        props.put("spring.autoconfigure.exclude", String.join(",",
+                "org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration",
+                "org.springframework.boot.autoconfigure.data.redis.RedisRepositoriesAutoConfiguration",
+                "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration",
+                "org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchClientAutoConfiguration",
+                "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDataAutoConfiguration",
+                "org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchRepositoriesAutoConfiguration"));
+
+        String url = System.getProperty("bench.db.url");
+        if (url == null) {
+            props.put("spring.datasource.url", "jdbc:h2:mem:lending;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+            props.put("spring.datasource.username", "sa");
+            props.put("spring.datasource.password", "");
+            props.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+            props.put("spring.liquibase.enabled", "false");
+        } else {
+            props.put("spring.datasource.url", url);
+            props.put("spring.datasource.username", System.getProperty("bench.db.user", "library"));
+            props.put("spring.datasource.password", System.getProperty("bench.db.password", "library"));
+            props.put("spring.jpa.hibernate.ddl-auto", "validate");
+            props.put("spring.liquibase.enabled", "true");
+            props.put("spring.liquibase.change-log", "classpath:db/changelog/db.changelog-master.yaml");
+        }
+
+        // No broker in the benchmark: keep publishing off
+        props.put("library.events.loan.enabled", "false");
+        props.put("spring.kafka.bootstrap-servers", "localhost:9092");
+        props.putAll(overrides);
+
+        return new SpringApplicationBuilder(BookLendingServiceApplication.class)
+                .properties(props)
+                .run();
+    }
+}
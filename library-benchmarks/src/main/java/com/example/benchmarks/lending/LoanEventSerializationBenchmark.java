@@ -0,0 +1,62 @@
+package com.example.benchmarks.lending;
+
+import com.example.library.events.LoanEvent;
+import com.example.library.events.LoanEventSerializer;
+import com.example.library.events.LoanEventType;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer-side cost of turning a {@link LoanEvent} into a record value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoanEventSerializationBenchmark {
+
+    private static final String TOPIC = "library.loan-events";
+
+    private LoanEvent event;
+    private JsonSerializer<LoanEvent> jsonSerializer;
+    private LoanEventSerializer binarySerializer;
+
+    @Setup
+    public void setUp() {
+        Instant now = Instant.now();
+        event = new LoanEvent(UUID.randomUUID().toString(), LoanEventType.BORROWED, 42L, 7L, 1001L,
+                now, now.plus(14, ChronoUnit.DAYS), null, now);
+
+        jsonSerializer = new JsonSerializer<>();
+        binarySerializer = new LoanEventSerializer();
+        binarySerializer.configure(Map.of(LoanEventSerializer.FORMAT_CONFIG, "binary"), false);
+    }
+
+    @Benchmark
+    public byte[] jsonSerializer() {
+        return jsonSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public byte[] binarySerializer() {
+        return binarySerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.benchmarks.lending;
+
+import com.example.library.domain.Book;
+import com.example.library.domain.Loan;
+import com.example.library.domain.Member;
+import com.example.library.error.BusinessRuleViolationException;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.MemberRepository;
+import com.example.library.service.LoanService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code LoanService.borrow}/{@code returnLoan} including their rule checks,
+ * against the lending service's own repositories and transaction manager,
+ * for each {@code library.loans.borrow-strategy}. Warm-up is long because
+ * the Spring/Hibernate call path takes a while to be fully compiled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 5)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoanServiceBenchmark {
+
+    @Param({"locking", "conditional-update"})
+    public String borrowStrategy;
+
+    private ConfigurableApplicationContext context;
+    private LoanService loanService;
+
+    private Long bookId;
+    private Long memberId;
+    private Long maxedOutMemberId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = LendingContext.start(Map.of("library.loans.borrow-strategy", borrowStrategy));
+        loanService = context.getBean(LoanService.class);
+        BookRepository books = context.getBean(BookRepository.class);
+        MemberRepository members = context.getBean(MemberRepository.class);
+
+        long suffix = System.nanoTime();
+        bookId = books.save(new Book("Benchmark Book", "JMH", "bench-" + suffix, 1_000_000)).getId();
+        memberId = members.save(new Member("Bench Member", "bench-" + suffix + "@example.com")).getId();
+        maxedOutMemberId = members.save(new Member("Maxed Member", "maxed-" + suffix + "@example.com")).getId();
+
+        // Leave this member at the active-loan cap so borrow is rejected by the rule check
+        for (int i = 0; i < 3; i++) {
+            loanService.borrow(bookId, maxedOutMemberId);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Loan borrowThenReturn() {
+        Loan loan = loanService.borrow(bookId, memberId);
+        return loanService.returnLoan(loan.getId());
+    }
+
+    @Benchmark
+    public Object borrowRejectedByMaxActiveLoans() {
+        try {
+            return loanService.borrow(bookId, maxedOutMemberId);
+        } catch (BusinessRuleViolationException expected) {
+            return expected;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.benchmarks.load;
+
+import com.example.benchmarks.lending.LendingContext;
+import com.example.library.domain.Book;
+import com.example.library.repo.BookRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load test: {@code concurrency} requests are kept in flight
+ * for {@code duration}, then latency percentiles, throughput and the server's
+ * live/peak platform thread counts (from {@code /actuator/metrics}) are
+ * printed. Use it to compare the default Tomcat pool with the
+ * {@code virtual-threads} Spring profile.
+ * <p>
+ * Options ({@code --key=value}):
+ * <ul>
+ *   <li>{@code url} - service to test; when absent the lending service is
+ *       started in-process on H2 (add {@code --virtual=true} for virtual threads)</li>
+ *   <li>{@code path} (default {@code /api/books?size=50}), {@code user} ({@code admin:admin123})</li>
+ *   <li>{@code concurrency} (200), {@code warmup} (PT10S), {@code duration} (PT30S)</li>
+ * </ul>
+ * The client itself uses a handful of threads, so in-process thread counts
+ * are dominated by the server.
+ */
+public final class HttpLoadTest {
+
+    private final HttpClient client;
+    private final HttpRequest request;
+    private final int concurrency;
+
+    private final Histogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean recording;
+
+    private HttpLoadTest(HttpClient client, HttpRequest request, int concurrency) {
+        this.client = client;
+        this.request = request;
+        this.concurrency = concurrency;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = parse(args);
+        int concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "200"));
+        Duration warmup = Duration.parse(opts.getOrDefault("warmup", "PT10S"));
+        Duration duration = Duration.parse(opts.getOrDefault("duration", "PT30S"));
+        String path = opts.getOrDefault("path", "/api/books?size=50");
+        String auth = "Basic " + Base64.getEncoder()
+                .encodeToString(opts.getOrDefault("user", "admin:admin123").getBytes(StandardCharsets.UTF_8));
+
+        ConfigurableApplicationContext context = null;
+        String baseUrl = opts.get("url");
+        if (baseUrl == null) {
+            context = startLendingService(Boolean.parseBoolean(opts.getOrDefault("virtual", "false")));
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        try {
+            HttpClient client = HttpClient.newBuilder().executor(clientExecutor).build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .header("Authorization", auth)
+                    .timeout(Duration.ofSeconds(30))
+                    .build();
+
+            HttpLoadTest test = new HttpLoadTest(client, request, concurrency);
+            System.out.printf("Load test %s with %d in flight, warm-up %s, measuring %s%n",
+                    request.uri(), concurrency, warmup, duration);
+            test.run(warmup, false);
+            test.run(duration, true);
+            test.report(duration, new ServerThreads(client, baseUrl, auth));
+        } finally {
+            clientExecutor.shutdownNow();
+            if (context != null) context.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext startLendingService(boolean virtual) {
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("spring.threads.virtual.enabled", String.valueOf(virtual));
+        overrides.put("management.endpoints.web.exposure.include", "metrics");
+        ConfigurableApplicationContext context = LendingContext.start(overrides);
+        BookRepository books = context.getBean(BookRepository.class);
+        for (int i = 0; i < 500; i++) {
+            books.save(new Book("Load Book " + i, "Author " + (i % 50), "load-" + i, 5));
+        }
+        return context;
+    }
+
+    private void run(Duration duration, boolean record) throws InterruptedException {
+        recording = record;
+        long deadline = System.nanoTime() + duration.toNanos();
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            next(deadline, done);
+        }
+        done.await();
+    }
+
+    private void next(long deadline, CountDownLatch done) {
+        long start = System.nanoTime();
+        if (start >= deadline) {
+            done.countDown();
+            return;
+        }
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (recording) {
+                        if (error != null || response.statusCode() >= 400) {
+                            errors.incrementAndGet();
+                        } else {
+                            latencies.recordValue(System.nanoTime() - start);
+                        }
+                    }
+                    next(deadline, done);
+                });
+    }
+
+    private void report(Duration duration, ServerThreads serverThreads) {
+        long ok = latencies.getTotalCount();
+        System.out.printf("requests=%d errors=%d throughput=%.1f req/s%n",
+                ok + errors.get(), errors.get(), ok / (duration.toMillis() / 1000.0));
+        System.out.printf("latency ms: p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                millis(latencies.getValueAtPercentile(99)), millis(latencies.getMaxValue()));
+        System.out.printf("server platform threads: live=%s peak=%s%n",
+                serverThreads.read("jvm.threads.live"), serverThreads.read("jvm.threads.peak"));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return opts;
+    }
+
+    /** Reads a gauge from the target's {@code /actuator/metrics} endpoint. */
+    private record ServerThreads(HttpClient client, String baseUrl, String auth) {
+
+        String read(String metric) {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + metric))
+                        .header("Authorization", auth)
+                        .build();
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) return "n/a (HTTP " + response.statusCode() + ")";
+                JsonNode value = new ObjectMapper().readTree(response.body()).path("measurements").path(0).path("value");
+                return value.isMissingNode() ? "n/a" : String.valueOf(value.asLong());
+            } catch (Exception e) {
+                return "n/a (" + e.getMessage() + ")";
+            }
+        }
+    }
+}
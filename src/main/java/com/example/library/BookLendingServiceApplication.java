@@ -1,12 +1,15 @@
 package com.example.library;
 
 import com.example.library.config.LibraryRulesProperties;
+import com.example.library.config.PaginationProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@EnableConfigurationProperties(LibraryRulesProperties.class)
+@EnableConfigurationProperties({LibraryRulesProperties.class, PaginationProperties.class})
+@EnableScheduling
 public class BookLendingServiceApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,367 @@
+package com.example.library.admission;
+
+import com.example.library.api.dto.BaseResponse;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Admission control for the loan write endpoints ({@code POST /api/loans/...}),
+ * applied after authentication and before any database work:
+ * <ul>
+ *   <li>a token bucket per client for every loan write,</li>
+ *   <li>a token bucket per member for borrows,</li>
+ *   <li>{@link BookConcurrencyLimiter} for borrows of the same book.</li>
+ * </ul>
+ * A batch ({@code borrow:batch}, {@code return:batch}) costs its client one
+ * token per item, and each member one token per borrow of theirs in it, so
+ * batching does not get around the rates. Batches do not wait for book slots.
+ * A batch body too large to read up front is charged as {@code max-items}.
+ * Buckets are per instance, or cluster-wide with
+ * {@code library.admission.global.enabled} (see {@link TokenBucketLimiter}).
+ * A rejected request gets {@code 429} with {@code Retry-After} in the usual
+ * {@link BaseResponse} envelope. Member and book ids are read from the
+ * borrow body, which is then replayed to the controller unchanged.
+ * <p>
+ * A client is the authenticated user. Requests without one are keyed on the
+ * last value of {@code library.admission.client.forwarded-header} when set
+ * (a header your proxy or load balancer writes, such as {@code X-Real-IP}),
+ * else on the remote address, which behind a proxy is the proxy's.
+ */
+@Component
+@ConditionalOnProperty(name = "library.admission.enabled", havingValue = "true")
+public class AdmissionControlFilter extends HttpFilter {
+
+    private static final String LOANS_PATH = "/api/loans/";
+    private static final String BORROW_PATH = "/api/loans/borrow";
+    private static final String BORROW_BATCH_PATH = "/api/loans/borrow:batch";
+    private static final String RETURN_BATCH_PATH = "/api/loans/return:batch";
+    // A borrow body is two ids; anything longer is not read for them
+    private static final int MAX_PEEKED_BODY = 1024;
+    // Room for a batch of 1000 borrows with some whitespace
+    private static final int MAX_PEEKED_BATCH_BODY = 64 * 1024;
+
+    private record BorrowTarget(Long memberId, Long bookId) {
+        static final BorrowTarget UNKNOWN = new BorrowTarget(null, null);
+    }
+
+    /** Items of a batch body, and for borrows how many belong to each member. */
+    private record BatchItems(int count, Map<Long, Integer> perMember) {}
+
+    private final ObjectMapper objectMapper;
+    private final BookConcurrencyLimiter bookLimiter;
+    private final TokenBucketLimiter clientLimiter;
+    private final TokenBucketLimiter memberLimiter;
+    private final long retryAfterSeconds;
+    private final String forwardedHeader;
+    private final int maxBatchItems;
+
+    private final Counter admitted;
+    private final Counter clientRejected;
+    private final Counter memberRejected;
+    private final Counter bookRejected;
+
+    public AdmissionControlFilter(ObjectMapper objectMapper,
+                                  BookConcurrencyLimiter bookLimiter,
+                                  ObjectProvider<RedisTokenLeases> leases,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${library.admission.client.rate:50}") double clientRate,
+                                  @Value("${library.admission.client.burst:100}") int clientBurst,
+                                  @Value("${library.admission.member.rate:1}") double memberRate,
+                                  @Value("${library.admission.member.burst:5}") int memberBurst,
+                                  @Value("${library.admission.max-keys:100000}") int maxKeys,
+                                  @Value("${library.admission.global.lease-size:5}") int leaseSize,
+                                  @Value("${library.admission.global.lease-ttl:PT1S}") Duration leaseTtl,
+                                  @Value("${library.admission.retry-after:PT1S}") Duration retryAfter,
+                                  @Value("${library.admission.client.forwarded-header:}") String forwardedHeader,
+                                  @Value("${library.loans.batch.max-items:1000}") int maxBatchItems) {
+        this.objectMapper = objectMapper;
+        this.bookLimiter = bookLimiter;
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.forwardedHeader = forwardedHeader.isBlank() ? null : forwardedHeader.trim();
+        this.maxBatchItems = maxBatchItems;
+
+        Counter globalErrors = meterRegistry.counter("library_admission_global_errors_total");
+        RedisTokenLeases redisLeases = leases.getIfAvailable();
+        this.clientLimiter = new TokenBucketLimiter("client", clientRate, clientBurst, maxKeys,
+                redisLeases, leaseSize, leaseTtl, globalErrors);
+        this.memberLimiter = new TokenBucketLimiter("member", memberRate, memberBurst, maxKeys,
+                redisLeases, leaseSize, leaseTtl, globalErrors);
+
+        this.admitted = meterRegistry.counter("library_admission_admitted_total");
+        this.clientRejected = meterRegistry.counter("library_admission_rejected_total", "limit", "client");
+        this.memberRejected = meterRegistry.counter("library_admission_rejected_total", "limit", "member");
+        this.bookRejected = meterRegistry.counter("library_admission_rejected_total", "limit", "book");
+    }
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (!"POST".equals(request.getMethod()) || !path.startsWith(LOANS_PATH)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (path.equals(BORROW_BATCH_PATH) || path.equals(RETURN_BATCH_PATH)) {
+            admitBatch(request, response, chain, path.equals(BORROW_BATCH_PATH));
+            return;
+        }
+
+        if (!clientLimiter.tryAcquire(clientKey(request))) {
+            clientRejected.increment();
+            reject(response);
+            return;
+        }
+        if (!path.equals(BORROW_PATH)) {
+            admitted.increment();
+            chain.doFilter(request, response);
+            return;
+        }
+
+        byte[] peeked = request.getInputStream().readNBytes(MAX_PEEKED_BODY + 1);
+        HttpServletRequest replayed = new PeekedBodyRequest(request, peeked, MAX_PEEKED_BODY);
+        BorrowTarget target = peeked.length > MAX_PEEKED_BODY ? BorrowTarget.UNKNOWN : parseBorrow(peeked);
+
+        if (target.memberId() != null && !memberLimiter.tryAcquire(target.memberId().toString())) {
+            memberRejected.increment();
+            reject(response);
+            return;
+        }
+        if (target.bookId() == null) {
+            // Not a valid borrow; let validation answer it
+            admitted.increment();
+            chain.doFilter(replayed, response);
+            return;
+        }
+
+        BookConcurrencyLimiter.Permit permit = acquireBook(target.bookId());
+        if (permit == null) {
+            bookRejected.increment();
+            reject(response);
+            return;
+        }
+        try (permit) {
+            admitted.increment();
+            chain.doFilter(replayed, response);
+        }
+    }
+
+    private void admitBatch(HttpServletRequest request, HttpServletResponse response, FilterChain chain, boolean borrows)
+            throws IOException, ServletException {
+        byte[] peeked = request.getInputStream().readNBytes(MAX_PEEKED_BATCH_BODY + 1);
+        HttpServletRequest replayed = new PeekedBodyRequest(request, peeked, MAX_PEEKED_BATCH_BODY);
+        BatchItems items = peeked.length > MAX_PEEKED_BATCH_BODY
+                ? new BatchItems(maxBatchItems, Map.of())
+                : parseBatch(peeked, borrows ? "items" : "loanIds");
+
+        // An empty or unreadable batch still costs one token; validation answers it
+        if (!clientLimiter.tryAcquire(clientKey(request), Math.max(1, items.count()))) {
+            clientRejected.increment();
+            reject(response);
+            return;
+        }
+        for (Map.Entry<Long, Integer> member : items.perMember().entrySet()) {
+            if (!memberLimiter.tryAcquire(member.getKey().toString(), member.getValue())) {
+                memberRejected.increment();
+                reject(response);
+                return;
+            }
+        }
+        admitted.increment();
+        chain.doFilter(replayed, response);
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        Principal user = request.getUserPrincipal();
+        if (user != null) return "user:" + user.getName();
+        if (forwardedHeader != null) {
+            String forwarded = request.getHeader(forwardedHeader);
+            if (forwarded != null && !forwarded.isBlank()) {
+                // Proxies append, so the last value is the one written by the nearest (trusted) hop
+                return "addr:" + forwarded.substring(forwarded.lastIndexOf(',') + 1).trim();
+            }
+        }
+        return "addr:" + request.getRemoteAddr();
+    }
+
+    private BookConcurrencyLimiter.Permit acquireBook(Long bookId) {
+        try {
+            return bookLimiter.tryAcquire(bookId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private BorrowTarget parseBorrow(byte[] body) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return BorrowTarget.UNKNOWN;
+            return readBorrow(parser);
+        } catch (IOException e) {
+            return BorrowTarget.UNKNOWN;
+        }
+    }
+
+    /** Counts the elements of the top-level {@code arrayField}; for borrows, per member too. */
+    private BatchItems parseBatch(byte[] body, String arrayField) {
+        int count = 0;
+        Map<Long, Integer> perMember = new HashMap<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return new BatchItems(0, Map.of());
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                if (parser.nextToken() != JsonToken.START_ARRAY || !arrayField.equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                for (JsonToken item; (item = parser.nextToken()) != null && item != JsonToken.END_ARRAY; ) {
+                    count++;
+                    if (item != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    Long memberId = readBorrow(parser).memberId();
+                    if (memberId != null) perMember.merge(memberId, 1, Integer::sum);
+                }
+            }
+        } catch (IOException e) {
+            // Charge what was read; the rest of the body fails validation
+        }
+        return new BatchItems(count, perMember);
+    }
+
+    /** Reads the fields of a borrow object whose start the parser has just returned. */
+    private static BorrowTarget readBorrow(JsonParser parser) throws IOException {
+        Long memberId = null;
+        Long bookId = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NUMBER_INT && "memberId".equals(field)) {
+                memberId = parser.getLongValue();
+            } else if (value == JsonToken.VALUE_NUMBER_INT && "bookId".equals(field)) {
+                bookId = parser.getLongValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new BorrowTarget(memberId, bookId);
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        BaseResponse<Void> body = BaseResponse.<Void>builder()
+                .responseMessage("TOO_MANY_REQUESTS")
+                .build();
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    /**
+     * The request with the bytes already read put back in front of the rest of
+     * the body. Non-blocking reads work too: the listener is told about the
+     * bytes in memory first, then about the rest as the container reports it.
+     */
+    private static final class PeekedBodyRequest extends HttpServletRequestWrapper {
+
+        private final ServletInputStream body;
+
+        /** {@code peeked} holds up to {@code limit + 1} bytes; more than {@code limit} means the body goes on. */
+        PeekedBodyRequest(HttpServletRequest request, byte[] peeked, int limit) throws IOException {
+            super(request);
+            ServletInputStream rest = request.getInputStream();
+            ByteArrayInputStream head = new ByteArrayInputStream(peeked);
+            // readNBytes only returns fewer bytes than asked for at the end of the body
+            boolean restEmpty = peeked.length <= limit;
+            this.body = new ServletInputStream() {
+                private boolean finished;
+
+                @Override
+                public int read() throws IOException {
+                    int b = head.available() > 0 ? head.read() : restEmpty ? -1 : rest.read();
+                    if (b < 0) finished = true;
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buf, int off, int len) throws IOException {
+                    if (len == 0) return 0;
+                    int n = head.available() > 0 ? head.read(buf, off, len) : restEmpty ? -1 : rest.read(buf, off, len);
+                    if (n < 0) finished = true;
+                    return n;
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return finished || (head.available() == 0 && (restEmpty || rest.isFinished()));
+                }
+
+                @Override
+                public boolean isReady() {
+                    return head.available() > 0 || restEmpty || rest.isReady();
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    if (!restEmpty) {
+                        rest.setReadListener(new ReadListener() {
+                            @Override
+                            public void onDataAvailable() throws IOException {
+                                listener.onDataAvailable();
+                            }
+
+                            @Override
+                            public void onAllDataRead() throws IOException {
+                                if (head.available() > 0) listener.onDataAvailable();
+                                listener.onAllDataRead();
+                            }
+
+                            @Override
+                            public void onError(Throwable t) {
+                                listener.onError(t);
+                            }
+                        });
+                        return;
+                    }
+                    // The whole body is in memory
+                    try {
+                        if (head.available() > 0) listener.onDataAvailable();
+                        listener.onAllDataRead();
+                    } catch (IOException | RuntimeException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return body;
+        }
+    }
+}
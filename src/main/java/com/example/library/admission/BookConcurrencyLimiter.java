@@ -0,0 +1,91 @@
+package com.example.library.admission;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the borrows of one book that run at the same time on this instance,
+ * so a hot book queues here instead of on its row lock and the connection
+ * pool. Up to {@code max-queued} more requests wait at most {@code max-wait}
+ * for a slot; the rest are shed straight away. Books are only tracked while
+ * requests for them are in flight.
+ */
+@Component
+@ConditionalOnProperty(name = "library.admission.enabled", havingValue = "true")
+public class BookConcurrencyLimiter {
+
+    /** Held slot of a book; closing it lets the next waiter in. */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Slots {
+        final Semaphore semaphore;
+        int users;
+
+        Slots(int permits) {
+            this.semaphore = new Semaphore(permits, true);
+        }
+    }
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Duration maxWait;
+    private final Map<Long, Slots> books = new ConcurrentHashMap<>();
+    private final Timer queueWait;
+
+    public BookConcurrencyLimiter(MeterRegistry meterRegistry,
+                                  @Value("${library.admission.book.max-concurrent:4}") int maxConcurrent,
+                                  @Value("${library.admission.book.max-queued:32}") int maxQueued,
+                                  @Value("${library.admission.book.max-wait:PT0.5S}") Duration maxWait) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.maxWait = maxWait;
+
+        this.queueWait = Timer.builder("library_admission_book_queue_wait")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("library_admission_books_in_flight", books, Map::size)
+                .register(meterRegistry);
+    }
+
+    /** @return the book's slot, or null when the request should be shed */
+    public Permit tryAcquire(Long bookId) throws InterruptedException {
+        Slots slots = books.compute(bookId, (id, s) -> {
+            if (s == null) s = new Slots(maxConcurrent);
+            s.users++;
+            return s;
+        });
+        boolean acquired = false;
+        try {
+            acquired = slots.semaphore.tryAcquire();
+            if (!acquired && slots.semaphore.getQueueLength() < maxQueued) {
+                long start = System.nanoTime();
+                acquired = slots.semaphore.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+                queueWait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            if (!acquired) leave(bookId);
+        }
+        if (!acquired) return null;
+        return () -> {
+            slots.semaphore.release();
+            leave(bookId);
+        };
+    }
+
+    private void leave(Long bookId) {
+        books.computeIfPresent(bookId, (id, s) -> --s.users == 0 ? null : s);
+    }
+}
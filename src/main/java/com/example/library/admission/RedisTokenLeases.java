@@ -0,0 +1,88 @@
+package com.example.library.admission;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cluster-wide token buckets in Redis. Instances do not ask Redis per
+ * request: {@link #take} grants a small lease of tokens that the instance
+ * then spends locally, so a key costs one round trip per lease.
+ * <p>
+ * After a failed call Redis is not asked again for {@code failure-backoff}
+ * ({@link #available()} is false), so an outage costs one timeout per window
+ * instead of one per request; then a single call probes it again.
+ */
+@Component
+@ConditionalOnProperty(name = "library.admission.global.enabled", havingValue = "true")
+public class RedisTokenLeases {
+
+    private static final String KEY_PREFIX = "library:admission:";
+
+    /**
+     * Refills the bucket from Redis server time, then grants ARGV[3] tokens if
+     * it holds them (a full bucket for more than a burst, leaving it in debt),
+     * else the whole tokens it holds. The hash expires once it would be full
+     * again anyway.
+     */
+    private static final RedisScript<Long> TAKE_SCRIPT = RedisScript.of("""
+            local rate, burst, want = tonumber(ARGV[1]), tonumber(ARGV[2]), tonumber(ARGV[3])
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'at')
+            local tokens = tonumber(state[1]) or burst
+            local at = tonumber(state[2]) or now
+            tokens = math.min(burst, tokens + math.max(0, now - at) * rate / 1000)
+            local granted = want
+            if tokens < math.min(want, burst) then granted = math.max(0, math.floor(tokens)) end
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens - granted), 'at', now)
+            redis.call('PEXPIRE', KEYS[1], math.ceil(burst / rate * 1000) + 1000)
+            return granted
+            """, Long.class);
+
+    private final StringRedisTemplate redis;
+    private final long failureBackoffNanos;
+
+    private volatile boolean failing;
+    // System.nanoTime() after which the next call may probe Redis again
+    private final AtomicLong retryAt = new AtomicLong();
+
+    public RedisTokenLeases(StringRedisTemplate redis,
+                            @Value("${library.admission.global.failure-backoff:PT5S}") Duration failureBackoff) {
+        this.redis = redis;
+        this.failureBackoffNanos = failureBackoff.toNanos();
+    }
+
+    /**
+     * False while Redis is known to be failing; callers then use their local
+     * buckets. Once the back-off is over it is true for one caller, whose
+     * {@link #take} decides whether Redis is back.
+     */
+    boolean available() {
+        if (!failing) return true;
+        long at = retryAt.get();
+        long now = System.nanoTime();
+        return now - at >= 0 && retryAt.compareAndSet(at, now + failureBackoffNanos);
+    }
+
+    /** @return tokens granted from the global bucket of {@code limit}/{@code key}: {@code want}, or fewer if it is short */
+    int take(String limit, String key, double ratePerSecond, int burst, int want) {
+        Long granted;
+        try {
+            granted = redis.execute(TAKE_SCRIPT, List.of(KEY_PREFIX + limit + ":" + key),
+                    String.valueOf(ratePerSecond), String.valueOf(burst), String.valueOf(want));
+        } catch (RuntimeException e) {
+            retryAt.set(System.nanoTime() + failureBackoffNanos);
+            failing = true;
+            throw e;
+        }
+        failing = false;
+        return granted == null ? 0 : granted.intValue();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.library.admission;
+
+/**
+ * Classic token bucket: holds up to {@code burst} tokens and refills at
+ * {@code ratePerSecond}. Times are {@link System#nanoTime()} values.
+ */
+final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double ratePerSecond, double burst, long now) {
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    synchronized boolean tryTake(long now) {
+        return tryTake(now, 1);
+    }
+
+    /**
+     * Takes {@code permits} tokens if the bucket holds them. Asking for more
+     * than a burst needs a full bucket, which then goes negative and has to
+     * refill from there, so large requests keep to the rate on average.
+     */
+    synchronized boolean tryTake(long now, int permits) {
+        tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens < Math.min(permits, burst)) return false;
+        tokens -= permits;
+        return true;
+    }
+}
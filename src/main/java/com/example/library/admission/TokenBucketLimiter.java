@@ -0,0 +1,95 @@
+package com.example.library.admission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * Rate limit per key (a member, a client). Without {@link RedisTokenLeases}
+ * every instance keeps its own {@link TokenBucket} per key. With them, the
+ * limit is global: the instance spends tokens leased from the Redis bucket
+ * and only goes back to Redis when its lease is used up or older than
+ * {@code leaseTtl}. If Redis fails, or failed within its back-off window,
+ * the local bucket decides. No lock is held during a Redis call: callers of a
+ * key that all find its lease spent each lease their own tokens.
+ * <p>
+ * A request can cost several tokens (a batch); see {@link TokenBucket#tryTake(long, int)}
+ * for requests larger than a burst.
+ */
+final class TokenBucketLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBucketLimiter.class);
+
+    private static final class Lease {
+        int tokens;
+        long expiresAt;
+    }
+
+    private final String name;
+    private final double ratePerSecond;
+    private final int burst;
+    private final RedisTokenLeases leases;
+    private final int leaseSize;
+    private final long leaseTtlNanos;
+    private final Counter globalErrors;
+
+    private final Cache<String, TokenBucket> local;
+    private final Cache<String, Lease> leased;
+
+    TokenBucketLimiter(String name, double ratePerSecond, int burst, int maxKeys,
+                       RedisTokenLeases leases, int leaseSize, Duration leaseTtl, Counter globalErrors) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Admission limit '" + name + "' needs a positive rate and burst");
+        }
+        this.name = name;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.leases = leases;
+        this.leaseSize = Math.max(1, Math.min(leaseSize, burst));
+        this.leaseTtlNanos = leaseTtl.toNanos();
+        this.globalErrors = globalErrors;
+
+        // An idle key's bucket would be full again, so dropping it loses nothing
+        Duration idle = Duration.ofMillis((long) Math.ceil(burst / ratePerSecond * 1000)).plusSeconds(1);
+        this.local = Caffeine.newBuilder().maximumSize(maxKeys).expireAfterAccess(idle).build();
+        this.leased = Caffeine.newBuilder().maximumSize(maxKeys).expireAfterAccess(idle.plus(leaseTtl)).build();
+    }
+
+    boolean tryAcquire(String key) {
+        return tryAcquire(key, 1);
+    }
+
+    boolean tryAcquire(String key, int permits) {
+        long now = System.nanoTime();
+        if (leases != null) {
+            Lease lease = leased.get(key, k -> new Lease());
+            synchronized (lease) {
+                if (lease.tokens >= permits && now - lease.expiresAt < 0) {
+                    lease.tokens -= permits;
+                    return true;
+                }
+            }
+            if (leases.available()) {
+                try {
+                    int granted = leases.take(name, key, ratePerSecond, burst, Math.max(leaseSize, permits));
+                    synchronized (lease) {
+                        // Tokens a concurrent refill leased are kept, up to one burst
+                        int held = (now - lease.expiresAt < 0 ? lease.tokens : 0) + granted;
+                        boolean admitted = held >= permits;
+                        lease.tokens = Math.min(burst, admitted ? held - permits : held);
+                        lease.expiresAt = now + leaseTtlNanos;
+                        return admitted;
+                    }
+                } catch (Exception e) {
+                    globalErrors.increment();
+                    log.debug("Global {} limit unavailable, using the local one: {}", name, e.getMessage());
+                }
+            }
+        }
+        return local.get(key, k -> new TokenBucket(ratePerSecond, burst, now)).tryTake(now, permits);
+    }
+}
@@ -4,6 +4,7 @@ import com.example.library.api.dto.BaseResponse;
 import com.example.library.error.BusinessRuleViolationException;
 import com.example.library.error.ConflictException;
 import com.example.library.error.NotFoundException;
+import com.example.library.error.ServiceUnavailableException;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
@@ -30,6 +31,11 @@ public class GlobalExceptionHandler {
         return build(HttpStatus.BAD_REQUEST, ex.getMessage());
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<BaseResponse<Void>> handleUnavailable(ServiceUnavailableException ex, HttpServletRequest req) {
+        return build(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
     @ExceptionHandler(DataIntegrityViolationException.class)
     public ResponseEntity<BaseResponse<Void>> handleIntegrity(DataIntegrityViolationException ex, HttpServletRequest req) {
         // Avoid leaking raw SQL errors to clients
@@ -55,6 +61,26 @@ public class GlobalExceptionHandler {
         return build(HttpStatus.INTERNAL_SERVER_ERROR, "Unexpected error");
     }
 
+    /**
+     * Status the handlers above would answer with, for errors reported inside
+     * a successful response (one per item of a batch).
+     */
+    public static HttpStatus statusOf(RuntimeException ex) {
+        if (ex instanceof NotFoundException) return HttpStatus.NOT_FOUND;
+        if (ex instanceof ConflictException || ex instanceof DataIntegrityViolationException) return HttpStatus.CONFLICT;
+        if (ex instanceof BusinessRuleViolationException || ex instanceof IllegalArgumentException) return HttpStatus.BAD_REQUEST;
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /** Client-facing message for {@link #statusOf}, hiding SQL and internal errors the same way. */
+    public static String messageOf(RuntimeException ex) {
+        return switch (statusOf(ex)) {
+            case INTERNAL_SERVER_ERROR -> "Unexpected error";
+            case CONFLICT -> ex instanceof DataIntegrityViolationException ? "Data integrity violation" : ex.getMessage();
+            default -> ex.getMessage();
+        };
+    }
+
     private ResponseEntity<BaseResponse<Void>> build(HttpStatus status, String message) {
         BaseResponse<Void> body = BaseResponse.<Void>builder()
                 .responseMessage(message)
@@ -1,25 +1,46 @@
 package com.example.library.api.controller;
 
+import com.example.library.api.NdjsonWriter;
 import com.example.library.api.dto.BaseResponse;
+import com.example.library.api.dto.CursorPage;
 import com.example.library.api.dto.BookRequest;
 import com.example.library.api.dto.BookResponse;
+import com.example.library.availability.AvailabilityFeed;
+import com.example.library.availability.AvailabilitySubscriptions;
+import com.example.library.config.PaginationProperties;
 import com.example.library.domain.Book;
+import com.example.library.error.NotFoundException;
 import com.example.library.service.BookService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/books")
 public class BookController {
 
     private final BookService bookService;
+    private final PaginationProperties pagination;
+    private final ObjectMapper objectMapper;
+    private final AvailabilityFeed availabilityFeed;
+    private final AvailabilitySubscriptions availabilitySubscriptions;
 
-    public BookController(BookService bookService) {
+    public BookController(BookService bookService, PaginationProperties pagination, ObjectMapper objectMapper,
+                          AvailabilityFeed availabilityFeed, AvailabilitySubscriptions availabilitySubscriptions) {
         this.bookService = bookService;
+        this.pagination = pagination;
+        this.objectMapper = objectMapper;
+        this.availabilityFeed = availabilityFeed;
+        this.availabilitySubscriptions = availabilitySubscriptions;
     }
 
     private <T> BaseResponse<T> ok(T data) {
@@ -32,9 +53,37 @@ public class BookController {
 
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
-    public BaseResponse<List<BookResponse>> list() {
-        List<BookResponse> books = bookService.list().stream().map(BookResponse::from).toList();
-        return ok(books);
+    public BaseResponse<CursorPage<BookResponse>> list(@RequestParam(required = false) Long after,
+                                                       @RequestParam(required = false) Integer size) {
+        int pageSize = pagination.resolve(size);
+        List<Book> rows = bookService.listAfter(after, pageSize + 1);
+        return ok(CursorPage.of(rows, pageSize, Book::getId, BookResponse::from));
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonWriter.MEDIA_TYPE)
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                bookService.forEach(book -> writer.write(BookResponse.from(book)));
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonWriter.MEDIA_TYPE))
+                .body(body);
+    }
+
+    /**
+     * Server-sent {@code availability} events for the given books, e.g. {@code ?ids=1,2,3},
+     * and a last {@code deleted} event for a book that is deleted; see {@link AvailabilitySubscriptions}.
+     */
+    @GetMapping(value = "/availability/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public SseEmitter streamAvailability(@RequestParam Set<Long> ids) {
+        if (!availabilityFeed.isEnabled()) {
+            throw new NotFoundException("Availability feed is disabled");
+        }
+        return availabilitySubscriptions.subscribe(ids);
     }
 
     @GetMapping("/{id}")
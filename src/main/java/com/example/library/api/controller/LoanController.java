@@ -1,24 +1,38 @@
 package com.example.library.api.controller;
 
+import com.example.library.api.GlobalExceptionHandler;
 import com.example.library.api.dto.BaseResponse;
+import com.example.library.api.dto.BatchBorrowRequest;
+import com.example.library.api.dto.BatchItemResponse;
+import com.example.library.api.dto.BatchReturnRequest;
 import com.example.library.api.dto.BorrowRequest;
+import com.example.library.api.dto.LoanPage;
 import com.example.library.api.dto.LoanResponse;
+import com.example.library.common.AppConstans;
+import com.example.library.config.PaginationProperties;
+import com.example.library.service.LoanBatchService;
 import com.example.library.service.LoanService;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 @RestController
 @RequestMapping("/api/loans")
 public class LoanController {
 
     private final LoanService loanService;
+    private final LoanBatchService loanBatchService;
+    private final PaginationProperties pagination;
 
-    public LoanController(LoanService loanService) {
+    public LoanController(LoanService loanService, LoanBatchService loanBatchService, PaginationProperties pagination) {
         this.loanService = loanService;
+        this.loanBatchService = loanBatchService;
+        this.pagination = pagination;
     }
 
     private <T> BaseResponse<T> ok(T data) {
@@ -42,10 +56,51 @@ public class LoanController {
         return ok(LoanResponse.from(loanService.returnLoan(loanId)));
     }
 
+    @PostMapping("/borrow:batch")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public BaseResponse<List<BatchItemResponse>> borrowBatch(@Valid @RequestBody BatchBorrowRequest req) {
+        List<LoanBatchService.BorrowItem> items = req.items().stream()
+                .map(i -> new LoanBatchService.BorrowItem(i.bookId(), i.memberId()))
+                .toList();
+        return ok(toItemResponses(loanBatchService.borrow(items), HttpStatus.CREATED));
+    }
+
+    @PostMapping("/return:batch")
+    @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
+    public BaseResponse<List<BatchItemResponse>> returnBatch(@Valid @RequestBody BatchReturnRequest req) {
+        return ok(toItemResponses(loanBatchService.returnLoans(req.loanIds()), HttpStatus.OK));
+    }
+
+    private List<BatchItemResponse> toItemResponses(List<LoanBatchService.ItemResult> results, HttpStatus success) {
+        List<BatchItemResponse> responses = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            LoanBatchService.ItemResult r = results.get(i);
+            responses.add(r.succeeded()
+                    ? new BatchItemResponse(i, success.value(), AppConstans.RESPONSE_MESSAGE_SUCCESS_IN, LoanResponse.from(r.loan()))
+                    : new BatchItemResponse(i, GlobalExceptionHandler.statusOf(r.error()).value(),
+                            GlobalExceptionHandler.messageOf(r.error()), null));
+        }
+        return responses;
+    }
+
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN','MEMBER')")
-    public BaseResponse<List<LoanResponse>> listByMember(@RequestParam Long memberId) {
-        List<LoanResponse> loans = loanService.listLoansByMember(memberId).stream().map(LoanResponse::from).toList();
-        return ok(loans);
+    public BaseResponse<LoanPage> listByMember(@RequestParam Long memberId,
+                                               @RequestParam(required = false) String status,
+                                               @RequestParam(required = false) String after,
+                                               @RequestParam(required = false) Integer size) {
+        int pageSize = pagination.resolve(size);
+        LoanPage.Cursor cursor = after == null ? LoanPage.Cursor.START : LoanPage.Cursor.decode(after);
+        return ok(LoanPage.of(loanService.listLoansByMember(memberId, parseStatus(status),
+                cursor.borrowedAt(), cursor.id(), pageSize + 1), pageSize));
+    }
+
+    private static LoanService.LoanStatus parseStatus(String status) {
+        if (status == null || status.isBlank()) return null;
+        try {
+            return LoanService.LoanStatus.valueOf(status.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("status must be one of active, overdue, returned");
+        }
     }
 }
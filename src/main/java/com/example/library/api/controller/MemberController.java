@@ -1,14 +1,21 @@
 package com.example.library.api.controller;
 
+import com.example.library.api.NdjsonWriter;
 import com.example.library.api.dto.BaseResponse;
+import com.example.library.api.dto.CursorPage;
 import com.example.library.api.dto.MemberRequest;
 import com.example.library.api.dto.MemberResponse;
+import com.example.library.config.PaginationProperties;
 import com.example.library.domain.Member;
 import com.example.library.service.MemberService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -17,9 +24,13 @@ import java.util.List;
 public class MemberController {
 
     private final MemberService memberService;
+    private final PaginationProperties pagination;
+    private final ObjectMapper objectMapper;
 
-    public MemberController(MemberService memberService) {
+    public MemberController(MemberService memberService, PaginationProperties pagination, ObjectMapper objectMapper) {
         this.memberService = memberService;
+        this.pagination = pagination;
+        this.objectMapper = objectMapper;
     }
 
     private <T> BaseResponse<T> ok(T data) {
@@ -32,9 +43,24 @@ public class MemberController {
 
     @GetMapping
     @PreAuthorize("hasRole('ADMIN')")
-    public BaseResponse<List<MemberResponse>> list() {
-        List<MemberResponse> members = memberService.list().stream().map(MemberResponse::from).toList();
-        return ok(members);
+    public BaseResponse<CursorPage<MemberResponse>> list(@RequestParam(required = false) Long after,
+                                                         @RequestParam(required = false) Integer size) {
+        int pageSize = pagination.resolve(size);
+        List<Member> rows = memberService.listAfter(after, pageSize + 1);
+        return ok(CursorPage.of(rows, pageSize, Member::getId, MemberResponse::from));
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonWriter.MEDIA_TYPE)
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                memberService.forEach(member -> writer.write(MemberResponse.from(member)));
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonWriter.MEDIA_TYPE))
+                .body(body);
     }
 
     @GetMapping("/{id}")
@@ -0,0 +1,11 @@
+package com.example.library.api.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public record BatchBorrowRequest(
+        @NotEmpty List<@Valid @NotNull BorrowRequest> items
+) {}
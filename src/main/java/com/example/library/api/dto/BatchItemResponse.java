@@ -0,0 +1,13 @@
+package com.example.library.api.dto;
+
+/**
+ * Result of one item of a batch request. {@code status} is the HTTP status
+ * the item would have got as a single request; {@code loan} is only set on
+ * success.
+ */
+public record BatchItemResponse(
+        int index,
+        int status,
+        String message,
+        LoanResponse loan
+) {}
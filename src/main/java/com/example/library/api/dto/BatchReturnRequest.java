@@ -0,0 +1,10 @@
+package com.example.library.api.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public record BatchReturnRequest(
+        @NotEmpty List<@NotNull Long> loanIds
+) {}
@@ -0,0 +1,6 @@
+package com.example.library.api.dto;
+
+public record BookAvailabilityResponse(
+        Long bookId,
+        int availableCopies
+) {}
@@ -0,0 +1,24 @@
+package com.example.library.api.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated listing. Pass {@code nextCursor} back as
+ * {@code after} to get the following page; it is absent on the last page.
+ */
+public record CursorPage<T>(
+        List<T> items,
+        Long nextCursor
+) {
+    /**
+     * @param rows up to {@code size + 1} rows in id order; the extra row only
+     *             signals that another page exists and is not returned
+     */
+    public static <E, T> CursorPage<T> of(List<E> rows, int size, Function<E, Long> idOf, Function<E, T> mapper) {
+        boolean hasMore = rows.size() > size;
+        List<E> page = hasMore ? rows.subList(0, size) : rows;
+        Long next = hasMore ? idOf.apply(page.get(page.size() - 1)) : null;
+        return new CursorPage<>(page.stream().map(mapper).toList(), next);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.library.api.dto;
+
+import com.example.library.repo.LoanSummary;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of a member's loans, newest first. Pass {@code nextCursor} back as
+ * {@code after} to get the following page; it is absent on the last page.
+ */
+public record LoanPage(
+        List<LoanResponse> items,
+        String nextCursor
+) {
+    /** Position after which the next page starts: the last row's {@code borrowedAt} and id. */
+    public record Cursor(Instant borrowedAt, long id) {
+
+        /** Before every loan, for the first page. */
+        public static final Cursor START = new Cursor(Instant.parse("9999-12-31T23:59:59Z"), Long.MAX_VALUE);
+
+        public String encode() {
+            String raw = borrowedAt + "~" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /** @throws IllegalArgumentException if {@code value} is not a cursor returned by this API */
+        public static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('~');
+                return new Cursor(Instant.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + value);
+            }
+        }
+    }
+
+    /**
+     * @param rows up to {@code size + 1} rows in listing order; the extra row only
+     *             signals that another page exists and is not returned
+     */
+    public static LoanPage of(List<LoanSummary> rows, int size) {
+        boolean hasMore = rows.size() > size;
+        List<LoanSummary> page = hasMore ? rows.subList(0, size) : rows;
+        String next = null;
+        if (hasMore) {
+            LoanSummary last = page.get(page.size() - 1);
+            next = new Cursor(last.getBorrowedAt(), last.getId()).encode();
+        }
+        return new LoanPage(page.stream().map(LoanResponse::from).toList(), next);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.library.api.dto;
 
 import com.example.library.domain.Loan;
+import com.example.library.repo.LoanSummary;
 
 import java.time.Instant;
 
@@ -22,4 +23,15 @@ public record LoanResponse(
                 l.getReturnedAt()
         );
     }
+
+    public static LoanResponse from(LoanSummary l) {
+        return new LoanResponse(
+                l.getId(),
+                l.getBookId(),
+                l.getMemberId(),
+                l.getBorrowedAt(),
+                l.getDueDate(),
+                l.getReturnedAt()
+        );
+    }
 }
@@ -0,0 +1,35 @@
+package com.example.library.availability;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Receives availability changes from all instances. As with cache
+ * invalidations, each instance joins with its own random group id so that
+ * every instance sees every change, starting from the latest offset.
+ */
+@Component
+@ConditionalOnProperty(name = {"library.books.availability-feed.enabled", "library.books.availability-feed.broadcast.enabled"},
+        havingValue = "true")
+public class AvailabilityBroadcastListener {
+
+    private final AvailabilityFeed feed;
+
+    public AvailabilityBroadcastListener(AvailabilityFeed feed) {
+        this.feed = feed;
+    }
+
+    @KafkaListener(
+        topics = "${library.books.availability-feed.broadcast.topic:library.book-availability}",
+        groupId = "${spring.application.name}-availability-${random.uuid}",
+        properties = {
+            "auto.offset.reset:latest",
+            "key.deserializer:org.apache.kafka.common.serialization.StringDeserializer",
+            "value.deserializer:org.apache.kafka.common.serialization.StringDeserializer"
+        }
+    )
+    public void onChange(String message) {
+        feed.applyRemote(message);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.library.availability;
+
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.BookStock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Change feed of {@code Book.availableCopies} for {@link AvailabilitySubscriptions}.
+ * <p>
+ * Borrow, return, book updates and deletes mark their book changed once they
+ * commit. Every {@code flush-interval} the changed books are read in one query
+ * and their stock is published, so a book borrowed a thousand times in one
+ * interval produces one update. A changed book the query no longer finds was
+ * deleted, and its subscribers are told so. Without broadcast only books watched on
+ * this instance are read and changes made on other instances are not seen.
+ * With {@code library.books.availability-feed.broadcast.enabled} every
+ * change goes to {@code broadcast.topic} as {@code <bookId>:<copies>:<version>},
+ * or {@code <bookId>:deleted}, and {@link AvailabilityBroadcastListener} delivers it on every instance,
+ * this one included.
+ */
+@Component
+public class AvailabilityFeed implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityFeed.class);
+
+    private static final int MAX_BOOKS_PER_READ = 1000;
+    private static final String DELETED = "deleted";
+
+    private final BookRepository bookRepository;
+    private final AvailabilitySubscriptions subscriptions;
+    private final boolean enabled;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final String topic;
+
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+    private final Counter published;
+
+    public AvailabilityFeed(BookRepository bookRepository,
+                            AvailabilitySubscriptions subscriptions,
+                            ProducerFactory<String, String> producerFactory,
+                            MeterRegistry meterRegistry,
+                            @Value("${library.books.availability-feed.enabled:false}") boolean enabled,
+                            @Value("${library.books.availability-feed.broadcast.enabled:false}") boolean broadcast,
+                            @Value("${library.books.availability-feed.broadcast.topic:library.book-availability}") String topic) {
+        this.bookRepository = bookRepository;
+        this.subscriptions = subscriptions;
+        this.enabled = enabled;
+        // Same producer settings as the cache broadcast: Boot's, with plain string values
+        this.kafkaTemplate = enabled && broadcast
+                ? new KafkaTemplate<>(producerFactory, Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class))
+                : null;
+        this.topic = topic;
+        this.published = meterRegistry.counter("library_availability_changes_published_total");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Marks the book's stock changed once the current transaction commits. */
+    public void changedAfterCommit(Long bookId) {
+        if (!enabled) return;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changed.add(bookId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                changed.add(bookId);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${library.books.availability-feed.flush-interval:PT0.2S}")
+    public void flush() {
+        if (!enabled) return;
+        List<Long> books;
+        do {
+            books = takeChanged();
+            if (books.isEmpty()) return;
+            try {
+                List<BookStock> stocks = bookRepository.findStockByIdIn(books);
+                publish(stocks);
+                if (stocks.size() < books.size()) publishDeleted(books, stocks);
+            } catch (Exception e) {
+                changed.addAll(books);
+                log.warn("Availability feed flush of {} books failed: {}", books.size(), e.getMessage());
+                return;
+            }
+        } while (books.size() == MAX_BOOKS_PER_READ);
+    }
+
+    /** Applies a change broadcast by any instance. */
+    public void applyRemote(String message) {
+        String[] parts = message == null ? new String[0] : message.split(":");
+        boolean deleted = parts.length == 2 && DELETED.equals(parts[1]);
+        if (parts.length != 3 && !deleted) {
+            log.warn("Ignoring malformed availability change: {}", message);
+            return;
+        }
+        try {
+            if (deleted) {
+                subscriptions.deleted(Long.valueOf(parts[0]));
+                return;
+            }
+            subscriptions.publish(Long.valueOf(parts[0]), Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed availability change: {}", message);
+        }
+    }
+
+    private List<Long> takeChanged() {
+        List<Long> books = new ArrayList<>();
+        for (Iterator<Long> it = changed.iterator(); it.hasNext() && books.size() < MAX_BOOKS_PER_READ; ) {
+            Long bookId = it.next();
+            it.remove();
+            // Nobody else can be watching it without broadcast
+            if (kafkaTemplate != null || subscriptions.isWatched(bookId)) books.add(bookId);
+        }
+        return books;
+    }
+
+    private void publish(List<BookStock> stocks) {
+        for (BookStock stock : stocks) {
+            published.increment();
+            if (kafkaTemplate == null) {
+                subscriptions.publish(stock.getId(), stock.getAvailableCopies(), stock.getVersion());
+                continue;
+            }
+            broadcast(stock.getId(), stock.getId() + ":" + stock.getAvailableCopies() + ":" + stock.getVersion());
+        }
+    }
+
+    private void publishDeleted(List<Long> books, List<BookStock> stocks) {
+        Set<Long> found = new HashSet<>();
+        for (BookStock stock : stocks) {
+            found.add(stock.getId());
+        }
+        for (Long bookId : books) {
+            if (found.contains(bookId)) continue;
+            published.increment();
+            if (kafkaTemplate == null) {
+                subscriptions.deleted(bookId);
+                continue;
+            }
+            broadcast(bookId, bookId + ":" + DELETED);
+        }
+    }
+
+    private void broadcast(Long bookId, String message) {
+        try {
+            // Keyed by book, so a delete is never delivered ahead of the book's earlier changes
+            kafkaTemplate.send(topic, bookId.toString(), message);
+        } catch (Exception e) {
+            log.warn("Failed to broadcast availability change {}: {}", message, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (kafkaTemplate != null) {
+            kafkaTemplate.getProducerFactory().reset();
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.library.availability;
+
+import com.example.library.api.dto.BookAvailabilityResponse;
+import com.example.library.error.ServiceUnavailableException;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.BookStock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Server-sent event subscribers to book availability, indexed by book id.
+ * <p>
+ * An idle subscriber is only an open async request: no thread waits on it.
+ * Each subscriber has a buffer of at most {@code buffer-size} events. It is
+ * drained by a small shared pool of {@code sender-threads}, one subscriber
+ * at a time, so a publish only appends to buffers and never writes to a
+ * socket. A subscriber whose buffer is full is too slow and is disconnected;
+ * SSE clients reconnect and get a fresh snapshot. Every subscriber gets one
+ * {@code availability} event per book right after subscribing, then one per
+ * change; an update older than what it was already sent (by row version) is
+ * skipped. A deleted book, or one that does not exist when subscribing, gets
+ * a last {@code deleted} event ({@code {"bookId":1}}) and is no longer
+ * watched; the stream stays open for the subscriber's other books. A comment is sent every {@code heartbeat-interval} so dead
+ * connections are noticed and proxies keep idle ones open.
+ * <p>
+ * A write to a client that stopped reading blocks its sender until the
+ * container's write timeout. A send still running after {@code send-timeout}
+ * drops that subscriber and the pool gets one more thread for as long as the
+ * write stays blocked (at most {@code max-stalled-senders}), so stalled
+ * clients never leave fewer than {@code sender-threads} for the others.
+ */
+@Component
+public class AvailabilitySubscriptions {
+
+    private static final Logger log = LoggerFactory.getLogger(AvailabilitySubscriptions.class);
+
+    private static final String EVENT_NAME = "availability";
+    private static final String DELETED_EVENT_NAME = "deleted";
+    /** Sorts after every row version, so nothing about a deleted book follows its deleted event. */
+    private static final long DELETED_VERSION = Long.MAX_VALUE;
+
+    private enum Offer { QUEUED, SCHEDULE, SKIPPED, OVERFLOW }
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final Set<Long> bookIds;
+        private final int capacity;
+        private final ArrayDeque<Set<ResponseBodyEmitter.DataWithMediaType>> buffer = new ArrayDeque<>();
+        private final Map<Long, Long> versions = new HashMap<>();
+        private boolean sending;
+        private boolean closed;
+        /** System.nanoTime() when the send in progress started, 0 between sends. */
+        private long sendStartedAt;
+        private boolean stalled;
+        private boolean senderLent;
+
+        Subscriber(SseEmitter emitter, Set<Long> bookIds, int capacity) {
+            this.emitter = emitter;
+            this.bookIds = bookIds;
+            this.capacity = capacity;
+        }
+
+        /** {@code bookId} is null for events that are not about one book (heartbeats). */
+        synchronized Offer offer(Long bookId, long version, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+            if (closed) return Offer.SKIPPED;
+            if (bookId != null) {
+                Long sent = versions.get(bookId);
+                if (sent != null && sent >= version) return Offer.SKIPPED;
+                versions.put(bookId, version);
+            }
+            if (buffer.size() >= capacity) return Offer.OVERFLOW;
+            buffer.add(event);
+            if (sending) return Offer.QUEUED;
+            sending = true;
+            return Offer.SCHEDULE;
+        }
+
+        /** Next event to send, or null once the buffer is empty or the subscriber closed. */
+        synchronized Set<ResponseBodyEmitter.DataWithMediaType> next() {
+            Set<ResponseBodyEmitter.DataWithMediaType> event = closed ? null : buffer.poll();
+            if (event == null) sending = false;
+            return event;
+        }
+
+        /** @return true if the caller should complete the emitter, false if a sender will */
+        synchronized boolean close() {
+            if (closed) return false;
+            closed = true;
+            buffer.clear();
+            return !sending;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized void sendStarted(long now) {
+            sendStartedAt = now == 0 ? 1 : now;
+        }
+
+        /** @return true if a sender was lent in place of this one while it was stalled */
+        synchronized boolean sendFinished() {
+            sendStartedAt = 0;
+            stalled = false;
+            boolean lent = senderLent;
+            senderLent = false;
+            return lent;
+        }
+
+        /**
+         * Closes the subscriber if the send in progress started before {@code deadline}.
+         * {@code lendSender} runs under the lock so {@link #sendFinished} sees whether it succeeded.
+         */
+        synchronized boolean closeIfStalled(long deadline, BooleanSupplier lendSender) {
+            if (stalled || sendStartedAt == 0 || sendStartedAt - deadline > 0) return false;
+            stalled = true;
+            closed = true;
+            buffer.clear();
+            senderLent = lendSender.getAsBoolean();
+            return true;
+        }
+    }
+
+    private final BookRepository bookRepository;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final int maxBooksPerSubscription;
+    private final Duration streamTimeout;
+    private final Duration reconnectDelay;
+    private final long sendTimeoutNanos;
+    private final int senderThreads;
+    private final int maxStalledSenders;
+
+    private final Map<Long, Set<Subscriber>> byBook = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    /** Subscribers a sender is writing to right now, including ones already dropped as slow. */
+    private final Set<Subscriber> sending = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor senders;
+    private int stalledSenders;
+
+    private final Counter sent;
+    private final Counter slowDrops;
+    private final Counter errorDrops;
+    private final Counter stalledDrops;
+
+    public AvailabilitySubscriptions(BookRepository bookRepository,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${library.books.availability-feed.buffer-size:32}") int bufferSize,
+                                     @Value("${library.books.availability-feed.max-subscribers:40000}") int maxSubscribers,
+                                     @Value("${library.books.availability-feed.max-books-per-subscription:100}") int maxBooksPerSubscription,
+                                     @Value("${library.books.availability-feed.stream-timeout:PT30M}") Duration streamTimeout,
+                                     @Value("${library.books.availability-feed.reconnect-delay:PT3S}") Duration reconnectDelay,
+                                     @Value("${library.books.availability-feed.sender-threads:4}") int senderThreads,
+                                     @Value("${library.books.availability-feed.send-timeout:PT5S}") Duration sendTimeout,
+                                     @Value("${library.books.availability-feed.max-stalled-senders:64}") int maxStalledSenders) {
+        this.bookRepository = bookRepository;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.maxBooksPerSubscription = maxBooksPerSubscription;
+        this.streamTimeout = streamTimeout;
+        this.reconnectDelay = reconnectDelay;
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.senderThreads = senderThreads;
+        this.maxStalledSenders = maxStalledSenders;
+
+        AtomicInteger threadIds = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "availability-sender-" + threadIds.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.sent = meterRegistry.counter("library_availability_events_sent_total");
+        this.slowDrops = meterRegistry.counter("library_availability_subscribers_dropped_total", "reason", "slow");
+        this.errorDrops = meterRegistry.counter("library_availability_subscribers_dropped_total", "reason", "error");
+        this.stalledDrops = meterRegistry.counter("library_availability_subscribers_dropped_total", "reason", "stalled");
+        Gauge.builder("library_availability_subscribers", subscribers, Set::size)
+                .register(meterRegistry);
+    }
+
+    public SseEmitter subscribe(Set<Long> bookIds) {
+        if (bookIds.isEmpty() || bookIds.size() > maxBooksPerSubscription) {
+            throw new IllegalArgumentException("ids must list 1 to " + maxBooksPerSubscription + " book ids");
+        }
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ServiceUnavailableException("Too many availability subscribers, retry later");
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+        Subscriber subscriber = new Subscriber(emitter, Set.copyOf(bookIds), bufferSize);
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> {
+            remove(subscriber);
+            if (subscriber.close()) emitter.complete();
+        });
+        emitter.onError(e -> remove(subscriber));
+
+        subscribers.add(subscriber);
+        for (Long bookId : subscriber.bookIds) {
+            byBook.compute(bookId, (id, watching) -> {
+                if (watching == null) watching = ConcurrentHashMap.newKeySet();
+                watching.add(subscriber);
+                return watching;
+            });
+        }
+        // Registered before the snapshot is read, so no change falls in between; versions order the two
+        Set<Long> missing = new HashSet<>(subscriber.bookIds);
+        for (BookStock stock : bookRepository.findStockByIdIn(subscriber.bookIds)) {
+            missing.remove(stock.getId());
+            enqueue(subscriber, stock.getId(), stock.getVersion(),
+                    event(stock.getId(), stock.getAvailableCopies(), stock.getVersion(), true));
+        }
+        // Deleted before (or while) subscribing, so its deleted event may have gone to nobody
+        for (Long bookId : missing) {
+            unwatch(subscriber, bookId);
+            enqueue(subscriber, bookId, DELETED_VERSION, deletedEvent(bookId, true));
+        }
+        return emitter;
+    }
+
+    /** True when a subscriber on this instance watches the book. */
+    public boolean isWatched(Long bookId) {
+        return byBook.containsKey(bookId);
+    }
+
+    public void publish(Long bookId, int availableCopies, long version) {
+        Set<Subscriber> watching = byBook.get(bookId);
+        if (watching == null) return;
+        Set<ResponseBodyEmitter.DataWithMediaType> event = event(bookId, availableCopies, version, false);
+        for (Subscriber subscriber : watching) {
+            enqueue(subscriber, bookId, version, event);
+        }
+    }
+
+    /** Sends the last event about a deleted book to its subscribers, which stop watching it. */
+    public void deleted(Long bookId) {
+        Set<Subscriber> watching = byBook.remove(bookId);
+        if (watching == null) return;
+        Set<ResponseBodyEmitter.DataWithMediaType> event = deletedEvent(bookId, false);
+        for (Subscriber subscriber : watching) {
+            enqueue(subscriber, bookId, DELETED_VERSION, event);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${library.books.availability-feed.heartbeat-interval:PT30S}")
+    public void heartbeat() {
+        if (subscribers.isEmpty()) return;
+        Set<ResponseBodyEmitter.DataWithMediaType> comment = SseEmitter.event().comment("keep-alive").build();
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, null, 0, comment);
+        }
+    }
+
+    /**
+     * Drops subscribers whose send has been blocked for longer than {@code send-timeout}
+     * and lends the pool a thread in place of each blocked sender.
+     */
+    @Scheduled(fixedDelayString = "${library.books.availability-feed.stall-check-interval:PT1S}")
+    public void checkStalledSends() {
+        if (sending.isEmpty()) return;
+        long deadline = System.nanoTime() - sendTimeoutNanos;
+        for (Subscriber subscriber : sending) {
+            if (!subscriber.closeIfStalled(deadline, () -> resizeSenders(1))) continue;
+            if (remove(subscriber)) stalledDrops.increment();
+            // The blocked sender holds the emitter's lock; it completes the emitter once its write fails
+            log.debug("Availability subscriber stalled for over {} ms", sendTimeoutNanos / 1_000_000);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            remove(subscriber);
+            if (subscriber.close()) subscriber.emitter.complete();
+        }
+        senders.shutdownNow();
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> event(Long bookId, int availableCopies, long version, boolean first) {
+        SseEmitter.SseEventBuilder event = SseEmitter.event()
+                .name(EVENT_NAME)
+                .id(bookId + ":" + version)
+                .data(new BookAvailabilityResponse(bookId, availableCopies), MediaType.APPLICATION_JSON);
+        if (first) event.reconnectTime(reconnectDelay.toMillis());
+        return event.build();
+    }
+
+    private Set<ResponseBodyEmitter.DataWithMediaType> deletedEvent(Long bookId, boolean first) {
+        SseEmitter.SseEventBuilder event = SseEmitter.event()
+                .name(DELETED_EVENT_NAME)
+                .id(bookId + ":" + DELETED_EVENT_NAME)
+                .data(Map.of("bookId", bookId), MediaType.APPLICATION_JSON);
+        if (first) event.reconnectTime(reconnectDelay.toMillis());
+        return event.build();
+    }
+
+    private void enqueue(Subscriber subscriber, Long bookId, long version, Set<ResponseBodyEmitter.DataWithMediaType> event) {
+        switch (subscriber.offer(bookId, version, event)) {
+            case SCHEDULE -> senders.execute(() -> drain(subscriber));
+            case OVERFLOW -> {
+                if (remove(subscriber)) slowDrops.increment();
+                // A sender blocked on this client holds the emitter's lock; it completes the emitter itself
+                if (subscriber.close()) subscriber.emitter.complete();
+            }
+            case QUEUED, SKIPPED -> { }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        for (Set<ResponseBodyEmitter.DataWithMediaType> event; (event = subscriber.next()) != null; ) {
+            subscriber.sendStarted(System.nanoTime());
+            sending.add(subscriber);
+            try {
+                subscriber.emitter.send(event);
+                sent.increment();
+            } catch (Exception e) {
+                if (remove(subscriber)) errorDrops.increment();
+                subscriber.close();
+                log.debug("Availability subscriber disconnected: {}", e.getMessage());
+                subscriber.emitter.completeWithError(e);
+                return;
+            } finally {
+                sending.remove(subscriber);
+                if (subscriber.sendFinished()) resizeSenders(-1);
+            }
+        }
+        if (subscriber.isClosed()) subscriber.emitter.complete();
+    }
+
+    /** Adds or takes back a thread lent for a stalled send; false when no more may be lent. */
+    private synchronized boolean resizeSenders(int delta) {
+        if (delta > 0 && stalledSenders >= maxStalledSenders) return false;
+        stalledSenders += delta;
+        int size = senderThreads + stalledSenders;
+        // The core size may never exceed the maximum, so grow the maximum first and shrink it last
+        if (delta > 0) {
+            senders.setMaximumPoolSize(size);
+            senders.setCorePoolSize(size);
+        } else {
+            senders.setCorePoolSize(size);
+            senders.setMaximumPoolSize(size);
+        }
+        return true;
+    }
+
+    private boolean remove(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) return false;
+        for (Long bookId : subscriber.bookIds) {
+            unwatch(subscriber, bookId);
+        }
+        return true;
+    }
+
+    private void unwatch(Subscriber subscriber, Long bookId) {
+        byBook.computeIfPresent(bookId, (id, watching) -> {
+            watching.remove(subscriber);
+            return watching.isEmpty() ? null : watching;
+        });
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.library.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Receives near cache invalidations from all instances. Each instance joins
+ * with its own random group id so that every instance sees every message,
+ * starting from the latest offset.
+ */
+@Component
+@ConditionalOnProperty(name = "library.cache.broadcast.enabled", havingValue = "true")
+public class CacheInvalidationListener {
+
+    private final NearCacheInvalidator invalidator;
+
+    public CacheInvalidationListener(NearCacheInvalidator invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    @KafkaListener(
+        topics = "${library.cache.broadcast.topic:library.cache-invalidations}",
+        groupId = "${spring.application.name}-cache-${random.uuid}",
+        properties = {
+            "auto.offset.reset:latest",
+            "key.deserializer:org.apache.kafka.common.serialization.StringDeserializer",
+            "value.deserializer:org.apache.kafka.common.serialization.StringDeserializer"
+        }
+    )
+    public void onInvalidation(String message) {
+        invalidator.applyRemote(message);
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.library.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Bounded, TTL-limited in-process cache of entities by id, in front of a
+ * repository lookup. Cached values are detached entities shared between
+ * threads, so callers must treat them as read-only.
+ * <p>
+ * When disabled every lookup goes straight to the loader.
+ */
+public class NearCache<V> {
+
+    private final String name;
+    private final boolean enabled;
+    private final Cache<Long, V> cache;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public NearCache(String name, boolean enabled, long maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.enabled = enabled;
+        this.hits = meterRegistry.counter("library_cache_hits_total", "cache", name);
+        this.misses = meterRegistry.counter("library_cache_misses_total", "cache", name);
+        this.evictions = meterRegistry.counter("library_cache_evictions_total", "cache", name);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                // Size and TTL evictions only; explicit invalidations are not counted
+                .evictionListener((key, value, cause) -> evictions.increment())
+                .build();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /** Returns the cached value, or loads and caches it. Loader exceptions are not cached. */
+    public V get(Long id, Function<Long, V> loader) {
+        if (!enabled) return loader.apply(id);
+
+        V cached = cache.getIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return cache.get(id, loader);
+    }
+
+    public void evict(Long id) {
+        if (!enabled) return;
+        cache.invalidate(id);
+    }
+
+    /**
+     * Evicts now and again once the current transaction completes, so a
+     * reader that loaded the old row in between cannot keep it cached.
+     */
+    public void evictAfterCommit(Long id) {
+        if (!enabled) return;
+        cache.invalidate(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+}
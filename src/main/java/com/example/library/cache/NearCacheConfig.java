@@ -0,0 +1,33 @@
+package com.example.library.cache;
+
+import com.example.library.domain.Book;
+import com.example.library.domain.Member;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class NearCacheConfig {
+
+    public static final String BOOKS = "books";
+    public static final String MEMBERS = "members";
+
+    @Bean
+    public NearCache<Book> bookCache(MeterRegistry meterRegistry,
+                                     @Value("${library.cache.enabled:false}") boolean enabled,
+                                     @Value("${library.cache.books.max-size:10000}") long maxSize,
+                                     @Value("${library.cache.books.ttl:PT30S}") Duration ttl) {
+        return new NearCache<>(BOOKS, enabled, maxSize, ttl, meterRegistry);
+    }
+
+    @Bean
+    public NearCache<Member> memberCache(MeterRegistry meterRegistry,
+                                         @Value("${library.cache.enabled:false}") boolean enabled,
+                                         @Value("${library.cache.members.max-size:10000}") long maxSize,
+                                         @Value("${library.cache.members.ttl:PT5M}") Duration ttl) {
+        return new NearCache<>(MEMBERS, enabled, maxSize, ttl, meterRegistry);
+    }
+}
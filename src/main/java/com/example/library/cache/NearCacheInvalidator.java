@@ -0,0 +1,95 @@
+package com.example.library.cache;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Invalidates near cache entries on this instance and, when
+ * {@code library.cache.broadcast.enabled} is set, on every other instance:
+ * after the change commits a {@code <cache>:<id>} message is sent to
+ * {@code library.cache.broadcast.topic}, which {@link CacheInvalidationListener}
+ * applies elsewhere. Broadcasts are best-effort; the TTL bounds staleness if
+ * one is lost.
+ */
+@Component
+public class NearCacheInvalidator implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(NearCacheInvalidator.class);
+
+    private final Map<String, NearCache<?>> caches;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final String topic;
+
+    public NearCacheInvalidator(List<NearCache<?>> caches,
+                                ProducerFactory<String, String> producerFactory,
+                                @Value("${library.cache.broadcast.enabled:false}") boolean broadcast,
+                                @Value("${library.cache.broadcast.topic:library.cache-invalidations}") String topic) {
+        this.caches = caches.stream().collect(Collectors.toMap(NearCache::name, Function.identity()));
+        // Reuses the Boot producer settings, with plain strings instead of the loan-event serializer
+        this.kafkaTemplate = broadcast
+                ? new KafkaTemplate<>(producerFactory, Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class))
+                : null;
+        this.topic = topic;
+    }
+
+    public void invalidate(NearCache<?> cache, Long id) {
+        cache.evictAfterCommit(id);
+        if (kafkaTemplate == null) return;
+
+        String message = cache.name() + ":" + id;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            broadcast(message);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                broadcast(message);
+            }
+        });
+    }
+
+    /** Applies a message broadcast by another instance (or echoed back to this one). */
+    public void applyRemote(String message) {
+        int sep = message == null ? -1 : message.lastIndexOf(':');
+        NearCache<?> cache = sep < 0 ? null : caches.get(message.substring(0, sep));
+        if (cache == null) {
+            log.warn("Ignoring malformed cache invalidation: {}", message);
+            return;
+        }
+        try {
+            cache.evict(Long.valueOf(message.substring(sep + 1)));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed cache invalidation: {}", message);
+        }
+    }
+
+    private void broadcast(String message) {
+        try {
+            kafkaTemplate.send(topic, message);
+        } catch (Exception e) {
+            log.warn("Failed to broadcast cache invalidation {}: {}", message, e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (kafkaTemplate != null) {
+            kafkaTemplate.getProducerFactory().reset();
+        }
+    }
+}
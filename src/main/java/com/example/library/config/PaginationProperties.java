@@ -0,0 +1,48 @@
+package com.example.library.config;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+@Validated
+@ConfigurationProperties(prefix = "library.pagination")
+public class PaginationProperties {
+
+    @Min(1)
+    @Max(10000)
+    private int defaultSize = 50;
+
+    @Min(1)
+    @Max(10000)
+    private int maxSize = 500;
+
+    public int getDefaultSize() {
+        return defaultSize;
+    }
+
+    public void setDefaultSize(int defaultSize) {
+        this.defaultSize = defaultSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Page size for a request: the default when none is given, capped at {@code maxSize}.
+     */
+    public int resolve(Integer requested) {
+        if (requested == null) {
+            return Math.min(defaultSize, maxSize);
+        }
+        if (requested < 1) {
+            throw new IllegalArgumentException("size must be at least 1");
+        }
+        return Math.min(requested, maxSize);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.library.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Keeps a member's reads on the primary for {@code read-your-writes-window}
+ * after this instance changed one of their loans, so a member who has just
+ * borrowed sees the loan even if the replicas are behind. Writes on other
+ * instances are not known here; there only the replicas' {@code max-lag}
+ * bounds what a member can miss.
+ */
+@Component
+public class ReadYourWritesGuard {
+
+    private final boolean enabled;
+    private final Cache<Long, Boolean> recentWriters;
+
+    public ReadYourWritesGuard(@Value("${library.datasource.replicas.enabled:false}") boolean enabled,
+                               @Value("${library.datasource.replicas.read-your-writes-window:PT10S}") Duration window,
+                               @Value("${library.datasource.replicas.read-your-writes-max-members:100000}") long maxMembers) {
+        this.enabled = enabled;
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .maximumSize(maxMembers)
+                .build();
+    }
+
+    public void wrote(Long memberId) {
+        if (enabled && memberId != null) recentWriters.put(memberId, Boolean.TRUE);
+    }
+
+    /** Call at the start of a read-only transaction that reads {@code memberId}'s data. */
+    public void beforeRead(Long memberId) {
+        if (enabled && memberId != null && recentWriters.getIfPresent(memberId) != null) {
+            ReplicaRoutingDataSource.pinToPrimary();
+        }
+    }
+}
@@ -5,14 +5,18 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
+// Partitioned into loans_current / loans_archive on an unmapped "archived" column (changeset 005);
+// idx_loans_due_active is partial (WHERE returned_at IS NULL) there
 @Table(name = "loans", indexes = {
-        @Index(name = "idx_loans_member_active", columnList = "member_id, returned_at"),
-        @Index(name = "idx_loans_due_active", columnList = "member_id, due_date, returned_at")
+        @Index(name = "idx_loans_due_active", columnList = "member_id, due_date"),
+        @Index(name = "idx_loans_member_borrowed", columnList = "member_id, borrowed_at DESC, id DESC")
 })
 public class Loan {
 
+    // Pooled sequence (see changeset 003) so loan inserts can be JDBC-batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loans_id_seq")
+    @SequenceGenerator(name = "loans_id_seq", sequenceName = "loans_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
@@ -0,0 +1,47 @@
+package com.example.library.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A message waiting to be relayed to Kafka. Rows are written in the same
+ * transaction as the loan change that produced them.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_events_created", columnList = "created_at")
+})
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String topic;
+
+    @Column(name = "message_key")
+    private String messageKey;
+
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    protected OutboxEvent() {}
+
+    public OutboxEvent(String topic, String messageKey, String payload, Instant createdAt) {
+        this.topic = topic;
+        this.messageKey = messageKey;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() { return id; }
+    public String getTopic() { return topic; }
+    public String getMessageKey() { return messageKey; }
+    public String getPayload() { return payload; }
+    public Instant getCreatedAt() { return createdAt; }
+}
@@ -0,0 +1,7 @@
+package com.example.library.error;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.library.events;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered event ids in the UUID version 7 layout: 48 bits of epoch
+ * millis, a 12-bit sequence that keeps ids from this JVM increasing within a
+ * millisecond, and 62 random bits from {@link ThreadLocalRandom} instead of
+ * the {@code SecureRandom} behind {@link UUID#randomUUID()}. Ids sort by
+ * creation time, and stay unique across instances through the random bits.
+ */
+public final class EventIds {
+
+    /** Millis shifted left by 12, plus the sequence within that milli. */
+    private static final AtomicLong LAST = new AtomicLong();
+
+    private EventIds() {
+    }
+
+    public static String next() {
+        return next(System.currentTimeMillis());
+    }
+
+    static String next(long epochMillis) {
+        // A sequence overflow borrows the next milli, which keeps ids increasing
+        long stamp = LAST.updateAndGet(previous -> Math.max(previous + 1, epochMillis << 12));
+        long mostSig = ((stamp >>> 12) << 16) | 0x7000L | (stamp & 0xFFFL);
+        long leastSig = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSig, leastSig).toString();
+    }
+}
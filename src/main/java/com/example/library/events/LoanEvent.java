@@ -15,4 +15,17 @@ public record LoanEvent(
         Instant dueDate,
         Instant returnedAt,
         Instant occurredAt
-) { }
+) {
+
+    public static final String OVERDUE_EVENT_ID_PREFIX = "overdue-";
+
+    /**
+     * A loan passing its due date. The id is derived from the loan, so
+     * repeats (restarts, several instances) can be dropped downstream.
+     */
+    public static LoanEvent overdue(Long loanId, Long bookId, Long memberId,
+                                    Instant borrowedAt, Instant dueDate, Instant occurredAt) {
+        return new LoanEvent(OVERDUE_EVENT_ID_PREFIX + loanId, LoanEventType.OVERDUE, loanId, bookId, memberId,
+                borrowedAt, dueDate, null, occurredAt);
+    }
+}
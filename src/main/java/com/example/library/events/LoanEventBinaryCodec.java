@@ -0,0 +1,123 @@
+package com.example.library.events;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+/**
+ * Compact binary layout for {@link LoanEvent}, shared byte-for-byte with the
+ * analytics service:
+ * <pre>
+ * version:u8  presence:u16  [eventId:u16 len + utf8]  [type:u8]
+ * [loanId:i64] [bookId:i64] [memberId:i64]
+ * [borrowedAt] [dueDate] [returnedAt] [occurredAt]   (each i64 epochSecond + i32 nanos)
+ * </pre>
+ * Bit {@code i} of {@code presence} is set when the i-th field is non-null.
+ */
+public final class LoanEventBinaryCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final int EVENT_ID = 1;
+    private static final int TYPE = 1 << 1;
+    private static final int LOAN_ID = 1 << 2;
+    private static final int BOOK_ID = 1 << 3;
+    private static final int MEMBER_ID = 1 << 4;
+    private static final int BORROWED_AT = 1 << 5;
+    private static final int DUE_DATE = 1 << 6;
+    private static final int RETURNED_AT = 1 << 7;
+    private static final int OCCURRED_AT = 1 << 8;
+
+    private LoanEventBinaryCodec() {}
+
+    public static byte[] encode(LoanEvent evt) {
+        byte[] eventId = evt.eventId() == null ? null : evt.eventId().getBytes(StandardCharsets.UTF_8);
+        int presence = 0;
+        int size = 1 + 2;
+        if (eventId != null) { presence |= EVENT_ID; size += 2 + eventId.length; }
+        if (evt.type() != null) { presence |= TYPE; size += 1; }
+        if (evt.loanId() != null) { presence |= LOAN_ID; size += 8; }
+        if (evt.bookId() != null) { presence |= BOOK_ID; size += 8; }
+        if (evt.memberId() != null) { presence |= MEMBER_ID; size += 8; }
+        if (evt.borrowedAt() != null) { presence |= BORROWED_AT; size += 12; }
+        if (evt.dueDate() != null) { presence |= DUE_DATE; size += 12; }
+        if (evt.returnedAt() != null) { presence |= RETURNED_AT; size += 12; }
+        if (evt.occurredAt() != null) { presence |= OCCURRED_AT; size += 12; }
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.put(VERSION);
+        buf.putShort((short) presence);
+        if (eventId != null) {
+            buf.putShort((short) eventId.length);
+            buf.put(eventId);
+        }
+        if (evt.type() != null) buf.put(typeCode(evt.type()));
+        if (evt.loanId() != null) buf.putLong(evt.loanId());
+        if (evt.bookId() != null) buf.putLong(evt.bookId());
+        if (evt.memberId() != null) buf.putLong(evt.memberId());
+        putInstant(buf, evt.borrowedAt());
+        putInstant(buf, evt.dueDate());
+        putInstant(buf, evt.returnedAt());
+        putInstant(buf, evt.occurredAt());
+        return buf.array();
+    }
+
+    public static LoanEvent decode(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        byte version = buf.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported loan event binary version: " + version);
+        }
+        int presence = buf.getShort() & 0xFFFF;
+
+        String eventId = null;
+        if ((presence & EVENT_ID) != 0) {
+            int len = buf.getShort() & 0xFFFF;
+            eventId = new String(bytes, buf.position(), len, StandardCharsets.UTF_8);
+            buf.position(buf.position() + len);
+        }
+        LoanEventType type = (presence & TYPE) != 0 ? typeOf(buf.get()) : null;
+        Long loanId = (presence & LOAN_ID) != 0 ? buf.getLong() : null;
+        Long bookId = (presence & BOOK_ID) != 0 ? buf.getLong() : null;
+        Long memberId = (presence & MEMBER_ID) != 0 ? buf.getLong() : null;
+        Instant borrowedAt = (presence & BORROWED_AT) != 0 ? getInstant(buf) : null;
+        Instant dueDate = (presence & DUE_DATE) != 0 ? getInstant(buf) : null;
+        Instant returnedAt = (presence & RETURNED_AT) != 0 ? getInstant(buf) : null;
+        Instant occurredAt = (presence & OCCURRED_AT) != 0 ? getInstant(buf) : null;
+
+        if (type == null) {
+            throw new IllegalArgumentException("Event type is null");
+        }
+        return new LoanEvent(eventId, type, loanId, bookId, memberId, borrowedAt, dueDate, returnedAt, occurredAt);
+    }
+
+    private static void putInstant(ByteBuffer buf, Instant value) {
+        if (value == null) return;
+        buf.putLong(value.getEpochSecond());
+        buf.putInt(value.getNano());
+    }
+
+    private static Instant getInstant(ByteBuffer buf) {
+        long seconds = buf.getLong();
+        int nanos = buf.getInt();
+        return Instant.ofEpochSecond(seconds, nanos);
+    }
+
+    // Stable codes: never reuse or renumber, the analytics service reads the same values
+    private static byte typeCode(LoanEventType type) {
+        return switch (type) {
+            case BORROWED -> 1;
+            case RETURNED -> 2;
+            case OVERDUE -> 3;
+        };
+    }
+
+    private static LoanEventType typeOf(byte code) {
+        return switch (code) {
+            case 1 -> LoanEventType.BORROWED;
+            case 2 -> LoanEventType.RETURNED;
+            case 3 -> LoanEventType.OVERDUE;
+            default -> throw new IllegalArgumentException("Unknown LoanEventType code: " + code);
+        };
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.library.events;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Wire formats of loan-event record values. {@link LoanEventSerializer} names
+ * the format in the {@link #HEADER} record header; records without it are JSON.
+ */
+public enum LoanEventFormat {
+    JSON,
+    BINARY;
+
+    public static final String HEADER = "library-event-format";
+
+    private final byte[] headerValue = name().toLowerCase().getBytes(StandardCharsets.US_ASCII);
+
+    public byte[] headerValue() {
+        return headerValue.clone();
+    }
+
+    public static LoanEventFormat fromHeader(byte[] value) {
+        return Arrays.equals(BINARY.headerValue, value) ? BINARY : JSON;
+    }
+}
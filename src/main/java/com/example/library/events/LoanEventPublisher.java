@@ -1,34 +1,91 @@
 package com.example.library.events;
 
 import com.example.library.domain.Loan;
+import com.example.library.domain.OutboxEvent;
+import com.example.library.repo.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.Clock;
 import java.time.Instant;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Publishes loan lifecycle events to Kafka. Publishing is best-effort:
- * failures won't block the main borrow/return flow.
+ * Publishes loan lifecycle events to Kafka.
+ * <p>
+ * In {@code direct} delivery publishing is best-effort: failures won't block
+ * the main borrow/return flow. In {@code outbox} delivery the event is written
+ * to {@code outbox_events} in the caller's transaction and sent later by
+ * {@link OutboxRelay}, so it is never lost and never slows the request down.
+ * <p>
+ * Direct sends are asynchronous; their completion records the send latency,
+ * and a failed event goes to a bounded in-memory buffer that is re-sent every
+ * {@code retry-buffer.retry-interval}. When the buffer is full the oldest
+ * event is dropped. A re-sent event keeps its id, so the analytics side
+ * counts it once, but it may arrive after later events of the same loan.
  */
 @Component
 public class LoanEventPublisher {
 
     private static final Logger log = LoggerFactory.getLogger(LoanEventPublisher.class);
 
+    public enum Delivery {
+        DIRECT,
+        OUTBOX
+    }
+
     private final KafkaTemplate<String, LoanEvent> kafkaTemplate;
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
     private final boolean enabled;
+    private final Delivery delivery;
     private final String topic;
+    private final Clock clock;
+    private final BlockingQueue<LoanEvent> retryBuffer;
+
+    private final Timer sendLatency;
+    private final Counter sent;
+    private final Counter sendFailures;
+    private final Counter dropped;
 
     public LoanEventPublisher(KafkaTemplate<String, LoanEvent> kafkaTemplate,
+                              OutboxEventRepository outboxEventRepository,
+                              ObjectMapper objectMapper,
+                              Clock clock,
+                              MeterRegistry meterRegistry,
                               @Value("${library.events.loan.enabled:true}") boolean enabled,
-                              @Value("${library.events.loan.topic:library.loan-events}") String topic) {
+                              @Value("${library.events.loan.delivery:direct}") Delivery delivery,
+                              @Value("${library.events.loan.topic:library.loan-events}") String topic,
+                              @Value("${library.events.loan.retry-buffer.capacity:10000}") int retryCapacity) {
         this.kafkaTemplate = kafkaTemplate;
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
         this.enabled = enabled;
+        this.delivery = delivery;
         this.topic = topic;
+        this.retryBuffer = new ArrayBlockingQueue<>(retryCapacity);
+
+        this.sendLatency = Timer.builder("library_loan_events_send_latency")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.sent = meterRegistry.counter("library_loan_events_sent_total");
+        this.sendFailures = meterRegistry.counter("library_loan_events_send_failures_total");
+        this.dropped = meterRegistry.counter("library_loan_events_dropped_total");
+        meterRegistry.gauge("library_loan_events_retry_buffer_size", retryBuffer, BlockingQueue::size);
     }
 
     public void publishBorrowed(Loan loan) {
@@ -39,25 +96,139 @@ public class LoanEventPublisher {
         publish(LoanEventType.RETURNED, loan);
     }
 
+    /** Publishes one event per loan; in direct delivery the producer is flushed once at the end. */
+    public void publishBorrowed(List<Loan> loans) {
+        publishAll(LoanEventType.BORROWED, loans);
+    }
+
+    public void publishReturned(List<Loan> loans) {
+        publishAll(LoanEventType.RETURNED, loans);
+    }
+
+    /** Publishes events built by the overdue tracker; see {@link LoanEvent#overdue}. */
+    public void publishOverdue(List<LoanEvent> events) {
+        publishEvents(events, clock.instant());
+    }
+
     private void publish(LoanEventType type, Loan loan) {
         if (!enabled) return;
 
+        Instant now = clock.instant();
+        LoanEvent evt = toEvent(type, loan, now);
+
+        if (delivery == Delivery.OUTBOX) {
+            // Must share the caller's transaction: let failures roll the loan back
+            outboxEventRepository.save(toOutbox(evt, now));
+            return;
+        }
+
+        send(evt);
+    }
+
+    private void publishAll(LoanEventType type, List<Loan> loans) {
+        if (!enabled || loans.isEmpty()) return;
+
+        Instant now = clock.instant();
+        List<LoanEvent> events = new ArrayList<>(loans.size());
+        for (Loan loan : loans) {
+            events.add(toEvent(type, loan, now));
+        }
+        publishEvents(events, now);
+    }
+
+    private void publishEvents(List<LoanEvent> events, Instant now) {
+        if (!enabled || events.isEmpty()) return;
+
+        if (delivery == Delivery.OUTBOX) {
+            List<OutboxEvent> rows = new ArrayList<>(events.size());
+            for (LoanEvent evt : events) {
+                rows.add(toOutbox(evt, now));
+            }
+            outboxEventRepository.saveAll(rows);
+            return;
+        }
+
+        for (LoanEvent evt : events) {
+            send(evt);
+        }
+        try {
+            kafkaTemplate.flush();
+        } catch (Exception e) {
+            log.warn("Failed to flush {} loan events type={}: {}", events.size(), events.get(0).type(), e.getMessage());
+        }
+    }
+
+    private LoanEvent toEvent(LoanEventType type, Loan loan, Instant now) {
+        return new LoanEvent(
+                EventIds.next(),
+                type,
+                loan.getId(),
+                loan.getBook().getId(),
+                loan.getMember().getId(),
+                loan.getBorrowedAt(),
+                loan.getDueDate(),
+                loan.getReturnedAt(),
+                now
+        );
+    }
+
+    private OutboxEvent toOutbox(LoanEvent evt, Instant now) {
+        return new OutboxEvent(topic, String.valueOf(evt.loanId()), toJson(evt), now);
+    }
+
+    /** Re-sends the events whose send failed, oldest first. */
+    @Scheduled(fixedDelayString = "${library.events.loan.retry-buffer.retry-interval:PT5S}")
+    public void retryFailed() {
+        if (retryBuffer.isEmpty()) return;
+        try {
+            List<LoanEvent> retry = new ArrayList<>(retryBuffer.size());
+            retryBuffer.drainTo(retry);
+            log.info("Re-sending {} loan events", retry.size());
+            for (LoanEvent evt : retry) {
+                send(evt);
+            }
+            kafkaTemplate.flush();
+        } catch (Exception e) {
+            log.warn("Loan event retry run failed: {}", e.getMessage());
+        }
+    }
+
+    private void send(LoanEvent evt) {
+        long start = System.nanoTime();
         try {
-            Instant now = Instant.now();
-            LoanEvent evt = new LoanEvent(
-                    UUID.randomUUID().toString(),
-                    type,
-                    loan.getId(),
-                    loan.getBook().getId(),
-                    loan.getMember().getId(),
-                    loan.getBorrowedAt(),
-                    loan.getDueDate(),
-                    loan.getReturnedAt(),
-                    now
-            );
-            kafkaTemplate.send(topic, String.valueOf(loan.getId()), evt);
+            kafkaTemplate.send(topic, String.valueOf(evt.loanId()), evt).whenComplete((result, e) -> {
+                if (e == null) {
+                    sendLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    sent.increment();
+                } else {
+                    sendFailed(evt, e);
+                }
+            });
         } catch (Exception e) {
-            log.warn("Failed to publish loan event type={} loanId={}: {}", type, loan.getId(), e.getMessage());
+            sendFailed(evt, e);
+        }
+    }
+
+    private void sendFailed(LoanEvent evt, Throwable e) {
+        sendFailures.increment();
+        log.warn("Failed to publish loan event type={} loanId={}, buffered for retry: {}",
+                evt.type(), evt.loanId(), e.getMessage());
+        // Full buffer: drop the oldest event to keep the newest
+        while (!retryBuffer.offer(evt)) {
+            LoanEvent oldest = retryBuffer.poll();
+            if (oldest != null) {
+                dropped.increment();
+                log.error("Retry buffer full, dropping loan event eventId={} type={} loanId={}",
+                        oldest.eventId(), oldest.type(), oldest.loanId());
+            }
+        }
+    }
+
+    private String toJson(LoanEvent evt) {
+        try {
+            return objectMapper.writeValueAsString(evt);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize loan event " + evt.eventId(), e);
         }
     }
 }
@@ -0,0 +1,53 @@
+package com.example.library.events;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Map;
+
+/**
+ * Kafka value serializer for {@link LoanEvent}. Writes JSON (through Spring's
+ * {@link JsonSerializer}, unchanged on the wire) or the compact
+ * {@link LoanEventBinaryCodec} layout, selected with the
+ * {@value #FORMAT_CONFIG} producer property, and tags every record with the
+ * {@link LoanEventFormat#HEADER} header so consumers know how to decode it.
+ */
+public class LoanEventSerializer implements Serializer<LoanEvent> {
+
+    public static final String FORMAT_CONFIG = "library.events.loan.format";
+
+    private final JsonSerializer<LoanEvent> json = new JsonSerializer<>();
+    private LoanEventFormat format = LoanEventFormat.JSON;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        json.configure(configs, isKey);
+        Object configured = configs.get(FORMAT_CONFIG);
+        if (configured != null) {
+            format = LoanEventFormat.valueOf(configured.toString().trim().toUpperCase());
+        }
+    }
+
+    @Override
+    public byte[] serialize(String topic, LoanEvent data) {
+        return serialize(topic, null, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, LoanEvent data) {
+        if (data == null) return null;
+        if (headers != null) {
+            headers.remove(LoanEventFormat.HEADER);
+            headers.add(LoanEventFormat.HEADER, format.headerValue());
+        }
+        return format == LoanEventFormat.BINARY
+                ? LoanEventBinaryCodec.encode(data)
+                : json.serialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+}
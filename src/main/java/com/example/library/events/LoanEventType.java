@@ -2,5 +2,6 @@ package com.example.library.events;
 
 public enum LoanEventType {
     BORROWED,
-    RETURNED
+    RETURNED,
+    OVERDUE
 }
@@ -0,0 +1,176 @@
+package com.example.library.events;
+
+import com.example.library.domain.OutboxEvent;
+import com.example.library.repo.OutboxEventRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains {@code outbox_events} to Kafka in batches. One instance at a time
+ * relays: each batch transaction first takes an advisory lock, held until its
+ * rows are acknowledged and deleted, and an instance that does not get it
+ * skips the run. Within a batch, records of different keys are sent without
+ * waiting on each other, and the rows that were acknowledged by the broker are
+ * deleted in one statement. Rows of one key (loan) go out in order: a row is
+ * only sent once the previous row of its key was acknowledged. Once a send
+ * fails, the remaining rows of that key stay in the table with it and the run
+ * ends, so the next run retries them in their original order.
+ */
+@Component
+@ConditionalOnProperty(name = "library.events.loan.delivery", havingValue = "outbox")
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    /** Advisory lock key of the relay ("outbox" in ASCII). */
+    private static final long RELAY_LOCK_KEY = 0x6f7574626f78L;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaTemplate<String, LoanEvent> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+    private final Duration sendTimeout;
+
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final DistributionSummary batchSizes;
+    private final Counter relayed;
+    private final Counter failed;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository,
+                       KafkaTemplate<String, LoanEvent> kafkaTemplate,
+                       ObjectMapper objectMapper,
+                       TransactionTemplate transactionTemplate,
+                       Clock clock,
+                       MeterRegistry meterRegistry,
+                       @Value("${library.events.outbox.batch-size:500}") int batchSize,
+                       @Value("${library.events.outbox.max-batches-per-run:20}") int maxBatchesPerRun,
+                       @Value("${library.events.outbox.send-timeout:PT10S}") Duration sendTimeout) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.sendTimeout = sendTimeout;
+
+        meterRegistry.gauge("library_outbox_relay_lag_seconds", lagMillis, v -> v.get() / 1000.0);
+        this.batchSizes = DistributionSummary.builder("library_outbox_relay_batch_size")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.relayed = meterRegistry.counter("library_outbox_events_relayed_total");
+        this.failed = meterRegistry.counter("library_outbox_events_failed_total");
+    }
+
+    @Scheduled(fixedDelayString = "${library.events.outbox.poll-interval:PT0.5S}")
+    public void relay() {
+        try {
+            Set<String> failedKeys = new HashSet<>();
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                Integer sent = transactionTemplate.execute(status -> relayBatch(failedKeys));
+                // Later batches would pick up the failed keys' rows again; leave them to the next run
+                if (sent == null || sent < batchSize || !failedKeys.isEmpty()) break;
+            }
+            updateLag();
+        } catch (Exception e) {
+            log.warn("Outbox relay run failed: {}", e.getMessage());
+        }
+    }
+
+    private record Pending(OutboxEvent row, LoanEvent event) {}
+
+    private int relayBatch(Set<String> failedKeys) {
+        // Another instance is relaying; the rows it has not reached wait for the next run
+        if (!outboxEventRepository.tryLockRelay(RELAY_LOCK_KEY)) return 0;
+        List<OutboxEvent> batch = outboxEventRepository.lockNextBatch(batchSize);
+        if (batch.isEmpty()) return 0;
+        batchSizes.record(batch.size());
+
+        List<Long> done = new ArrayList<>(batch.size());
+        Map<String, ArrayDeque<Pending>> byKey = new LinkedHashMap<>();
+        for (OutboxEvent row : batch) {
+            LoanEvent evt = readPayload(row);
+            if (evt == null) {
+                // A payload we cannot read will never succeed; drop it instead of blocking the table
+                done.add(row.getId());
+                continue;
+            }
+            byKey.computeIfAbsent(row.getMessageKey(), key -> new ArrayDeque<>()).add(new Pending(row, evt));
+        }
+
+        // Each round sends the oldest unsent row of every key still in good standing
+        while (!byKey.isEmpty()) {
+            List<Pending> inFlight = new ArrayList<>(byKey.size());
+            List<CompletableFuture<SendResult<String, LoanEvent>>> futures = new ArrayList<>(byKey.size());
+            for (ArrayDeque<Pending> rows : byKey.values()) {
+                Pending next = rows.poll();
+                inFlight.add(next);
+                futures.add(kafkaTemplate.send(next.row().getTopic(), next.row().getMessageKey(), next.event()));
+            }
+            kafkaTemplate.flush();
+
+            for (int i = 0; i < inFlight.size(); i++) {
+                OutboxEvent row = inFlight.get(i).row();
+                try {
+                    futures.get(i).get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                    done.add(row.getId());
+                    relayed.increment();
+                } catch (Exception e) {
+                    failed.increment();
+                    failedKeys.add(row.getMessageKey());
+                    byKey.remove(row.getMessageKey());
+                    log.warn("Outbox relay failed to send id={} key={}: {}", row.getId(), row.getMessageKey(), e.getMessage());
+                }
+            }
+            byKey.values().removeIf(ArrayDeque::isEmpty);
+        }
+
+        if (!done.isEmpty()) {
+            outboxEventRepository.deleteAllByIdInBatch(done);
+        }
+        return batch.size();
+    }
+
+    private LoanEvent readPayload(OutboxEvent row) {
+        try {
+            return objectMapper.readValue(row.getPayload(), LoanEvent.class);
+        } catch (Exception e) {
+            failed.increment();
+            log.error("Dropping unreadable outbox row id={}: {}", row.getId(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void updateLag() {
+        Instant oldest = outboxEventRepository.findOldestCreatedAt();
+        lagMillis.set(oldest == null ? 0 : Math.max(0, clock.millis() - oldest.toEpochMilli()));
+    }
+}
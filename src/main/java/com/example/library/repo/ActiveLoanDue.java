@@ -0,0 +1,15 @@
+package com.example.library.repo;
+
+import java.time.Instant;
+
+/**
+ * An active loan reduced to what the overdue tracker schedules on, read
+ * without hydrating {@link com.example.library.domain.Loan} entities.
+ */
+public interface ActiveLoanDue {
+    Long getId();
+    Long getBookId();
+    Long getMemberId();
+    Instant getBorrowedAt();
+    Instant getDueDate();
+}
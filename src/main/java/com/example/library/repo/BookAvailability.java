@@ -0,0 +1,10 @@
+package com.example.library.repo;
+
+/**
+ * Lightweight projection of a book's stock, used to seed in-memory counters
+ * without hydrating full {@link com.example.library.domain.Book} entities.
+ */
+public interface BookAvailability {
+    Long getId();
+    int getAvailableCopies();
+}
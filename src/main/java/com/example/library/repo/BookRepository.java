@@ -1,19 +1,71 @@
 package com.example.library.repo;
 
 import com.example.library.domain.Book;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface BookRepository extends JpaRepository<Book, Long> {
 
     Optional<Book> findByIsbn(String isbn);
 
+    /** Keyset page: the first {@code limit} books with an id greater than {@code id}. */
+    List<Book> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    Stream<Book> streamAllByOrderByIdAsc();
+
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     @Query("select b from Book b where b.id = :id")
     Optional<Book> findByIdForUpdate(@Param("id") Long id);
+
+    /** Locks the given books in ascending id order, so concurrent batches cannot deadlock. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from Book b where b.id in :ids order by b.id")
+    List<Book> findAllByIdForUpdate(@Param("ids") Collection<Long> ids);
+
+    @Query("select b.id as id, b.availableCopies as availableCopies from Book b")
+    List<BookAvailability> findAllAvailability();
+
+    @Query("select b.id as id, b.availableCopies as availableCopies, b.version as version from Book b where b.id in :ids")
+    List<BookStock> findStockByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Takes one copy of the book without a row lock, but only if a copy is
+     * left and the member passes the same checks as
+     * {@link LoanRepository#findBorrowEligibility}. Returns 0 when anything
+     * fails; the caller works out which rule it was. {@code checkOverdue}
+     * works as in {@link LoanRepository#findBorrowEligibility}.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE books SET available_copies = available_copies - 1, version = version + 1
+             WHERE id = :bookId
+               AND available_copies > 0
+               AND EXISTS (SELECT 1 FROM members m WHERE m.id = :memberId)
+               AND CASE WHEN :checkOverdue THEN
+                       NOT EXISTS (SELECT 1 FROM loans l
+                                    WHERE l.member_id = :memberId AND l.due_date < :now AND l.returned_at IS NULL)
+                   ELSE TRUE END
+               AND (SELECT count(*) FROM loans l
+                     WHERE l.member_id = :memberId AND l.returned_at IS NULL) < :maxActiveLoans
+            """, nativeQuery = true)
+    int claimCopyIfEligible(@Param("bookId") Long bookId,
+                            @Param("memberId") Long memberId,
+                            @Param("now") Instant now,
+                            @Param("maxActiveLoans") int maxActiveLoans,
+                            @Param("checkOverdue") boolean checkOverdue);
 }
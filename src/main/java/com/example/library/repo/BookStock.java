@@ -0,0 +1,11 @@
+package com.example.library.repo;
+
+/**
+ * A book's stock with its row version, so readers can tell which of two
+ * reads of the same book is newer.
+ */
+public interface BookStock {
+    Long getId();
+    int getAvailableCopies();
+    long getVersion();
+}
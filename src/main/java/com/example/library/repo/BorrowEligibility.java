@@ -0,0 +1,11 @@
+package com.example.library.repo;
+
+/**
+ * Everything the borrow rules need to know about a member, read in one
+ * round trip by {@link LoanRepository#findBorrowEligibility}.
+ */
+public interface BorrowEligibility {
+    boolean getMemberExists();
+    long getActiveLoans();
+    boolean getHasOverdue();
+}
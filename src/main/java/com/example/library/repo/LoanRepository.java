@@ -1,20 +1,146 @@
 package com.example.library.repo;
 
 import com.example.library.domain.Loan;
-import com.example.library.domain.Member;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface LoanRepository extends JpaRepository<Loan, Long> {
 
-    long countByMemberAndReturnedAtIsNull(Member member);
+    /**
+     * A member's loans, newest first, strictly before {@code (beforeBorrowedAt,
+     * beforeId)}. Each page is one range scan of {@code idx_loans_member_borrowed};
+     * the status variants below add a plain predicate rather than sharing an
+     * optional one, so every variant keeps that plan.
+     */
+    @Query("""
+            select l.id as id, l.book.id as bookId, l.member.id as memberId,
+                   l.borrowedAt as borrowedAt, l.dueDate as dueDate, l.returnedAt as returnedAt
+              from Loan l
+             where l.member.id = :memberId
+               and (l.borrowedAt, l.id) < (:beforeBorrowedAt, :beforeId)
+             order by l.borrowedAt desc, l.id desc
+            """)
+    List<LoanSummary> findMemberLoans(@Param("memberId") Long memberId,
+                                      @Param("beforeBorrowedAt") Instant beforeBorrowedAt,
+                                      @Param("beforeId") Long beforeId,
+                                      Limit limit);
 
-    boolean existsByMemberAndReturnedAtIsNullAndDueDateBefore(Member member, Instant now);
+    /** As {@link #findMemberLoans}, loans not yet returned. */
+    @Query("""
+            select l.id as id, l.book.id as bookId, l.member.id as memberId,
+                   l.borrowedAt as borrowedAt, l.dueDate as dueDate, l.returnedAt as returnedAt
+              from Loan l
+             where l.member.id = :memberId
+               and l.returnedAt is null
+               and (l.borrowedAt, l.id) < (:beforeBorrowedAt, :beforeId)
+             order by l.borrowedAt desc, l.id desc
+            """)
+    List<LoanSummary> findMemberActiveLoans(@Param("memberId") Long memberId,
+                                            @Param("beforeBorrowedAt") Instant beforeBorrowedAt,
+                                            @Param("beforeId") Long beforeId,
+                                            Limit limit);
 
-    List<Loan> findByMemberId(Long memberId);
+    /** As {@link #findMemberLoans}, loans not returned by their due date as of {@code now}. */
+    @Query("""
+            select l.id as id, l.book.id as bookId, l.member.id as memberId,
+                   l.borrowedAt as borrowedAt, l.dueDate as dueDate, l.returnedAt as returnedAt
+              from Loan l
+             where l.member.id = :memberId
+               and l.returnedAt is null
+               and l.dueDate < :now
+               and (l.borrowedAt, l.id) < (:beforeBorrowedAt, :beforeId)
+             order by l.borrowedAt desc, l.id desc
+            """)
+    List<LoanSummary> findMemberOverdueLoans(@Param("memberId") Long memberId,
+                                             @Param("now") Instant now,
+                                             @Param("beforeBorrowedAt") Instant beforeBorrowedAt,
+                                             @Param("beforeId") Long beforeId,
+                                             Limit limit);
+
+    /** As {@link #findMemberLoans}, returned loans. */
+    @Query("""
+            select l.id as id, l.book.id as bookId, l.member.id as memberId,
+                   l.borrowedAt as borrowedAt, l.dueDate as dueDate, l.returnedAt as returnedAt
+              from Loan l
+             where l.member.id = :memberId
+               and l.returnedAt is not null
+               and (l.borrowedAt, l.id) < (:beforeBorrowedAt, :beforeId)
+             order by l.borrowedAt desc, l.id desc
+            """)
+    List<LoanSummary> findMemberReturnedLoans(@Param("memberId") Long memberId,
+                                              @Param("beforeBorrowedAt") Instant beforeBorrowedAt,
+                                              @Param("beforeId") Long beforeId,
+                                              Limit limit);
 
     Optional<Loan> findByIdAndReturnedAtIsNull(Long id);
+
+    List<Loan> findByIdInAndReturnedAtIsNull(Collection<Long> ids);
+
+    @Query("""
+            select l.id as id, l.book.id as bookId, l.member.id as memberId,
+                   l.borrowedAt as borrowedAt, l.dueDate as dueDate
+              from Loan l
+             where l.returnedAt is null
+            """)
+    List<ActiveLoanDue> findAllActiveDueDates();
+
+    /**
+     * Member existence, active loan count and overdue flag in one statement;
+     * both loan subqueries are answered from {@code idx_loans_due_active}.
+     * With {@code checkOverdue} false the overdue subquery is skipped and
+     * {@code hasOverdue} is always false (the caller knows it from memory).
+     */
+    @Query(value = """
+            SELECT EXISTS (SELECT 1 FROM members m WHERE m.id = :memberId) AS memberExists,
+                   (SELECT count(*) FROM loans l
+                     WHERE l.member_id = :memberId AND l.returned_at IS NULL) AS activeLoans,
+                   CASE WHEN :checkOverdue THEN
+                       EXISTS (SELECT 1 FROM loans l
+                                WHERE l.member_id = :memberId AND l.due_date < :now AND l.returned_at IS NULL)
+                   ELSE FALSE END AS hasOverdue
+            """, nativeQuery = true)
+    BorrowEligibility findBorrowEligibility(@Param("memberId") Long memberId,
+                                            @Param("now") Instant now,
+                                            @Param("checkOverdue") boolean checkOverdue);
+
+    /** Batch form of {@link #findBorrowEligibility}; members that do not exist are simply absent. */
+    @Query(value = """
+            SELECT m.id AS memberId,
+                   (SELECT count(*) FROM loans l
+                     WHERE l.member_id = m.id AND l.returned_at IS NULL) AS activeLoans,
+                   CASE WHEN :checkOverdue THEN
+                       EXISTS (SELECT 1 FROM loans l
+                                WHERE l.member_id = m.id AND l.due_date < :now AND l.returned_at IS NULL)
+                   ELSE FALSE END AS hasOverdue
+              FROM members m
+             WHERE m.id IN (:memberIds)
+            """, nativeQuery = true)
+    List<MemberLoanStatus> findMemberLoanStatuses(@Param("memberIds") Collection<Long> memberIds,
+                                                  @Param("now") Instant now,
+                                                  @Param("checkOverdue") boolean checkOverdue);
+
+    /**
+     * Moves up to {@code batchSize} loans returned before {@code cutoff} into
+     * the {@code loans_archive} partition (Postgres moves a row whose partition
+     * key changes). Rows another archiver has locked are skipped.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE loans SET archived = TRUE
+             WHERE archived = FALSE
+               AND id IN (SELECT id FROM loans_current
+                           WHERE returned_at < :cutoff
+                           ORDER BY returned_at
+                           LIMIT :batchSize
+                           FOR UPDATE SKIP LOCKED)
+            """, nativeQuery = true)
+    int archiveReturnedBefore(@Param("cutoff") Instant cutoff, @Param("batchSize") int batchSize);
 }
@@ -0,0 +1,17 @@
+package com.example.library.repo;
+
+import java.time.Instant;
+
+/**
+ * A loan as listed to API clients, read straight from the {@code loans}
+ * columns without hydrating {@link com.example.library.domain.Loan}, its book
+ * or its member.
+ */
+public interface LoanSummary {
+    Long getId();
+    Long getBookId();
+    Long getMemberId();
+    Instant getBorrowedAt();
+    Instant getDueDate();
+    Instant getReturnedAt();
+}
@@ -0,0 +1,11 @@
+package com.example.library.repo;
+
+/**
+ * Per-member borrow rule inputs, read for a whole batch by
+ * {@link LoanRepository#findMemberLoanStatuses}.
+ */
+public interface MemberLoanStatus {
+    Long getMemberId();
+    long getActiveLoans();
+    boolean getHasOverdue();
+}
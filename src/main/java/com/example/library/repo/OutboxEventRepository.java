@@ -0,0 +1,32 @@
+package com.example.library.repo;
+
+import com.example.library.domain.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Takes the transaction-scoped advisory lock that lets one relay instance at a
+     * time claim a batch. Two instances sending batches side by side could send a
+     * loan's later event before its earlier one.
+     *
+     * @return false if another instance holds it
+     */
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryLockRelay(@Param("key") long key);
+
+    /**
+     * Claims the oldest pending rows. Callers hold {@link #tryLockRelay}; SKIP
+     * LOCKED only keeps the claim from waiting on rows being deleted.
+     */
+    @Query(value = "SELECT * FROM outbox_events ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxEvent> lockNextBatch(@Param("limit") int limit);
+
+    @Query("select min(o.createdAt) from OutboxEvent o")
+    Instant findOldestCreatedAt();
+}
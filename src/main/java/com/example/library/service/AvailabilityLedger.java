@@ -0,0 +1,233 @@
+package com.example.library.service;
+
+import com.example.library.repo.BookAvailability;
+import com.example.library.repo.BookRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory mirror of {@code Book.availableCopies}, used to reject borrows of
+ * exhausted books before they queue on the books row lock.
+ * <p>
+ * The database stays the source of truth. A copy is claimed with a CAS before
+ * the row is locked and handed back if the transaction does not commit; the
+ * counters are rebuilt from the books table at startup and periodically
+ * re-synced to heal any drift. Books the ledger does not know about are always
+ * let through to the database.
+ * <p>
+ * Each counter carries a generation bumped by every change. A resync only
+ * overwrites counters whose generation is the one it saw before reading the
+ * table, so a claim or return landing while the table is read is not lost;
+ * such a book is left to the next resync.
+ */
+@Component
+public class AvailabilityLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(AvailabilityLedger.class);
+
+    private final BookRepository bookRepository;
+    private final boolean enabled;
+    private final ConcurrentHashMap<Long, Stock> available = new ConcurrentHashMap<>();
+
+    private final Counter fastRejections;
+
+    public AvailabilityLedger(BookRepository bookRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${library.availability.ledger.enabled:false}") boolean enabled) {
+        this.bookRepository = bookRepository;
+        this.enabled = enabled;
+        this.fastRejections = meterRegistry.counter("library_availability_fast_rejections_total");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) return;
+        int tracked = resync();
+        log.info("Availability ledger rebuilt for {} books", tracked);
+    }
+
+    @Scheduled(fixedDelayString = "${library.availability.ledger.resync-interval:PT5M}",
+            initialDelayString = "${library.availability.ledger.resync-interval:PT5M}")
+    public void scheduledResync() {
+        if (!enabled) return;
+        try {
+            resync();
+        } catch (Exception e) {
+            log.warn("Availability ledger resync failed: {}", e.getMessage());
+        }
+    }
+
+    private int resync() {
+        Map<Long, Long> before = new HashMap<>();
+        available.forEach((bookId, stock) -> before.put(bookId, stock.state()));
+
+        int tracked = 0;
+        for (BookAvailability row : bookRepository.findAllAvailability()) {
+            Long seen = before.remove(row.getId());
+            if (seen == null) {
+                available.putIfAbsent(row.getId(), new Stock(row.getAvailableCopies()));
+            } else {
+                Stock stock = available.get(row.getId());
+                if (stock != null) stock.setIfUnchanged(seen, row.getAvailableCopies());
+            }
+            tracked++;
+        }
+        // Gone from the table, unless something re-tracked them since
+        before.forEach((bookId, seen) -> available.computeIfPresent(bookId,
+                (id, stock) -> stock.state() == seen ? null : stock));
+        return tracked;
+    }
+
+    /**
+     * Claims one copy for the current transaction.
+     *
+     * @return false if the ledger knows the book has no copies left
+     */
+    public boolean tryClaim(Long bookId) {
+        if (!enabled) return true;
+
+        Stock stock = available.get(bookId);
+        if (stock == null) return true;
+
+        if (!stock.tryClaim()) {
+            fastRejections.increment();
+            return false;
+        }
+
+        // Give the copy back unless the borrow actually commits
+        runAfterCompletion(committed -> {
+            if (!committed) stock.add(1);
+        });
+        return true;
+    }
+
+    /**
+     * Re-aligns the counter with a value read under the row lock once the
+     * current transaction completes (e.g. when the ledger let a borrow through
+     * but the database had no copies left).
+     */
+    public void resyncAfterCompletion(Long bookId, int availableCopies) {
+        if (!enabled) return;
+        runAfterCompletion(committed -> track(bookId, availableCopies));
+    }
+
+    /** Hands one copy back to the ledger once a return commits. */
+    public void releaseAfterCommit(Long bookId) {
+        if (!enabled) return;
+        runAfterCompletion(committed -> {
+            if (!committed) return;
+            Stock stock = available.get(bookId);
+            if (stock != null) stock.add(1);
+        });
+    }
+
+    /** Records the committed stock of a created or updated book. */
+    public void trackAfterCommit(Long bookId, int availableCopies) {
+        if (!enabled) return;
+        runAfterCompletion(committed -> {
+            if (committed) track(bookId, availableCopies);
+        });
+    }
+
+    /** Stops tracking a book once its deletion commits. */
+    public void forgetAfterCommit(Long bookId) {
+        if (!enabled) return;
+        runAfterCompletion(committed -> {
+            if (committed) available.remove(bookId);
+        });
+    }
+
+    private void track(Long bookId, int availableCopies) {
+        available.computeIfAbsent(bookId, id -> new Stock(availableCopies)).set(availableCopies);
+    }
+
+    private void runAfterCompletion(CompletionCallback callback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            callback.onCompletion(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                callback.onCompletion(status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface CompletionCallback {
+        void onCompletion(boolean committed);
+    }
+
+    /** Copies left for one book, packed with a generation: high 32 bits generation, low 32 bits copies. */
+    private static final class Stock {
+
+        private final AtomicLong state;
+
+        Stock(int copies) {
+            this.state = new AtomicLong(pack(0, copies));
+        }
+
+        long state() {
+            return state.get();
+        }
+
+        boolean tryClaim() {
+            long current;
+            do {
+                current = state.get();
+                if (copies(current) <= 0) return false;
+            } while (!state.compareAndSet(current, next(current, copies(current) - 1)));
+            return true;
+        }
+
+        void add(int delta) {
+            long current;
+            do {
+                current = state.get();
+            } while (!state.compareAndSet(current, next(current, copies(current) + delta)));
+        }
+
+        void set(int copies) {
+            long current;
+            do {
+                current = state.get();
+            } while (!state.compareAndSet(current, next(current, copies)));
+        }
+
+        /** Sets the copies only if nothing changed them since {@code seen} was read. */
+        void setIfUnchanged(long seen, int copies) {
+            state.compareAndSet(seen, next(seen, copies));
+        }
+
+        private static int copies(long state) {
+            return (int) state;
+        }
+
+        private static long next(long state, int copies) {
+            return pack((state >>> 32) + 1, copies);
+        }
+
+        private static long pack(long generation, int copies) {
+            return (generation << 32) | (copies & 0xFFFFFFFFL);
+        }
+    }
+}
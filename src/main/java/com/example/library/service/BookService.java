@@ -1,39 +1,89 @@
 package com.example.library.service;
 
+import com.example.library.availability.AvailabilityFeed;
+import com.example.library.cache.NearCache;
+import com.example.library.cache.NearCacheInvalidator;
 import com.example.library.domain.Book;
 import com.example.library.error.NotFoundException;
 import com.example.library.repo.BookRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class BookService {
 
     private final BookRepository bookRepository;
+    private final AvailabilityLedger availabilityLedger;
+    private final EntityManager entityManager;
+    private final NearCache<Book> bookCache;
+    private final NearCacheInvalidator cacheInvalidator;
+    private final AvailabilityFeed availabilityFeed;
 
-    public BookService(BookRepository bookRepository) {
+    public BookService(BookRepository bookRepository,
+                       AvailabilityLedger availabilityLedger,
+                       EntityManager entityManager,
+                       NearCache<Book> bookCache,
+                       NearCacheInvalidator cacheInvalidator,
+                       AvailabilityFeed availabilityFeed) {
         this.bookRepository = bookRepository;
+        this.availabilityLedger = availabilityLedger;
+        this.entityManager = entityManager;
+        this.bookCache = bookCache;
+        this.cacheInvalidator = cacheInvalidator;
+        this.availabilityFeed = availabilityFeed;
     }
 
-    public List<Book> list() {
-        return bookRepository.findAll();
+    /**
+     * Up to {@code limit} books ordered by id, starting after {@code afterId}
+     * (from the beginning when null).
+     */
+    @Transactional(readOnly = true)
+    public List<Book> listAfter(Long afterId, int limit) {
+        return bookRepository.findByIdGreaterThanOrderByIdAsc(afterId == null ? 0L : afterId, Limit.of(limit));
     }
 
+    /**
+     * Feeds every book to {@code action} in id order from a database cursor.
+     * Each book is detached once handled so the persistence context stays
+     * empty regardless of table size.
+     */
+    @Transactional(readOnly = true)
+    public void forEach(Consumer<Book> action) {
+        try (Stream<Book> books = bookRepository.streamAllByOrderByIdAsc()) {
+            books.forEach(b -> {
+                action.accept(b);
+                entityManager.detach(b);
+            });
+        }
+    }
+
+    /** Read-only view of the book, possibly served from the near cache. */
     public Book get(Long id) {
+        return bookCache.get(id, this::load);
+    }
+
+    private Book load(Long id) {
         return bookRepository.findById(id).orElseThrow(() -> new NotFoundException("Book not found: " + id));
     }
 
     @Transactional
     public Book create(Book book) {
         // availableCopies will be initialized in constructor or validated by caller
-        return bookRepository.save(book);
+        Book saved = bookRepository.save(book);
+        availabilityLedger.trackAfterCommit(saved.getId(), saved.getAvailableCopies());
+        return saved;
     }
 
     @Transactional
     public Book update(Long id, String title, String author, String isbn, Integer totalCopies) {
-        Book b = get(id);
+        Book b = load(id);
+        cacheInvalidator.invalidate(bookCache, id);
         if (title != null) b.setTitle(title);
         if (author != null) b.setAuthor(author);
         if (isbn != null) b.setIsbn(isbn);
@@ -46,6 +96,8 @@ public class BookService {
             }
             b.setTotalCopies(totalCopies);
             b.setAvailableCopies(newAvailable);
+            availabilityLedger.trackAfterCommit(id, newAvailable);
+            availabilityFeed.changedAfterCommit(id);
         }
         return b;
     }
@@ -56,5 +108,9 @@ public class BookService {
             throw new NotFoundException("Book not found: " + id);
         }
         bookRepository.deleteById(id);
+        availabilityLedger.forgetAfterCommit(id);
+        cacheInvalidator.invalidate(bookCache, id);
+        // The feed finds the row gone and tells the book's subscribers
+        availabilityFeed.changedAfterCommit(id);
     }
 }
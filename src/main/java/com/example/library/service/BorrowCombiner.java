@@ -0,0 +1,121 @@
+package com.example.library.service;
+
+import com.example.library.domain.Loan;
+import io.micrometer.core.instrument.DistributionSummary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Combines concurrent borrows of the same book. The first caller for a book
+ * becomes its leader; callers arriving while it works queue up behind it.
+ * The leader takes up to {@code maxBatch} queued borrows, its own first,
+ * hands them to {@code borrowAll} in one go and completes every caller with
+ * its own result. If more callers queued meanwhile, the oldest of them
+ * leads the next round. So a book with N waiting borrowers costs one round
+ * of database work instead of N transactions queued on its row lock.
+ * Whatever {@code borrowAll} throws fails that round's callers only, and
+ * the next round is still handed off.
+ */
+final class BorrowCombiner {
+
+    /** Borrows of one book by {@code memberIds}, in queue order. */
+    record BorrowRound(Long bookId, List<Long> memberIds) {}
+
+    private static final class Waiter {
+        final Long memberId;
+        final CompletableFuture<Loan> result = new CompletableFuture<>();
+        final CompletableFuture<Void> lead = new CompletableFuture<>();
+
+        Waiter(Long memberId) {
+            this.memberId = memberId;
+        }
+    }
+
+    private static final class BookQueue {
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        boolean led;
+    }
+
+    private final Map<Long, BookQueue> queues = new ConcurrentHashMap<>();
+    private final Function<BorrowRound, List<LoanBatchService.ItemResult>> borrowAll;
+    private final int maxBatch;
+    private final DistributionSummary batchSizes;
+
+    BorrowCombiner(Function<BorrowRound, List<LoanBatchService.ItemResult>> borrowAll, int maxBatch,
+                   DistributionSummary batchSizes) {
+        this.borrowAll = borrowAll;
+        this.maxBatch = maxBatch;
+        this.batchSizes = batchSizes;
+    }
+
+    Loan borrow(Long bookId, Long memberId) {
+        Waiter me = new Waiter(memberId);
+        queues.compute(bookId, (id, queue) -> {
+            if (queue == null) queue = new BookQueue();
+            queue.waiters.add(me);
+            if (!queue.led) {
+                queue.led = true;
+                me.lead.complete(null);
+            }
+            return queue;
+        });
+
+        try {
+            CompletableFuture.anyOf(me.result, me.lead).join();
+            if (!me.result.isDone()) {
+                lead(bookId);
+            }
+            return me.result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+    }
+
+    private void lead(Long bookId) {
+        List<Waiter> round = new ArrayList<>(maxBatch);
+        queues.computeIfPresent(bookId, (id, queue) -> {
+            while (round.size() < maxBatch && !queue.waiters.isEmpty()) {
+                round.add(queue.waiters.poll());
+            }
+            return queue;
+        });
+
+        try {
+            batchSizes.record(round.size());
+            List<LoanBatchService.ItemResult> results =
+                    borrowAll.apply(new BorrowRound(bookId, round.stream().map(w -> w.memberId).toList()));
+            for (int i = 0; i < round.size(); i++) {
+                LoanBatchService.ItemResult result = results.get(i);
+                if (result.succeeded()) {
+                    round.get(i).result.complete(result.loan());
+                } else {
+                    round.get(i).result.completeExceptionally(result.error());
+                }
+            }
+        } catch (Throwable e) {
+            // Errors too: a caller whose future is never completed would wait forever
+            round.forEach(w -> w.result.completeExceptionally(e));
+        } finally {
+            handOff(bookId);
+        }
+    }
+
+    private void handOff(Long bookId) {
+        Waiter[] next = new Waiter[1];
+        queues.computeIfPresent(bookId, (id, queue) -> {
+            next[0] = queue.waiters.peek();
+            // Nobody left: the next borrow of this book starts a new queue and leads it
+            return next[0] == null ? null : queue;
+        });
+        if (next[0] != null) next[0].lead.complete(null);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.library.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel keyed by a long id. Level {@code L} has
+ * {@code wheelSize} slots of {@code tickMillis * wheelSize^L} each, and
+ * levels are added on demand, so schedule, cancel and the per-tick advance
+ * are O(1) however far out the deadline is. Entries in an upper level are
+ * cascaded down one level each time the level below wraps around.
+ * <p>
+ * An entry fires on the first {@link #advance} at or after the end of the
+ * tick that contains its deadline, so at most one tick late. Not thread-safe.
+ */
+final class HierarchicalTimingWheel<T> {
+
+    private static final class Node<T> {
+        final long id;
+        final long deadlineTick;
+        final T payload;
+        Node<T> prev;
+        Node<T> next;
+
+        Node(long id, long deadlineTick, T payload) {
+            this.id = id;
+            this.deadlineTick = deadlineTick;
+            this.payload = payload;
+        }
+
+        void unlink() {
+            if (prev == null) return;
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+    }
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Node<T>[]> levels = new ArrayList<>();
+    private final Map<Long, Node<T>> nodes = new HashMap<>();
+    private long currentTick;
+
+    HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0 || wheelSize < 2) {
+            throw new IllegalArgumentException("tickMillis must be > 0 and wheelSize >= 2");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTick = Math.floorDiv(startMillis, tickMillis);
+    }
+
+    int size() {
+        return nodes.size();
+    }
+
+    /** Schedules {@code id}, replacing any earlier schedule for it. */
+    void schedule(long id, long deadlineMillis, T payload) {
+        cancel(id);
+        Node<T> node = new Node<>(id, Math.floorDiv(deadlineMillis, tickMillis), payload);
+        nodes.put(id, node);
+        place(node);
+    }
+
+    /** @return the payload of the cancelled entry, or null if {@code id} was not scheduled */
+    T cancel(long id) {
+        Node<T> node = nodes.remove(id);
+        if (node == null) return null;
+        node.unlink();
+        return node.payload;
+    }
+
+    /** Moves time forward to {@code nowMillis}, handing every expired payload to {@code onExpired}. */
+    void advance(long nowMillis, Consumer<T> onExpired) {
+        long targetTick = Math.floorDiv(nowMillis, tickMillis);
+        while (currentTick < targetTick) {
+            if (nodes.isEmpty()) {
+                currentTick = targetTick;
+                return;
+            }
+            for (Node<T> node : drain(slot(0, currentTick))) {
+                nodes.remove(node.id);
+                onExpired.accept(node.payload);
+            }
+            currentTick++;
+            cascade();
+        }
+    }
+
+    /** Pulls the upper-level slots that start at the new tick down into the levels below. */
+    private void cascade() {
+        for (int level = levels.size() - 1; level >= 1; level--) {
+            long span = span(level);
+            if (currentTick % span != 0) continue;
+            for (Node<T> node : drain(slot(level, currentTick / span))) {
+                place(node);
+            }
+        }
+    }
+
+    private void place(Node<T> node) {
+        // Deadlines already behind the wheel go into the current tick and fire on the next advance
+        long deadlineTick = Math.max(node.deadlineTick, currentTick);
+        int level = 0;
+        long span = 1;
+        while (deadlineTick / span - currentTick / span >= wheelSize) {
+            span *= wheelSize;
+            level++;
+        }
+        Node<T> head = slot(level, deadlineTick / span);
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+
+    private List<Node<T>> drain(Node<T> head) {
+        List<Node<T>> drained = new ArrayList<>();
+        Node<T> node = head.next;
+        while (node != head) {
+            Node<T> next = node.next;
+            node.prev = null;
+            node.next = null;
+            drained.add(node);
+            node = next;
+        }
+        head.next = head;
+        head.prev = head;
+        return drained;
+    }
+
+    private long span(int level) {
+        long span = 1;
+        for (int i = 0; i < level; i++) span *= wheelSize;
+        return span;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Node<T> slot(int level, long index) {
+        while (levels.size() <= level) {
+            Node<T>[] slots = new Node[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                Node<T> head = new Node<>(-1, 0, null);
+                head.prev = head;
+                head.next = head;
+                slots[i] = head;
+            }
+            levels.add(slots);
+        }
+        return levels.get(level)[(int) Math.floorMod(index, (long) wheelSize)];
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.library.service;
+
+import com.example.library.repo.LoanRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Moves loans returned more than {@code archive-after} ago from the
+ * {@code loans_current} partition to {@code loans_archive} (changeset 005),
+ * so the current partition and its indexes only hold active and recently
+ * returned loans. Each batch of up to {@code batch-size} rows is its own
+ * short transaction; a run stops after {@code max-batches-per-run} batches
+ * or when a batch comes back short. Archived loans stay readable through
+ * the {@code loans} table, e.g. in a member's loan history.
+ */
+@Component
+@ConditionalOnProperty(name = "library.loans.archive.enabled", havingValue = "true")
+public class LoanArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(LoanArchiver.class);
+
+    private final LoanRepository loanRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final Duration archiveAfter;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    private final Counter archived;
+
+    public LoanArchiver(LoanRepository loanRepository,
+                        TransactionTemplate transactionTemplate,
+                        Clock clock,
+                        MeterRegistry meterRegistry,
+                        @Value("${library.loans.archive.archive-after:P90D}") Duration archiveAfter,
+                        @Value("${library.loans.archive.batch-size:5000}") int batchSize,
+                        @Value("${library.loans.archive.max-batches-per-run:20}") int maxBatchesPerRun) {
+        this.loanRepository = loanRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.archiveAfter = archiveAfter;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+
+        this.archived = meterRegistry.counter("library_loans_archived_total");
+    }
+
+    @Scheduled(fixedDelayString = "${library.loans.archive.interval:PT1H}")
+    public void archive() {
+        Instant cutoff = clock.instant().minus(archiveAfter);
+        long total = 0;
+        try {
+            for (int i = 0; i < maxBatchesPerRun; i++) {
+                Integer moved = transactionTemplate.execute(status -> loanRepository.archiveReturnedBefore(cutoff, batchSize));
+                if (moved == null) break;
+                archived.increment(moved);
+                total += moved;
+                if (moved < batchSize) break;
+            }
+        } catch (Exception e) {
+            log.warn("Loan archiving failed after {} loans: {}", total, e.getMessage());
+            return;
+        }
+        if (total > 0) {
+            log.info("Archived {} loans returned before {}", total, cutoff);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.library.service;
+
+import com.example.library.availability.AvailabilityFeed;
+import com.example.library.cache.NearCache;
+import com.example.library.config.LibraryRulesProperties;
+import com.example.library.datasource.ReadYourWritesGuard;
+import com.example.library.domain.Book;
+import com.example.library.domain.Loan;
+import com.example.library.error.BusinessRuleViolationException;
+import com.example.library.error.ConflictException;
+import com.example.library.error.NotFoundException;
+import com.example.library.events.LoanEventPublisher;
+import com.example.library.repo.BookRepository;
+import com.example.library.repo.LoanRepository;
+import com.example.library.repo.MemberLoanStatus;
+import com.example.library.repo.MemberRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk borrow/return for kiosks and reconciliation jobs.
+ * <p>
+ * Items are processed in chunks of {@code library.loans.batch.chunk-size},
+ * one transaction per chunk. A chunk reads all member rules in one query,
+ * locks all of its books in ascending id order with one query, and leaves
+ * the loan inserts and book updates to a single JDBC-batched flush at commit.
+ * An item that breaks a rule fails on its own; if the chunk itself cannot
+ * commit, its items are retried one transaction each so that only the
+ * offending item fails.
+ */
+@Service
+public class LoanBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(LoanBatchService.class);
+
+    public record BorrowItem(Long bookId, Long memberId) {}
+
+    /** Outcome of one batch item: the loan, or the error that item failed with. */
+    public record ItemResult(Loan loan, RuntimeException error) {
+
+        static ItemResult ok(Loan loan) {
+            return new ItemResult(loan, null);
+        }
+
+        static ItemResult failed(RuntimeException error) {
+            return new ItemResult(null, error);
+        }
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChunkProcessor<T> {
+        List<ItemResult> process(List<T> chunk);
+    }
+
+    private final BookRepository bookRepository;
+    private final MemberRepository memberRepository;
+    private final LoanRepository loanRepository;
+    private final LibraryRulesProperties rules;
+    private final Clock clock;
+    private final LoanEventPublisher loanEventPublisher;
+    private final AvailabilityLedger availabilityLedger;
+    private final TransactionTemplate transactionTemplate;
+    private final NearCache<Book> bookCache;
+    private final AvailabilityFeed availabilityFeed;
+    private final OverdueTracker overdueTracker;
+    private final ReadYourWritesGuard readYourWrites;
+    private final int chunkSize;
+    private final int maxItems;
+
+    private final Counter loansBorrowed;
+    private final Counter loansReturned;
+
+    public LoanBatchService(BookRepository bookRepository,
+                            MemberRepository memberRepository,
+                            LoanRepository loanRepository,
+                            LibraryRulesProperties rules,
+                            Clock clock,
+                            MeterRegistry meterRegistry,
+                            LoanEventPublisher loanEventPublisher,
+                            AvailabilityLedger availabilityLedger,
+                            TransactionTemplate transactionTemplate,
+                            NearCache<Book> bookCache,
+                            AvailabilityFeed availabilityFeed,
+                            OverdueTracker overdueTracker,
+                            ReadYourWritesGuard readYourWrites,
+                            @Value("${library.loans.batch.chunk-size:100}") int chunkSize,
+                            @Value("${library.loans.batch.max-items:1000}") int maxItems) {
+        this.bookRepository = bookRepository;
+        this.memberRepository = memberRepository;
+        this.loanRepository = loanRepository;
+        this.rules = rules;
+        this.clock = clock;
+        this.loanEventPublisher = loanEventPublisher;
+        this.availabilityLedger = availabilityLedger;
+        this.transactionTemplate = transactionTemplate;
+        this.bookCache = bookCache;
+        this.availabilityFeed = availabilityFeed;
+        this.overdueTracker = overdueTracker;
+        this.readYourWrites = readYourWrites;
+        this.chunkSize = chunkSize;
+        this.maxItems = maxItems;
+        // Same meters as LoanService: batch and single borrows are counted together
+        this.loansBorrowed = meterRegistry.counter("library_loans_borrowed_total");
+        this.loansReturned = meterRegistry.counter("library_loans_returned_total");
+    }
+
+    /** @return one result per item, in request order */
+    public List<ItemResult> borrow(List<BorrowItem> items) {
+        return processInChunks(items, this::borrowChunk, loansBorrowed);
+    }
+
+    /** @return one result per loan id, in request order */
+    public List<ItemResult> returnLoans(List<Long> loanIds) {
+        return processInChunks(loanIds, this::returnChunk, loansReturned);
+    }
+
+    private <T> List<ItemResult> processInChunks(List<T> items, ChunkProcessor<T> processor, Counter succeeded) {
+        if (items.size() > maxItems) {
+            throw new IllegalArgumentException("A batch may contain at most " + maxItems + " items");
+        }
+
+        ItemResult[] results = new ItemResult[items.size()];
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            List<T> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+            List<ItemResult> chunkResults;
+            try {
+                chunkResults = transactionTemplate.execute(status -> processor.process(chunk));
+            } catch (RuntimeException e) {
+                log.warn("Batch chunk of {} items failed, retrying item by item: {}", chunk.size(), e.getMessage());
+                chunkResults = processOneByOne(chunk, processor);
+            }
+
+            for (int i = 0; i < chunkResults.size(); i++) {
+                ItemResult result = chunkResults.get(i);
+                if (result.succeeded()) succeeded.increment();
+                results[from + i] = result;
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private <T> List<ItemResult> processOneByOne(List<T> chunk, ChunkProcessor<T> processor) {
+        List<ItemResult> results = new ArrayList<>(chunk.size());
+        for (T item : chunk) {
+            try {
+                results.add(transactionTemplate.execute(status -> processor.process(List.of(item))).get(0));
+            } catch (RuntimeException e) {
+                results.add(ItemResult.failed(e));
+            }
+        }
+        return results;
+    }
+
+    private List<ItemResult> borrowChunk(List<BorrowItem> chunk) {
+        Instant now = Instant.now(clock);
+        boolean overdueInMemory = overdueTracker.isReady();
+
+        Set<Long> memberIds = chunk.stream().map(BorrowItem::memberId).collect(Collectors.toSet());
+        Map<Long, MemberLoanStatus> statuses = loanRepository.findMemberLoanStatuses(memberIds, now, !overdueInMemory).stream()
+                .collect(Collectors.toMap(MemberLoanStatus::getMemberId, Function.identity()));
+        Map<Long, Long> activeLoans = new HashMap<>();
+        statuses.values().forEach(s -> activeLoans.put(s.getMemberId(), s.getActiveLoans()));
+
+        Set<Long> bookIds = chunk.stream().map(BorrowItem::bookId).collect(Collectors.toCollection(TreeSet::new));
+        Map<Long, Book> books = bookRepository.findAllByIdForUpdate(bookIds).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+
+        List<ItemResult> results = new ArrayList<>(chunk.size());
+        List<Loan> borrowed = new ArrayList<>(chunk.size());
+        for (BorrowItem item : chunk) {
+            try {
+                Loan loan = borrowOne(item, statuses, activeLoans, books, overdueInMemory, now);
+                borrowed.add(loan);
+                results.add(ItemResult.ok(loan));
+            } catch (RuntimeException e) {
+                results.add(ItemResult.failed(e));
+            }
+        }
+
+        loanRepository.saveAll(borrowed);
+        borrowed.forEach(overdueTracker::trackAfterCommit);
+        loanEventPublisher.publishBorrowed(borrowed);
+        borrowed.forEach(l -> readYourWrites.wrote(l.getMember().getId()));
+        return results;
+    }
+
+    private Loan borrowOne(BorrowItem item, Map<Long, MemberLoanStatus> statuses, Map<Long, Long> activeLoans,
+                           Map<Long, Book> books, boolean overdueInMemory, Instant now) {
+        Long memberId = item.memberId();
+        Long bookId = item.bookId();
+
+        MemberLoanStatus status = statuses.get(memberId);
+        if (status == null) {
+            throw new NotFoundException("Member not found: " + memberId);
+        }
+
+        // Rule: no borrowing with overdue active loans
+        if (overdueInMemory ? overdueTracker.hasOverdue(memberId) : status.getHasOverdue()) {
+            throw new BusinessRuleViolationException("Member has overdue loans and cannot borrow new books");
+        }
+
+        // Rule: maximum active loans, counting the ones taken earlier in this chunk
+        if (activeLoans.get(memberId) >= rules.getMaxActiveLoans()) {
+            throw new BusinessRuleViolationException("Member reached max active loans: " + rules.getMaxActiveLoans());
+        }
+
+        Book book = books.get(bookId);
+        if (book == null) {
+            throw new NotFoundException("Book not found: " + bookId);
+        }
+        if (!availabilityLedger.tryClaim(bookId)) {
+            throw new ConflictException("No available copies for bookId=" + bookId);
+        }
+        if (book.getAvailableCopies() <= 0) {
+            availabilityLedger.resyncAfterCompletion(bookId, book.getAvailableCopies());
+            throw new ConflictException("No available copies for bookId=" + bookId);
+        }
+
+        book.borrowOne();
+        bookCache.evictAfterCommit(bookId);
+        availabilityFeed.changedAfterCommit(bookId);
+        activeLoans.merge(memberId, 1L, Long::sum);
+
+        Instant due = now.plus(rules.getLoanDurationDays(), ChronoUnit.DAYS);
+        return new Loan(book, memberRepository.getReferenceById(memberId), now, due);
+    }
+
+    private List<ItemResult> returnChunk(List<Long> loanIds) {
+        Instant now = Instant.now(clock);
+
+        Map<Long, Loan> loans = loanRepository.findByIdInAndReturnedAtIsNull(new HashSet<>(loanIds)).stream()
+                .collect(Collectors.toMap(Loan::getId, Function.identity()));
+
+        Set<Long> bookIds = loans.values().stream()
+                .map(l -> l.getBook().getId())
+                .collect(Collectors.toCollection(TreeSet::new));
+        Map<Long, Book> books = bookIds.isEmpty() ? Map.of() : bookRepository.findAllByIdForUpdate(bookIds).stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity()));
+
+        List<ItemResult> results = new ArrayList<>(loanIds.size());
+        List<Loan> returned = new ArrayList<>(loanIds.size());
+        for (Long loanId : loanIds) {
+            try {
+                Loan loan = loans.get(loanId);
+                // A loan listed twice is no longer active the second time
+                if (loan == null || !loan.isActive()) {
+                    throw new NotFoundException("Active loan not found: " + loanId);
+                }
+                Long bookId = loan.getBook().getId();
+                Book book = books.get(bookId);
+                if (book == null) {
+                    throw new NotFoundException("Book not found: " + bookId);
+                }
+
+                book.returnOne();
+                loan.markReturned(now);
+                availabilityLedger.releaseAfterCommit(bookId);
+                bookCache.evictAfterCommit(bookId);
+                availabilityFeed.changedAfterCommit(bookId);
+                overdueTracker.untrackAfterCommit(loan);
+                returned.add(loan);
+                results.add(ItemResult.ok(loan));
+            } catch (RuntimeException e) {
+                results.add(ItemResult.failed(e));
+            }
+        }
+
+        loanEventPublisher.publishReturned(returned);
+        returned.forEach(l -> readYourWrites.wrote(l.getMember().getId()));
+        return results;
+    }
+}
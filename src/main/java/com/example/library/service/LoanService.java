@@ -1,6 +1,9 @@
 package com.example.library.service;
 
+import com.example.library.availability.AvailabilityFeed;
+import com.example.library.cache.NearCache;
 import com.example.library.config.LibraryRulesProperties;
+import com.example.library.datasource.ReadYourWritesGuard;
 import com.example.library.domain.Book;
 import com.example.library.domain.Loan;
 import com.example.library.domain.Member;
@@ -9,12 +12,18 @@ import com.example.library.error.ConflictException;
 import com.example.library.error.NotFoundException;
 import com.example.library.events.LoanEventPublisher;
 import com.example.library.repo.BookRepository;
+import com.example.library.repo.BorrowEligibility;
 import com.example.library.repo.LoanRepository;
+import com.example.library.repo.LoanSummary;
 import com.example.library.repo.MemberRepository;
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Clock;
 import java.time.Instant;
@@ -24,6 +33,24 @@ import java.util.List;
 @Service
 public class LoanService {
 
+    /**
+     * How {@link #borrow} takes a copy. {@code LOCKING} reads the book under
+     * {@code SELECT ... FOR UPDATE}; {@code CONDITIONAL_UPDATE} folds the
+     * member checks into one {@code UPDATE ... WHERE available_copies > 0}
+     * and never locks the row explicitly.
+     */
+    public enum BorrowStrategy {
+        LOCKING,
+        CONDITIONAL_UPDATE
+    }
+
+    /** Filter for {@link #listLoansByMember}; {@code OVERDUE} loans are also {@code ACTIVE}. */
+    public enum LoanStatus {
+        ACTIVE,
+        OVERDUE,
+        RETURNED
+    }
+
     private final BookRepository bookRepository;
     private final MemberRepository memberRepository;
     private final LoanRepository loanRepository;
@@ -32,6 +59,14 @@ public class LoanService {
 
 
     private final LoanEventPublisher loanEventPublisher;
+    private final AvailabilityLedger availabilityLedger;
+    private final BorrowStrategy borrowStrategy;
+    private final NearCache<Book> bookCache;
+    private final AvailabilityFeed availabilityFeed;
+    private final OverdueTracker overdueTracker;
+    private final ReadYourWritesGuard readYourWrites;
+    private final TransactionTemplate transactionTemplate;
+    private final BorrowCombiner borrowCombiner;
 
     private final Counter loansBorrowed;
     private final Counter loansReturned;
@@ -41,37 +76,86 @@ public class LoanService {
                        LoanRepository loanRepository,
                        LibraryRulesProperties rules,
                        Clock clock,
-                       MeterRegistry meterRegistry, LoanEventPublisher loanEventPublisher) {
+                       MeterRegistry meterRegistry, LoanEventPublisher loanEventPublisher,
+                       AvailabilityLedger availabilityLedger,
+                       @Value("${library.loans.borrow-strategy:locking}") BorrowStrategy borrowStrategy,
+                       NearCache<Book> bookCache,
+                       AvailabilityFeed availabilityFeed,
+                       OverdueTracker overdueTracker,
+                       ReadYourWritesGuard readYourWrites,
+                       TransactionTemplate transactionTemplate,
+                       LoanBatchService loanBatchService,
+                       @Value("${library.loans.borrow-combining.enabled:false}") boolean combineBorrows,
+                       @Value("${library.loans.borrow-combining.max-batch:100}") int combineMaxBatch) {
         this.bookRepository = bookRepository;
         this.memberRepository = memberRepository;
         this.loanRepository = loanRepository;
         this.rules = rules;
         this.clock = clock;
         this.loanEventPublisher = loanEventPublisher;
+        this.availabilityLedger = availabilityLedger;
+        this.borrowStrategy = borrowStrategy;
+        this.bookCache = bookCache;
+        this.availabilityFeed = availabilityFeed;
+        this.overdueTracker = overdueTracker;
+        this.readYourWrites = readYourWrites;
+        this.transactionTemplate = transactionTemplate;
+        // A combined round goes through the batch path: one book lock and one transaction per chunk
+        this.borrowCombiner = !combineBorrows ? null : new BorrowCombiner(
+                round -> loanBatchService.borrow(round.memberIds().stream()
+                        .map(memberId -> new LoanBatchService.BorrowItem(round.bookId(), memberId))
+                        .toList()),
+                combineMaxBatch,
+                DistributionSummary.builder("library_loans_borrow_round_size")
+                        .publishPercentiles(0.5, 0.99)
+                        .register(meterRegistry));
         this.loansBorrowed = meterRegistry.counter("library_loans_borrowed_total");
         this.loansReturned = meterRegistry.counter("library_loans_returned_total");
     }
 
-    public List<Loan> listLoansByMember(Long memberId) {
-        return loanRepository.findByMemberId(memberId);
+    /**
+     * Up to {@code limit} of the member's loans with the given status (all when
+     * null), newest first, starting after the loan borrowed at
+     * {@code beforeBorrowedAt} with id {@code beforeId}.
+     */
+    @Transactional(readOnly = true)
+    public List<LoanSummary> listLoansByMember(Long memberId, LoanStatus status,
+                                               Instant beforeBorrowedAt, long beforeId, int limit) {
+        readYourWrites.beforeRead(memberId);
+        Limit max = Limit.of(limit);
+        if (status == null) {
+            return loanRepository.findMemberLoans(memberId, beforeBorrowedAt, beforeId, max);
+        }
+        return switch (status) {
+            case ACTIVE -> loanRepository.findMemberActiveLoans(memberId, beforeBorrowedAt, beforeId, max);
+            case OVERDUE -> loanRepository.findMemberOverdueLoans(memberId, Instant.now(clock), beforeBorrowedAt, beforeId, max);
+            case RETURNED -> loanRepository.findMemberReturnedLoans(memberId, beforeBorrowedAt, beforeId, max);
+        };
     }
 
-    @Transactional
+    /**
+     * Borrows a copy in its own transaction, or, with borrow combining on,
+     * together with the other borrows of the same book waiting at the same
+     * time (see {@link BorrowCombiner}).
+     */
     public Loan borrow(Long bookId, Long memberId) {
-        Member member = memberRepository.findById(memberId)
-                .orElseThrow(() -> new NotFoundException("Member not found: " + memberId));
+        if (borrowCombiner != null) {
+            return borrowCombiner.borrow(bookId, memberId);
+        }
+        return transactionTemplate.execute(status -> borrowAlone(bookId, memberId));
+    }
 
+    private Loan borrowAlone(Long bookId, Long memberId) {
         Instant now = Instant.now(clock);
-
-        // Rule: no borrowing with overdue active loans
-        if (loanRepository.existsByMemberAndReturnedAtIsNullAndDueDateBefore(member, now)) {
-            throw new BusinessRuleViolationException("Member has overdue loans and cannot borrow new books");
+        if (borrowStrategy == BorrowStrategy.CONDITIONAL_UPDATE) {
+            return borrowWithConditionalUpdate(bookId, memberId, now);
         }
 
-        // Rule: maximum active loans
-        long active = loanRepository.countByMemberAndReturnedAtIsNull(member);
-        if (active >= rules.getMaxActiveLoans()) {
-            throw new BusinessRuleViolationException("Member reached max active loans: " + rules.getMaxActiveLoans());
+        checkEligibility(memberId, now);
+
+        // Fast path: claim a copy in memory so exhausted books never queue on the row lock
+        if (!availabilityLedger.tryClaim(bookId)) {
+            throw new ConflictException("No available copies for bookId=" + bookId);
         }
 
         // Lock the book row to avoid races on availableCopies
@@ -79,16 +163,73 @@ public class LoanService {
                 .orElseThrow(() -> new NotFoundException("Book not found: " + bookId));
 
         if (book.getAvailableCopies() <= 0) {
+            availabilityLedger.resyncAfterCompletion(bookId, book.getAvailableCopies());
             throw new ConflictException("No available copies for bookId=" + bookId);
         }
 
         book.borrowOne();
 
+        return saveLoan(book, memberRepository.getReferenceById(memberId), now);
+    }
+
+    /**
+     * Two statements on success: the guarded decrement and the loan insert.
+     * Only when the decrement matches no row are the rules re-read to report
+     * which one failed.
+     */
+    private Loan borrowWithConditionalUpdate(Long bookId, Long memberId, Instant now) {
+        boolean overdueInMemory = overdueTracker.isReady();
+        if (overdueInMemory && overdueTracker.hasOverdue(memberId)) {
+            // Rejected from memory; let checkEligibility report it in the usual order
+            checkEligibility(memberId, now);
+        }
+        if (!availabilityLedger.tryClaim(bookId)) {
+            // Keep the locking path's error precedence: member rules before stock
+            checkEligibility(memberId, now);
+            throw new ConflictException("No available copies for bookId=" + bookId);
+        }
+
+        if (bookRepository.claimCopyIfEligible(bookId, memberId, now, rules.getMaxActiveLoans(), !overdueInMemory) == 0) {
+            checkEligibility(memberId, now);
+            Book book = bookRepository.findById(bookId)
+                    .orElseThrow(() -> new NotFoundException("Book not found: " + bookId));
+            availabilityLedger.resyncAfterCompletion(bookId, book.getAvailableCopies());
+            throw new ConflictException("No available copies for bookId=" + bookId);
+        }
+
+        return saveLoan(bookRepository.getReferenceById(bookId), memberRepository.getReferenceById(memberId), now);
+    }
+
+    private void checkEligibility(Long memberId, Instant now) {
+        // The overdue flag comes from the tracker's bitmap once it is loaded
+        boolean overdueInMemory = overdueTracker.isReady();
+        BorrowEligibility eligibility = loanRepository.findBorrowEligibility(memberId, now, !overdueInMemory);
+        if (!eligibility.getMemberExists()) {
+            throw new NotFoundException("Member not found: " + memberId);
+        }
+
+        // Rule: no borrowing with overdue active loans
+        if (overdueInMemory ? overdueTracker.hasOverdue(memberId) : eligibility.getHasOverdue()) {
+            throw new BusinessRuleViolationException("Member has overdue loans and cannot borrow new books");
+        }
+
+        // Rule: maximum active loans
+        if (eligibility.getActiveLoans() >= rules.getMaxActiveLoans()) {
+            throw new BusinessRuleViolationException("Member reached max active loans: " + rules.getMaxActiveLoans());
+        }
+    }
+
+    private Loan saveLoan(Book book, Member member, Instant now) {
+        // availableCopies changed; other instances catch up within the cache TTL
+        bookCache.evictAfterCommit(book.getId());
+        availabilityFeed.changedAfterCommit(book.getId());
         Instant due = now.plus(rules.getLoanDurationDays(), ChronoUnit.DAYS);
         Loan loan = new Loan(book, member, now, due);
         Loan saved = loanRepository.save(loan);
         loansBorrowed.increment();
+        overdueTracker.trackAfterCommit(saved);
         loanEventPublisher.publishBorrowed(saved);
+        readYourWrites.wrote(member.getId());
         return saved;
     }
 
@@ -106,9 +247,14 @@ public class LoanService {
 
         loan.markReturned(now);
         book.returnOne();
+        availabilityLedger.releaseAfterCommit(bookId);
+        bookCache.evictAfterCommit(bookId);
+        availabilityFeed.changedAfterCommit(bookId);
 
         loansReturned.increment();
+        overdueTracker.untrackAfterCommit(loan);
         loanEventPublisher.publishReturned(loan);
+        readYourWrites.wrote(loan.getMember().getId());
         return loan;
     }
 }
@@ -1,27 +1,66 @@
 package com.example.library.service;
 
+import com.example.library.cache.NearCache;
+import com.example.library.cache.NearCacheInvalidator;
 import com.example.library.domain.Member;
 import com.example.library.error.NotFoundException;
 import com.example.library.repo.MemberRepository;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class MemberService {
 
     private final MemberRepository memberRepository;
+    private final EntityManager entityManager;
+    private final NearCache<Member> memberCache;
+    private final NearCacheInvalidator cacheInvalidator;
 
-    public MemberService(MemberRepository memberRepository) {
+    public MemberService(MemberRepository memberRepository,
+                         EntityManager entityManager,
+                         NearCache<Member> memberCache,
+                         NearCacheInvalidator cacheInvalidator) {
         this.memberRepository = memberRepository;
+        this.entityManager = entityManager;
+        this.memberCache = memberCache;
+        this.cacheInvalidator = cacheInvalidator;
     }
 
-    public List<Member> list() {
-        return memberRepository.findAll();
+    /**
+     * Up to {@code limit} members ordered by id, starting after {@code afterId}
+     * (from the beginning when null).
+     */
+    @Transactional(readOnly = true)
+    public List<Member> listAfter(Long afterId, int limit) {
+        return memberRepository.findByIdGreaterThanOrderByIdAsc(afterId == null ? 0L : afterId, Limit.of(limit));
     }
 
+    /**
+     * Feeds every member to {@code action} in id order from a database cursor,
+     * detaching each one once handled.
+     */
+    @Transactional(readOnly = true)
+    public void forEach(Consumer<Member> action) {
+        try (Stream<Member> members = memberRepository.streamAllByOrderByIdAsc()) {
+            members.forEach(m -> {
+                action.accept(m);
+                entityManager.detach(m);
+            });
+        }
+    }
+
+    /** Read-only view of the member, possibly served from the near cache. */
     public Member get(Long id) {
+        return memberCache.get(id, this::load);
+    }
+
+    private Member load(Long id) {
         return memberRepository.findById(id).orElseThrow(() -> new NotFoundException("Member not found: " + id));
     }
 
@@ -32,7 +71,8 @@ public class MemberService {
 
     @Transactional
     public Member update(Long id, String name, String email) {
-        Member m = get(id);
+        Member m = load(id);
+        cacheInvalidator.invalidate(memberCache, id);
         if (name != null) m.setName(name);
         if (email != null) m.setEmail(email);
         return m;
@@ -44,5 +84,6 @@ public class MemberService {
             throw new NotFoundException("Member not found: " + id);
         }
         memberRepository.deleteById(id);
+        cacheInvalidator.invalidate(memberCache, id);
     }
 }
@@ -0,0 +1,275 @@
+package com.example.library.service;
+
+import com.example.library.domain.Loan;
+import com.example.library.events.LoanEvent;
+import com.example.library.events.LoanEventPublisher;
+import com.example.library.repo.ActiveLoanDue;
+import com.example.library.repo.LoanRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Knows which active loans are overdue without querying {@code due_date}.
+ * <p>
+ * Active loans wait in a {@link HierarchicalTimingWheel} keyed by due date;
+ * when a loan's tick passes it moves to the overdue set, its member's bit is
+ * set in a {@link BitSet} indexed by member id, and an {@code OVERDUE} event
+ * is published, within about two {@code tick}s of the due date. Borrows and
+ * returns update the tracker once they commit, so the borrow rule "no overdue
+ * loans" becomes a bit lookup.
+ * <p>
+ * State is loaded from the loans table at startup and rebuilt every
+ * {@code resync-interval} to pick up loans changed by other instances; changes
+ * committed while a rebuild runs are replayed onto the new state. A rebuild
+ * starts its wheel where the old one was last advanced, so loans that came due
+ * since still fire on the next tick, and catches up with the old wheel without
+ * events before the swap, so nothing fires twice. Loans borrowed or returned
+ * on another instance are only seen after that rebuild, so the borrow rule is
+ * answered from memory only with
+ * {@code library.loans.overdue-tracker.borrow-rule.enabled}, meant for a single
+ * instance. Otherwise, and until the first load completes, {@link #isReady()}
+ * is false and callers keep the SQL check. Loans already overdue when loaded
+ * are marked without an event. Each instance fires its own events, all with
+ * the id {@code overdue-<loanId>}.
+ */
+@Component
+public class OverdueTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(OverdueTracker.class);
+
+    private static final int WHEEL_SIZE = 64;
+
+    private record TrackedLoan(Long loanId, Long bookId, Long memberId, Instant borrowedAt, Instant dueDate) {
+
+        static TrackedLoan of(Loan loan) {
+            return new TrackedLoan(loan.getId(), loan.getBook().getId(), loan.getMember().getId(),
+                    loan.getBorrowedAt(), loan.getDueDate());
+        }
+    }
+
+    private final class State {
+        final HierarchicalTimingWheel<TrackedLoan> pending;
+        final Map<Long, Long> overdueLoans = new HashMap<>();
+        final Map<Long, Integer> overdueLoansPerMember = new HashMap<>();
+        final BitSet overdueMembers = new BitSet();
+        Instant advancedTo;
+
+        State(Instant now) {
+            this.pending = new HierarchicalTimingWheel<>(tickMillis, WHEEL_SIZE, now.toEpochMilli());
+            this.advancedTo = now;
+        }
+
+        /** Marks the loans due by {@code now} overdue and hands each to {@code onOverdue}. */
+        void advance(Instant now, Consumer<TrackedLoan> onOverdue) {
+            pending.advance(now.toEpochMilli(), loan -> {
+                markOverdue(loan.loanId(), loan.memberId());
+                onOverdue.accept(loan);
+            });
+            if (now.isAfter(advancedTo)) advancedTo = now;
+        }
+
+        void borrowed(TrackedLoan loan, Instant now) {
+            if (loan.dueDate().isAfter(now)) {
+                pending.schedule(loan.loanId(), loan.dueDate().toEpochMilli(), loan);
+            } else {
+                markOverdue(loan.loanId(), loan.memberId());
+            }
+        }
+
+        void returned(Long loanId) {
+            if (pending.cancel(loanId) != null) return;
+            Long memberId = overdueLoans.remove(loanId);
+            if (memberId == null) return;
+            Integer left = overdueLoansPerMember.merge(memberId, -1, Integer::sum);
+            if (left <= 0) {
+                overdueLoansPerMember.remove(memberId);
+                if (memberId <= Integer.MAX_VALUE) overdueMembers.clear(memberId.intValue());
+            }
+        }
+
+        void markOverdue(Long loanId, Long memberId) {
+            if (overdueLoans.put(loanId, memberId) != null) return;
+            overdueLoansPerMember.merge(memberId, 1, Integer::sum);
+            if (memberId <= Integer.MAX_VALUE) overdueMembers.set(memberId.intValue());
+        }
+
+        boolean hasOverdue(Long memberId) {
+            return memberId <= Integer.MAX_VALUE
+                    ? overdueMembers.get(memberId.intValue())
+                    : overdueLoansPerMember.containsKey(memberId);
+        }
+    }
+
+    private final LoanRepository loanRepository;
+    private final LoanEventPublisher loanEventPublisher;
+    private final Clock clock;
+    private final boolean enabled;
+    private final boolean borrowRule;
+    private final long tickMillis;
+
+    private final Object lock = new Object();
+    private State state;
+    private List<Consumer<State>> journal;
+    private volatile boolean ready;
+
+    private final Counter loansOverdue;
+
+    public OverdueTracker(LoanRepository loanRepository,
+                          LoanEventPublisher loanEventPublisher,
+                          Clock clock,
+                          MeterRegistry meterRegistry,
+                          @Value("${library.loans.overdue-tracker.enabled:false}") boolean enabled,
+                          @Value("${library.loans.overdue-tracker.borrow-rule.enabled:false}") boolean borrowRule,
+                          @Value("${library.loans.overdue-tracker.tick:PT1S}") Duration tick) {
+        this.loanRepository = loanRepository;
+        this.loanEventPublisher = loanEventPublisher;
+        this.clock = clock;
+        this.enabled = enabled;
+        this.borrowRule = borrowRule;
+        this.tickMillis = tick.toMillis();
+        this.state = new State(Instant.now(clock));
+        this.loansOverdue = meterRegistry.counter("library_loans_overdue_total");
+        Gauge.builder("library_overdue_tracker_pending_loans", this, t -> t.read(s -> s.pending.size()))
+                .register(meterRegistry);
+        Gauge.builder("library_overdue_tracker_overdue_members", this, t -> t.read(s -> s.overdueLoansPerMember.size()))
+                .register(meterRegistry);
+    }
+
+    /** True once the tracker has been loaded and is configured to answer {@link #hasOverdue} instead of SQL. */
+    public boolean isReady() {
+        return borrowRule && ready;
+    }
+
+    public boolean hasOverdue(Long memberId) {
+        synchronized (lock) {
+            return state.hasOverdue(memberId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) return;
+        int tracked = rebuild();
+        ready = true;
+        log.info("Overdue tracker loaded {} active loans", tracked);
+    }
+
+    @Scheduled(fixedDelayString = "${library.loans.overdue-tracker.resync-interval:PT5M}",
+            initialDelayString = "${library.loans.overdue-tracker.resync-interval:PT5M}")
+    public void scheduledResync() {
+        if (!enabled) return;
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("Overdue tracker resync failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedRateString = "${library.loans.overdue-tracker.tick:PT1S}")
+    public void tick() {
+        if (!ready) return;
+        Instant now = Instant.now(clock);
+        List<LoanEvent> events = new ArrayList<>();
+        synchronized (lock) {
+            state.advance(now, loan -> events.add(LoanEvent.overdue(loan.loanId(), loan.bookId(),
+                    loan.memberId(), loan.borrowedAt(), loan.dueDate(), now)));
+        }
+        if (events.isEmpty()) return;
+
+        loansOverdue.increment(events.size());
+        try {
+            loanEventPublisher.publishOverdue(events);
+        } catch (Exception e) {
+            log.warn("Failed to publish {} OVERDUE events: {}", events.size(), e.getMessage());
+        }
+    }
+
+    /** Starts tracking a new loan once the current transaction commits. */
+    public void trackAfterCommit(Loan loan) {
+        if (!enabled) return;
+        TrackedLoan tracked = TrackedLoan.of(loan);
+        afterCommit(() -> apply(s -> s.borrowed(tracked, Instant.now(clock))));
+    }
+
+    /** Forgets a returned loan once the current transaction commits. */
+    public void untrackAfterCommit(Loan loan) {
+        if (!enabled) return;
+        Long loanId = loan.getId();
+        afterCommit(() -> apply(s -> s.returned(loanId)));
+    }
+
+    private int rebuild() {
+        Instant asOf;
+        synchronized (lock) {
+            journal = new ArrayList<>();
+            // The first load marks loans already overdue without events; later ones leave them to tick()
+            asOf = ready ? state.advancedTo : Instant.now(clock);
+        }
+        try {
+            State rebuilt = new State(asOf);
+            List<ActiveLoanDue> rows = loanRepository.findAllActiveDueDates();
+            for (ActiveLoanDue row : rows) {
+                rebuilt.borrowed(new TrackedLoan(row.getId(), row.getBookId(), row.getMemberId(),
+                        row.getBorrowedAt(), row.getDueDate()), asOf);
+            }
+            synchronized (lock) {
+                journal.forEach(change -> change.accept(rebuilt));
+                // Loans the old state fired while the rows were read already had their events
+                rebuilt.advance(state.advancedTo, loan -> { });
+                state = rebuilt;
+            }
+            return rows.size();
+        } finally {
+            synchronized (lock) {
+                journal = null;
+            }
+        }
+    }
+
+    private void apply(Consumer<State> change) {
+        synchronized (lock) {
+            change.accept(state);
+            if (journal != null) journal.add(change);
+        }
+    }
+
+    private <R> R read(Function<State, R> reader) {
+        synchronized (lock) {
+            return reader.apply(state);
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,12 @@
+--liquibase formatted sql
+--changeset system:002-outbox-events
+
+CREATE TABLE outbox_events (
+  id BIGSERIAL PRIMARY KEY,
+  topic VARCHAR(255) NOT NULL,
+  message_key VARCHAR(255) NULL,
+  payload TEXT NOT NULL,
+  created_at TIMESTAMPTZ NOT NULL
+);
+
+CREATE INDEX idx_outbox_events_created ON outbox_events(created_at);
@@ -0,0 +1,5 @@
+--liquibase formatted sql
+--changeset system:003-loans-id-sequence
+
+-- Hibernate allocates loan ids 50 at a time (pooled optimizer) so loan inserts can be batched
+ALTER SEQUENCE loans_id_seq INCREMENT BY 50;
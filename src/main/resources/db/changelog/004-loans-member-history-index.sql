@@ -0,0 +1,9 @@
+--liquibase formatted sql
+--changeset system:004-loans-member-history-index runInTransaction:false
+
+-- A member's loan history, newest first, keyset-paged on (borrowed_at, id)
+-- Built CONCURRENTLY because this changeset runs with the service up, on databases that took it
+-- before 005 existed or that apply 004 now and defer 005 to its maintenance window. On a database that
+-- applies both in one update, 005 drops the index again and rebuilds it on the partitioned table; the
+-- only cost is the extra build.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_loans_member_borrowed ON loans(member_id, borrowed_at DESC, id DESC);
@@ -0,0 +1,56 @@
+--liquibase formatted sql
+--changeset system:005-partition-loans
+
+-- loans becomes a list-partitioned table: loans_current holds active and recently returned loans,
+-- loans_archive holds returned loans moved there by LoanArchiver. Partitioning on a column (not on
+-- returned_at IS NULL) keeps a primary key possible: it must contain the partition key.
+--
+-- Offline migration: stop every lending-service instance before it runs. The rename takes an
+-- ACCESS EXCLUSIVE lock on loans that is held, in this one transaction, through the single
+-- INSERT ... SELECT copy and the index builds below, so reads and writes of loans block until it
+-- commits. Allow for a full copy of the table plus building the primary key and three indexes; on
+-- a large table, time it on a restored backup first. Run it alone in a maintenance window, e.g.
+-- with `liquibase update-count 1` once 004 is applied.
+ALTER SEQUENCE loans_id_seq OWNED BY NONE;
+ALTER TABLE loans RENAME TO loans_unpartitioned;
+ALTER TABLE loans_unpartitioned RENAME CONSTRAINT loans_pkey TO loans_unpartitioned_pkey;
+ALTER TABLE loans_unpartitioned RENAME CONSTRAINT fk_loans_book TO fk_loans_unpartitioned_book;
+ALTER TABLE loans_unpartitioned RENAME CONSTRAINT fk_loans_member TO fk_loans_unpartitioned_member;
+DROP INDEX idx_loans_member_active;
+DROP INDEX idx_loans_due_active;
+DROP INDEX IF EXISTS idx_loans_member_borrowed;
+
+CREATE TABLE loans (
+  id BIGINT NOT NULL DEFAULT nextval('loans_id_seq'),
+  book_id BIGINT NOT NULL,
+  member_id BIGINT NOT NULL,
+  borrowed_at TIMESTAMPTZ NOT NULL,
+  due_date TIMESTAMPTZ NOT NULL,
+  returned_at TIMESTAMPTZ NULL,
+  archived BOOLEAN NOT NULL DEFAULT FALSE,
+
+  CONSTRAINT loans_pkey PRIMARY KEY (id, archived),
+  CONSTRAINT fk_loans_book FOREIGN KEY (book_id) REFERENCES books(id),
+  CONSTRAINT fk_loans_member FOREIGN KEY (member_id) REFERENCES members(id),
+  CONSTRAINT ck_loans_archived_returned CHECK (NOT archived OR returned_at IS NOT NULL)
+) PARTITION BY LIST (archived);
+
+CREATE TABLE loans_current PARTITION OF loans FOR VALUES IN (FALSE);
+-- Lets the planner skip the archive for every "returned_at IS NULL" query (constraint_exclusion=partition)
+CREATE TABLE loans_archive PARTITION OF loans (
+  CONSTRAINT ck_loans_archive_returned CHECK (returned_at IS NOT NULL)
+) FOR VALUES IN (TRUE);
+
+INSERT INTO loans (id, book_id, member_id, borrowed_at, due_date, returned_at)
+SELECT id, book_id, member_id, borrowed_at, due_date, returned_at FROM loans_unpartitioned;
+
+DROP TABLE loans_unpartitioned;
+ALTER SEQUENCE loans_id_seq OWNED BY loans.id;
+
+-- Active-loan checks (count, overdue, return) only index loans not yet returned
+CREATE INDEX idx_loans_due_active ON loans(member_id, due_date) WHERE returned_at IS NULL;
+-- A member's loan history, newest first, keyset-paged on (borrowed_at, id). Not CONCURRENTLY: a partitioned
+-- table does not support it, and nothing else can use the table before this commits anyway.
+CREATE INDEX idx_loans_member_borrowed ON loans(member_id, borrowed_at DESC, id DESC);
+-- LoanArchiver: returned loans still in the current partition, oldest first
+CREATE INDEX idx_loans_current_returned ON loans_current(returned_at) WHERE returned_at IS NOT NULL;
@@ -0,0 +1,216 @@
+package com.example.library.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Bodies read for member and book ids reach the controller unchanged, by
+ * blocking and non-blocking reads, and batches are charged per item.
+ */
+class AdmissionControlFilterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 36, 1000, 1023, 1024, 1025, 4096, 100_000})
+    void replaysTheBodyByteForByte(int size) throws Exception {
+        byte[] body = borrowBody(size);
+        AtomicReference<byte[]> seen = new AtomicReference<>();
+
+        int status = doFilter(filter(100, 100), post("/api/loans/borrow", body), request -> {
+            ServletInputStream in = request.getInputStream();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            // Mixed single-byte and bulk reads across the peeked and unread parts
+            int first = in.read();
+            if (first >= 0) out.write(first);
+            out.write(in.readAllBytes());
+            assertThat(in.read()).isEqualTo(-1);
+            assertThat(in.isFinished()).isTrue();
+            seen.set(out.toByteArray());
+        });
+
+        assertThat(status).isEqualTo(200);
+        assertThat(seen.get()).isEqualTo(body);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {36, 1024, 1025, 4096})
+    void replaysTheBodyToAReadListener(int size) throws Exception {
+        byte[] body = borrowBody(size);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<String> calls = new ArrayList<>();
+
+        doFilter(filter(100, 100), post("/api/loans/borrow", body), request -> {
+            ServletInputStream in = request.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    calls.add("data");
+                    byte[] buf = new byte[256];
+                    for (int n; in.isReady() && (n = in.read(buf)) > 0; ) {
+                        out.write(buf, 0, n);
+                    }
+                }
+
+                @Override
+                public void onAllDataRead() {
+                    calls.add("done");
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    calls.add("error");
+                }
+            });
+        });
+
+        assertThat(out.toByteArray()).isEqualTo(body);
+        assertThat(calls).startsWith("data").endsWith("done").doesNotContain("error");
+    }
+
+    @Test
+    void chargesTheMemberOfABorrow() throws Exception {
+        AdmissionControlFilter filter = filter(100, 2);
+        byte[] body = "{\"memberId\":7,\"bookId\":3}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(doFilter(filter, post("/api/loans/borrow", body), request -> { })).isEqualTo(200);
+        assertThat(doFilter(filter, post("/api/loans/borrow", body), request -> { })).isEqualTo(200);
+        assertThat(doFilter(filter, post("/api/loans/borrow", body), request -> { })).isEqualTo(429);
+    }
+
+    @Test
+    void chargesBatchesPerItem() throws Exception {
+        AdmissionControlFilter filter = filter(5, 100);
+        byte[] returns = "{\"loanIds\":[1,2,3]}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(doFilter(filter, post("/api/loans/return:batch", returns), request -> { })).isEqualTo(200);
+        assertThat(doFilter(filter, post("/api/loans/return:batch", returns), request -> { })).isEqualTo(429);
+        assertThat(doFilter(filter, post("/api/loans/return", "{}".getBytes()), request -> { })).isEqualTo(200);
+        assertThat(doFilter(filter, post("/api/loans/return", "{}".getBytes()), request -> { })).isEqualTo(200);
+        assertThat(doFilter(filter, post("/api/loans/return", "{}".getBytes()), request -> { })).isEqualTo(429);
+    }
+
+    @Test
+    void chargesEachMemberOfABatchBorrow() throws Exception {
+        AdmissionControlFilter filter = filter(100, 2);
+        byte[] batch = """
+                {"items":[{"memberId":7,"bookId":1},{"bookId":2,"memberId":7},{"memberId":8,"bookId":3}]}
+                """.getBytes(StandardCharsets.UTF_8);
+        byte[] borrow = "{\"memberId\":7,\"bookId\":3}".getBytes(StandardCharsets.UTF_8);
+        AtomicReference<byte[]> seen = new AtomicReference<>();
+
+        assertThat(doFilter(filter, post("/api/loans/borrow:batch", batch),
+                request -> seen.set(request.getInputStream().readAllBytes()))).isEqualTo(200);
+        assertThat(seen.get()).isEqualTo(batch);
+        // Member 7 spent both tokens in the batch
+        assertThat(doFilter(filter, post("/api/loans/borrow", borrow), request -> { })).isEqualTo(429);
+    }
+
+    private AdmissionControlFilter filter(int clientBurst, int memberBurst) {
+        @SuppressWarnings("unchecked")
+        ObjectProvider<RedisTokenLeases> noLeases = mock(ObjectProvider.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new AdmissionControlFilter(objectMapper,
+                new BookConcurrencyLimiter(registry, 4, 32, Duration.ofMillis(500)), noLeases, registry,
+                0.001, clientBurst, 0.001, memberBurst, 1000, 5, Duration.ofSeconds(1), Duration.ofSeconds(1), "", 1000);
+    }
+
+    /** A borrow body of exactly {@code size} bytes, padded with a note; empty below the smallest one. */
+    private byte[] borrowBody(int size) {
+        String borrow = "{\"memberId\":7,\"bookId\":3,\"note\":\"\"}";
+        if (size < borrow.length()) return new byte[0];
+        String note = "x".repeat(size - borrow.length());
+        byte[] body = ("{\"memberId\":7,\"bookId\":3,\"note\":\"" + note + "\"}").getBytes(StandardCharsets.UTF_8);
+        assertThat(body).hasSize(size);
+        return body;
+    }
+
+    /** A request whose stream also supports non-blocking reads, which the mock request's does not. */
+    private static MockHttpServletRequest post(String uri, byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", uri) {
+            private ServletInputStream in;
+
+            @Override
+            public ServletInputStream getInputStream() {
+                if (in == null) in = new ListenableInputStream(body);
+                return in;
+            }
+        };
+        request.setContentType("application/json");
+        request.setContent(body);
+        return request;
+    }
+
+    private interface Controller {
+        void handle(ServletRequest request) throws IOException;
+    }
+
+    private static int doFilter(AdmissionControlFilter filter, MockHttpServletRequest request, Controller controller)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> controller.handle(req);
+        filter.doFilter(request, response, chain);
+        return response.getStatus();
+    }
+
+    /** Reports everything available at once, as a container does when the body has arrived. */
+    private static final class ListenableInputStream extends ServletInputStream {
+        private final ByteArrayInputStream bytes;
+
+        ListenableInputStream(byte[] body) {
+            this.bytes = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int read() {
+            return bytes.read();
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            return bytes.read(buf, off, len);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return bytes.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener listener) {
+            try {
+                if (bytes.available() > 0) listener.onDataAvailable();
+                listener.onAllDataRead();
+            } catch (IOException e) {
+                listener.onError(e);
+            }
+        }
+    }
+}
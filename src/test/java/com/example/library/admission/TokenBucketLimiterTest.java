@@ -0,0 +1,160 @@
+package com.example.library.admission;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * The limiter over a Redis template stub: leases are spent locally, the
+ * local bucket takes over while Redis fails, and once the back-off is over
+ * a single call probes Redis again.
+ */
+class TokenBucketLimiterTest {
+
+    private static final Duration FAILURE_BACKOFF = Duration.ofMillis(200);
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final AtomicInteger redisCalls = new AtomicInteger();
+    private final List<Integer> wanted = new ArrayList<>();
+    private final Counter globalErrors = new SimpleMeterRegistry().counter("errors");
+    private volatile Callable<Long> redisReply;
+
+    @BeforeEach
+    void stubRedis() {
+        doAnswer(invocation -> {
+            redisCalls.incrementAndGet();
+            synchronized (wanted) {
+                wanted.add(Integer.parseInt(invocation.getArgument(4)));
+            }
+            return redisReply.call();
+        }).when(redis).execute(any(RedisScript.class), anyList(), any(), any(), any());
+    }
+
+    @Test
+    void localBucketsArePerKey() {
+        TokenBucketLimiter limiter = limiter(null, 2);
+
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isFalse();
+        assertThat(limiter.tryAcquire("b")).isTrue();
+    }
+
+    @Test
+    void spendsALeaseLocallyBeforeAskingRedisAgain() {
+        redisReply = () -> 5L;
+        TokenBucketLimiter limiter = limiter(leases(), 100);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("client")).isTrue();
+        }
+        assertThat(redisCalls).hasValue(1);
+
+        assertThat(limiter.tryAcquire("client")).isTrue();
+        assertThat(redisCalls).hasValue(2);
+        assertThat(wanted).containsExactly(5, 5);
+    }
+
+    @Test
+    void rejectsWhenTheGlobalBucketIsEmpty() {
+        redisReply = () -> 0L;
+        TokenBucketLimiter limiter = limiter(leases(), 100);
+
+        assertThat(limiter.tryAcquire("client")).isFalse();
+        assertThat(limiter.tryAcquire("client")).isFalse();
+        assertThat(redisCalls).hasValue(2);
+        assertThat(globalErrors.count()).isZero();
+    }
+
+    @Test
+    void asksForAWholeBatchAtOnce() {
+        redisReply = () -> 12L;
+        TokenBucketLimiter limiter = limiter(leases(), 100);
+
+        assertThat(limiter.tryAcquire("client", 12)).isTrue();
+        assertThat(wanted).containsExactly(12);
+
+        redisReply = () -> 3L;
+        assertThat(limiter.tryAcquire("client", 12)).isFalse();
+        // The three granted tokens stay leased
+        assertThat(limiter.tryAcquire("client", 3)).isTrue();
+        assertThat(redisCalls).hasValue(2);
+    }
+
+    @Test
+    void fallsBackToTheLocalBucketAndProbesRedisOncePerBackoff() throws Exception {
+        redisReply = () -> {
+            throw new QueryTimeoutException("Redis command timed out");
+        };
+        TokenBucketLimiter limiter = limiter(leases(), 3);
+
+        // The local bucket decides while Redis is down, and Redis is asked only once
+        assertThat(limiter.tryAcquire("client")).isTrue();
+        assertThat(limiter.tryAcquire("client")).isTrue();
+        assertThat(limiter.tryAcquire("client")).isTrue();
+        assertThat(limiter.tryAcquire("client")).isFalse();
+        assertThat(redisCalls).hasValue(1);
+        assertThat(globalErrors.count()).isEqualTo(1);
+
+        // Still down after the back-off: one probe among many callers
+        Thread.sleep(FAILURE_BACKOFF.toMillis() + 50);
+        runConcurrently(16, () -> limiter.tryAcquire("other"));
+        assertThat(redisCalls).hasValue(2);
+        assertThat(globalErrors.count()).isEqualTo(2);
+
+        // Back up: the next probe succeeds and leases are used again
+        redisReply = () -> 5L;
+        Thread.sleep(FAILURE_BACKOFF.toMillis() + 50);
+        assertThat(limiter.tryAcquire("client")).isTrue();
+        assertThat(redisCalls).hasValue(3);
+        assertThat(limiter.tryAcquire("client")).isTrue();
+        assertThat(limiter.tryAcquire("third")).isTrue();
+        assertThat(redisCalls).hasValue(4);
+    }
+
+    private RedisTokenLeases leases() {
+        return new RedisTokenLeases(redis, FAILURE_BACKOFF);
+    }
+
+    private TokenBucketLimiter limiter(RedisTokenLeases leases, int burst) {
+        return new TokenBucketLimiter("client", 0.001, burst, 1000, leases, 5, Duration.ofMinutes(1), globalErrors);
+    }
+
+    private static void runConcurrently(int threads, Runnable action) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    action.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            started.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+}
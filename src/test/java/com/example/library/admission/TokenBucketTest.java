@@ -0,0 +1,63 @@
+package com.example.library.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+    private static final long START = 1_000_000_000L;
+    private static final long MILLI = 1_000_000L;
+
+    @Test
+    void startsFullAndRejectsOnceEmpty() {
+        TokenBucket bucket = new TokenBucket(1, 3, START);
+
+        assertThat(bucket.tryTake(START)).isTrue();
+        assertThat(bucket.tryTake(START)).isTrue();
+        assertThat(bucket.tryTake(START)).isTrue();
+        assertThat(bucket.tryTake(START)).isFalse();
+    }
+
+    @Test
+    void refillsAtTheRate() {
+        TokenBucket bucket = new TokenBucket(10, 2, START);
+        bucket.tryTake(START, 2);
+
+        assertThat(bucket.tryTake(START + 50 * MILLI)).isFalse();
+        assertThat(bucket.tryTake(START + 100 * MILLI)).isTrue();
+        assertThat(bucket.tryTake(START + 150 * MILLI)).isFalse();
+        assertThat(bucket.tryTake(START + 200 * MILLI)).isTrue();
+    }
+
+    @Test
+    void neverHoldsMoreThanABurst() {
+        TokenBucket bucket = new TokenBucket(100, 2, START);
+        long hourLater = START + 3_600_000 * MILLI;
+
+        assertThat(bucket.tryTake(hourLater, 2)).isTrue();
+        assertThat(bucket.tryTake(hourLater)).isFalse();
+    }
+
+    @Test
+    void takesSeveralTokensOnlyWhenAllAreThere() {
+        TokenBucket bucket = new TokenBucket(1, 5, START);
+
+        assertThat(bucket.tryTake(START, 3)).isTrue();
+        assertThat(bucket.tryTake(START, 3)).isFalse();
+        assertThat(bucket.tryTake(START, 2)).isTrue();
+        assertThat(bucket.tryTake(START)).isFalse();
+    }
+
+    @Test
+    void requestsLargerThanABurstNeedAFullBucketAndLeaveItInDebt() {
+        TokenBucket bucket = new TokenBucket(1, 5, START);
+        bucket.tryTake(START);
+
+        assertThat(bucket.tryTake(START, 20)).isFalse();
+        assertThat(bucket.tryTake(START + 1_000 * MILLI, 20)).isTrue();
+        // 5 - 20 = -15 tokens: the next one is there 16 seconds later
+        assertThat(bucket.tryTake(START + 16_000 * MILLI)).isFalse();
+        assertThat(bucket.tryTake(START + 17_000 * MILLI)).isTrue();
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.library.repo;
+
+import com.example.library.domain.Book;
+import com.example.library.domain.Loan;
+import com.example.library.domain.Member;
+import com.example.library.service.LoanService.LoanStatus;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.NullSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Member loan history paging against PostgreSQL with the Liquibase schema:
+ * every page of every status filter is one statement and hydrates no entity.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class LoanRepositoryTest {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16");
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+    }
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:00:00Z");
+    private static final Instant START_BORROWED_AT = Instant.parse("9999-12-31T23:59:59Z");
+    private static final int PAGE_SIZE = 2;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private LoanRepository loanRepository;
+
+    private Member member;
+    private final List<Loan> memberLoans = new ArrayList<>();
+
+    @BeforeEach
+    void createLoans() {
+        Book book = entityManager.persist(new Book("Dune", "Frank Herbert", "9780441013593", 20));
+        member = entityManager.persist(new Member("Ada", "ada@example.com"));
+        Member other = entityManager.persist(new Member("Grace", "grace@example.com"));
+
+        // Nine loans: returned, overdue and current ones, two pairs sharing a borrow time
+        long[] daysAgo = {40, 35, 30, 30, 20, 16, 10, 5, 5};
+        for (int i = 0; i < daysAgo.length; i++) {
+            Instant borrowedAt = NOW.minus(Duration.ofDays(daysAgo[i]));
+            Loan loan = new Loan(book, member, borrowedAt, borrowedAt.plus(Duration.ofDays(14)));
+            if (i % 3 == 0) loan.markReturned(borrowedAt.plus(Duration.ofDays(7)));
+            memberLoans.add(entityManager.persist(loan));
+        }
+        Instant borrowedAt = NOW.minus(Duration.ofDays(3));
+        entityManager.persist(new Loan(book, other, borrowedAt, borrowedAt.plus(Duration.ofDays(14))));
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @ParameterizedTest
+    @NullSource
+    @EnumSource(LoanStatus.class)
+    void pagesMemberLoansWithOneStatementPerPage(LoanStatus status) {
+        List<Long> expected = memberLoans.stream()
+                .filter(matching(status))
+                .sorted(Comparator.comparing(Loan::getBorrowedAt).thenComparing(Loan::getId).reversed())
+                .map(Loan::getId)
+                .toList();
+        assertThat(expected).hasSizeGreaterThan(PAGE_SIZE);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<Long> listed = new ArrayList<>();
+        Instant beforeBorrowedAt = START_BORROWED_AT;
+        long beforeId = Long.MAX_VALUE;
+        int pages = 0;
+        while (true) {
+            statistics.clear();
+            // One extra row tells whether another page follows, as the controller asks for
+            List<LoanSummary> rows = page(status, beforeBorrowedAt, beforeId, PAGE_SIZE + 1);
+
+            assertThat(statistics.getPrepareStatementCount()).as("statements for page %d", pages).isEqualTo(1);
+            assertThat(statistics.getEntityLoadCount()).as("entities loaded for page %d", pages).isZero();
+            pages++;
+
+            List<LoanSummary> page = rows.subList(0, Math.min(rows.size(), PAGE_SIZE));
+            page.forEach(row -> {
+                assertThat(row.getMemberId()).isEqualTo(member.getId());
+                listed.add(row.getId());
+            });
+            if (rows.size() <= PAGE_SIZE) break;
+            LoanSummary last = page.get(page.size() - 1);
+            beforeBorrowedAt = last.getBorrowedAt();
+            beforeId = last.getId();
+        }
+
+        assertThat(pages).isGreaterThan(1);
+        assertThat(listed).containsExactlyElementsOf(expected);
+    }
+
+    private List<LoanSummary> page(LoanStatus status, Instant beforeBorrowedAt, long beforeId, int limit) {
+        Long memberId = member.getId();
+        if (status == null) {
+            return loanRepository.findMemberLoans(memberId, beforeBorrowedAt, beforeId, Limit.of(limit));
+        }
+        return switch (status) {
+            case ACTIVE -> loanRepository.findMemberActiveLoans(memberId, beforeBorrowedAt, beforeId, Limit.of(limit));
+            case OVERDUE -> loanRepository.findMemberOverdueLoans(memberId, NOW, beforeBorrowedAt, beforeId, Limit.of(limit));
+            case RETURNED -> loanRepository.findMemberReturnedLoans(memberId, beforeBorrowedAt, beforeId, Limit.of(limit));
+        };
+    }
+
+    private static Predicate<Loan> matching(LoanStatus status) {
+        if (status == null) return loan -> true;
+        return switch (status) {
+            case ACTIVE -> Loan::isActive;
+            case OVERDUE -> loan -> loan.isOverdue(NOW);
+            case RETURNED -> loan -> !loan.isActive();
+        };
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.library.service;
+
+import com.example.library.domain.Loan;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Drives the combiner with a stub {@code borrowAll} from one thread per
+ * caller, named after its member, so rounds and their leaders can be checked.
+ */
+class BorrowCombinerTest {
+
+    private static final Long BOOK_ID = 1L;
+
+    private record Round(String leader, List<Long> memberIds) {}
+
+    private final List<Round> rounds = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Long, Loan> loans = new ConcurrentHashMap<>();
+    private final List<Thread> callers = new ArrayList<>();
+    private final DistributionSummary batchSizes = DistributionSummary.builder("test_batch_size")
+            .register(new SimpleMeterRegistry());
+
+    @AfterEach
+    void stopCallers() throws InterruptedException {
+        for (Thread caller : callers) {
+            caller.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    @Test
+    void completesEveryCallerWithItsOwnResult() throws Exception {
+        BorrowCombiner combiner = new BorrowCombiner(record(round -> {
+            sleep(2);
+            return round.memberIds().stream().map(this::resultFor).toList();
+        }), 8, batchSizes);
+
+        CountDownLatch start = new CountDownLatch(1);
+        Map<Long, CompletableFuture<Loan>> results = new ConcurrentHashMap<>();
+        for (long memberId = 1; memberId <= 200; memberId++) {
+            long id = memberId;
+            results.put(id, borrow(combiner, id, start));
+        }
+        start.countDown();
+
+        for (Map.Entry<Long, CompletableFuture<Loan>> entry : results.entrySet()) {
+            Long memberId = entry.getKey();
+            if (memberId % 5 == 0) {
+                assertThatThrownBy(() -> entry.getValue().get(10, TimeUnit.SECONDS))
+                        .isInstanceOf(ExecutionException.class)
+                        .hasRootCauseMessage("member " + memberId);
+            } else {
+                assertThat(entry.getValue().get(10, TimeUnit.SECONDS)).isSameAs(loans.get(memberId));
+            }
+        }
+        assertThat(rounds).allSatisfy(round -> assertThat(round.memberIds()).hasSizeBetween(1, 8));
+        assertThat(rounds.stream().flatMap(round -> round.memberIds().stream()))
+                .hasSize(200).doesNotHaveDuplicates();
+        assertThat(rounds).hasSizeLessThan(200);
+        assertThat(batchSizes.count()).isEqualTo(rounds.size());
+    }
+
+    @Test
+    void callersBeyondMaxBatchLeadTheNextRounds() throws Exception {
+        CountDownLatch firstRound = new CountDownLatch(1);
+        BorrowCombiner combiner = new BorrowCombiner(record(round -> {
+            if (round.memberIds().contains(1L)) await(firstRound);
+            return round.memberIds().stream().map(this::resultFor).toList();
+        }), 2, batchSizes);
+
+        List<CompletableFuture<Loan>> results = new ArrayList<>();
+        for (long memberId = 1; memberId <= 6; memberId++) {
+            results.add(borrowQueued(combiner, memberId));
+        }
+        firstRound.countDown();
+        for (CompletableFuture<Loan> result : results) {
+            // Member 5 fails in the stub; only completion matters here
+            result.handle((loan, e) -> loan).get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(rounds).containsExactly(
+                new Round("member-1", List.of(1L)),
+                new Round("member-2", List.of(2L, 3L)),
+                new Round("member-4", List.of(4L, 5L)),
+                new Round("member-6", List.of(6L)));
+    }
+
+    @Test
+    void anExceptionFailsOnlyItsRound() throws Exception {
+        assertFailureStaysInItsRound(new IllegalStateException("database down"));
+    }
+
+    @Test
+    void anErrorFailsOnlyItsRound() throws Exception {
+        assertFailureStaysInItsRound(new OutOfMemoryError("no room"));
+    }
+
+    @Test
+    void startsAFreshQueueOnceTheLastRoundIsDone() throws Exception {
+        BorrowCombiner combiner = new BorrowCombiner(record(round ->
+                round.memberIds().stream().map(this::resultFor).toList()), 4, batchSizes);
+
+        assertThat(combiner.borrow(BOOK_ID, 1L)).isSameAs(loans.get(1L));
+        assertThat(combiner.borrow(BOOK_ID, 2L)).isSameAs(loans.get(2L));
+        assertThat(rounds).extracting(Round::memberIds).containsExactly(List.of(1L), List.of(2L));
+    }
+
+    private void assertFailureStaysInItsRound(Throwable failure) throws Exception {
+        CountDownLatch firstRound = new CountDownLatch(1);
+        BorrowCombiner combiner = new BorrowCombiner(record(round -> {
+            if (round.memberIds().contains(2L)) {
+                if (failure instanceof Error error) throw error;
+                throw (RuntimeException) failure;
+            }
+            if (round.memberIds().contains(1L)) await(firstRound);
+            return round.memberIds().stream().map(this::resultFor).toList();
+        }), 2, batchSizes);
+
+        CompletableFuture<Loan> first = borrowQueued(combiner, 1L);
+        CompletableFuture<Loan> second = borrowQueued(combiner, 2L);
+        CompletableFuture<Loan> third = borrowQueued(combiner, 3L);
+        CompletableFuture<Loan> fourth = borrowQueued(combiner, 4L);
+        firstRound.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(loans.get(1L));
+        for (CompletableFuture<Loan> failed : List.of(second, third)) {
+            assertThatThrownBy(() -> failed.get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .cause().isSameAs(failure);
+        }
+        assertThat(fourth.get(5, TimeUnit.SECONDS)).isSameAs(loans.get(4L));
+        assertThat(rounds).extracting(Round::memberIds)
+                .containsExactly(List.of(1L), List.of(2L, 3L), List.of(4L));
+    }
+
+    private Function<BorrowCombiner.BorrowRound, List<LoanBatchService.ItemResult>> record(
+            Function<BorrowCombiner.BorrowRound, List<LoanBatchService.ItemResult>> borrowAll) {
+        return round -> {
+            assertThat(round.bookId()).isEqualTo(BOOK_ID);
+            rounds.add(new Round(Thread.currentThread().getName(), round.memberIds()));
+            return borrowAll.apply(round);
+        };
+    }
+
+    private LoanBatchService.ItemResult resultFor(Long memberId) {
+        if (memberId % 5 == 0) return LoanBatchService.ItemResult.failed(new IllegalStateException("member " + memberId));
+        return LoanBatchService.ItemResult.ok(loans.computeIfAbsent(memberId, id -> mock(Loan.class)));
+    }
+
+    private CompletableFuture<Loan> borrow(BorrowCombiner combiner, Long memberId, CountDownLatch start) {
+        CompletableFuture<Loan> result = new CompletableFuture<>();
+        Thread caller = new Thread(() -> {
+            try {
+                if (start != null) start.await();
+                result.complete(combiner.borrow(BOOK_ID, memberId));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, "member-" + memberId);
+        caller.setDaemon(true);
+        callers.add(caller);
+        caller.start();
+        return result;
+    }
+
+    /** Starts a caller and waits until it is queued (or leading and blocked in borrowAll). */
+    private CompletableFuture<Loan> borrowQueued(BorrowCombiner combiner, Long memberId) throws InterruptedException {
+        CompletableFuture<Loan> result = borrow(combiner, memberId, null);
+        Thread caller = callers.get(callers.size() - 1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!isParked(caller.getState()) && !result.isDone()) {
+            assertThat(System.nanoTime() - deadline).as("caller %d queued", memberId).isNegative();
+            Thread.sleep(1);
+        }
+        return result;
+    }
+
+    private static boolean isParked(Thread.State state) {
+        return state == Thread.State.WAITING || state == Thread.State.TIMED_WAITING;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.library.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the wheel against a brute-force model: a map of id to deadline tick
+ * that fires everything whose tick has passed on each advance.
+ */
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 8;
+
+    /** Deadlines clamped to the tick they were scheduled in, as the wheel does. */
+    private static final class Model {
+        final Map<Long, Long> deadlineTicks = new HashMap<>();
+        long currentTick;
+
+        Model(long startMillis) {
+            this.currentTick = Math.floorDiv(startMillis, TICK_MILLIS);
+        }
+
+        void schedule(long id, long deadlineMillis) {
+            deadlineTicks.put(id, Math.max(Math.floorDiv(deadlineMillis, TICK_MILLIS), currentTick));
+        }
+
+        boolean cancel(long id) {
+            return deadlineTicks.remove(id) != null;
+        }
+
+        Set<Long> advance(long nowMillis) {
+            long targetTick = Math.floorDiv(nowMillis, TICK_MILLIS);
+            Set<Long> expired = new HashSet<>();
+            if (targetTick <= currentTick) return expired;
+            deadlineTicks.entrySet().removeIf(e -> {
+                if (e.getValue() >= targetTick) return false;
+                expired.add(e.getKey());
+                return true;
+            });
+            currentTick = targetTick;
+            return expired;
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1L, 7L, 42L, 2024L, 99991L})
+    void matchesBruteForceModel(long seed) {
+        Random random = new Random(seed);
+        long now = 1_700_000_000_000L + random.nextInt(1_000_000);
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(TICK_MILLIS, WHEEL_SIZE, now);
+        Model model = new Model(now);
+
+        for (int step = 0; step < 20_000; step++) {
+            int op = random.nextInt(10);
+            if (op < 5) {
+                long id = random.nextInt(2_000);
+                // Mostly near deadlines, some far enough out for three or four levels, some already past
+                long horizon = switch (random.nextInt(4)) {
+                    case 0 -> TICK_MILLIS * WHEEL_SIZE;
+                    case 1 -> TICK_MILLIS * WHEEL_SIZE * WHEEL_SIZE;
+                    case 2 -> TICK_MILLIS * WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE;
+                    default -> TICK_MILLIS * 3;
+                };
+                long deadline = now - TICK_MILLIS * 2 + (long) (random.nextDouble() * horizon);
+                wheel.schedule(id, deadline, id);
+                model.schedule(id, deadline);
+            } else if (op < 7) {
+                long id = random.nextInt(2_000);
+                assertThat(wheel.cancel(id) != null).isEqualTo(model.cancel(id));
+            } else {
+                // Small steps within a tick, single ticks and jumps across several levels
+                now += switch (random.nextInt(4)) {
+                    case 0 -> random.nextInt((int) TICK_MILLIS);
+                    case 1 -> TICK_MILLIS;
+                    case 2 -> TICK_MILLIS * random.nextInt(WHEEL_SIZE * WHEEL_SIZE);
+                    default -> 0;
+                };
+                List<Long> fired = new ArrayList<>();
+                wheel.advance(now, fired::add);
+                Set<Long> expected = model.advance(now);
+
+                assertThat(fired).doesNotHaveDuplicates();
+                assertThat(new HashSet<>(fired)).as("step %d", step).isEqualTo(expected);
+            }
+            assertThat(wheel.size()).isEqualTo(model.deadlineTicks.size());
+        }
+    }
+
+    @Test
+    void firesInDeadlineOrderWithinOneAdvance() {
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(TICK_MILLIS, WHEEL_SIZE, 0);
+        for (long id = 1; id <= 300; id++) {
+            wheel.schedule(id, (301 - id) * TICK_MILLIS, id);
+        }
+
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(400 * TICK_MILLIS, fired::add);
+
+        assertThat(fired).hasSize(300);
+        assertThat(fired).isSortedAccordingTo((a, b) -> Long.compare(b, a));
+    }
+
+    @Test
+    void rescheduleReplacesEarlierDeadline() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK_MILLIS, WHEEL_SIZE, 0);
+        wheel.schedule(1, 2 * TICK_MILLIS, "first");
+        wheel.schedule(1, 500 * TICK_MILLIS, "second");
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(10 * TICK_MILLIS, fired::add);
+        assertThat(fired).isEmpty();
+
+        wheel.advance(501 * TICK_MILLIS, fired::add);
+        assertThat(fired).containsExactly("second");
+        assertThat(wheel.size()).isZero();
+    }
+}
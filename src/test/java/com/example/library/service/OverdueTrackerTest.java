@@ -0,0 +1,172 @@
+package com.example.library.service;
+
+import com.example.library.events.LoanEvent;
+import com.example.library.events.LoanEventPublisher;
+import com.example.library.repo.ActiveLoanDue;
+import com.example.library.repo.LoanRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Resyncs against a stubbed loans table: a rebuild neither drops nor repeats
+ * the OVERDUE events of loans that come due around it.
+ */
+class OverdueTrackerTest {
+
+    private static final Instant START = Instant.parse("2026-03-01T12:00:00Z");
+    private static final long MEMBER_ID = 7L;
+
+    private static final class MutableClock extends Clock {
+        Instant now = START;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private final MutableClock clock = new MutableClock();
+    private final LoanRepository loanRepository = mock(LoanRepository.class);
+    private final LoanEventPublisher publisher = mock(LoanEventPublisher.class);
+    private final List<Long> fired = new ArrayList<>();
+    private OverdueTracker tracker;
+
+    @BeforeEach
+    void createTracker() {
+        doAnswer(invocation -> {
+            List<LoanEvent> events = invocation.getArgument(0);
+            events.forEach(event -> fired.add(event.loanId()));
+            return null;
+        }).when(publisher).publishOverdue(anyList());
+        tracker = new OverdueTracker(loanRepository, publisher, clock, new SimpleMeterRegistry(),
+                true, true, Duration.ofSeconds(1));
+    }
+
+    @Test
+    void firesLoansThatCameDueBetweenTheLastTickAndAResync() {
+        when(loanRepository.findAllActiveDueDates()).thenReturn(List.of(due(1L, START.plusSeconds(10))));
+        tracker.load();
+        at(5);
+        tracker.tick();
+
+        // Due at +10s, never ticked past before the resync at +20s
+        at(20);
+        tracker.scheduledResync();
+        assertThat(fired).isEmpty();
+
+        tracker.tick();
+        assertThat(fired).containsExactly(1L);
+        assertThat(tracker.hasOverdue(MEMBER_ID)).isTrue();
+
+        at(21);
+        tracker.tick();
+        assertThat(fired).containsExactly(1L);
+    }
+
+    @Test
+    void doesNotRefireLoansFiredBeforeAResync() {
+        when(loanRepository.findAllActiveDueDates()).thenReturn(List.of(due(1L, START.plusSeconds(10))));
+        tracker.load();
+        at(20);
+        tracker.tick();
+        assertThat(fired).containsExactly(1L);
+
+        at(25);
+        tracker.scheduledResync();
+        tracker.tick();
+        assertThat(fired).containsExactly(1L);
+        assertThat(tracker.hasOverdue(MEMBER_ID)).isTrue();
+    }
+
+    @Test
+    void doesNotRefireLoansFiredWhileTheRowsWereRead() {
+        List<ActiveLoanDue> rows = List.of(due(1L, START.plusSeconds(10)), due(2L, START.plusSeconds(30)));
+        when(loanRepository.findAllActiveDueDates()).thenReturn(rows);
+        tracker.load();
+
+        when(loanRepository.findAllActiveDueDates()).thenAnswer(invocation -> {
+            // A tick on the old state while the rebuild reads the table
+            at(20);
+            tracker.tick();
+            return rows;
+        });
+        tracker.scheduledResync();
+        assertThat(fired).containsExactly(1L);
+
+        tracker.tick();
+        assertThat(fired).containsExactly(1L);
+
+        at(31);
+        tracker.tick();
+        assertThat(fired).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void marksLoansAlreadyOverdueAtStartupWithoutEvents() {
+        when(loanRepository.findAllActiveDueDates()).thenReturn(List.of(due(1L, START.minusSeconds(60))));
+        tracker.load();
+        tracker.tick();
+
+        assertThat(fired).isEmpty();
+        assertThat(tracker.hasOverdue(MEMBER_ID)).isTrue();
+        assertThat(tracker.isReady()).isTrue();
+    }
+
+    private void at(long secondsAfterStart) {
+        clock.now = START.plusSeconds(secondsAfterStart);
+    }
+
+    private static ActiveLoanDue due(Long loanId, Instant dueDate) {
+        return new ActiveLoanDue() {
+            @Override
+            public Long getId() {
+                return loanId;
+            }
+
+            @Override
+            public Long getBookId() {
+                return 3L;
+            }
+
+            @Override
+            public Long getMemberId() {
+                return MEMBER_ID;
+            }
+
+            @Override
+            public Instant getBorrowedAt() {
+                return dueDate.minus(Duration.ofDays(14));
+            }
+
+            @Override
+            public Instant getDueDate() {
+                return dueDate;
+            }
+        };
+    }
+}